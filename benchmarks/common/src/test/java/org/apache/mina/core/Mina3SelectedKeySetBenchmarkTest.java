@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.transport.nio.FixedSelectorLoopPool;
+import org.apache.mina.transport.nio.NioSelectorLoop;
+import org.apache.mina.transport.nio.NioTcpClient;
+import org.apache.mina.transport.nio.NioTcpServer;
+import org.apache.mina.transport.nio.SelectorLoop;
+import org.apache.mina.transport.nio.SelectorLoopPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Measure the number of read events per second processed by a single server selector loop, with the array backed
+ * selected keys set and with the default set of the selector. Many sessions exchange small messages with the server,
+ * one at a time, so each message is a distinct read event.
+ * <p>
+ * On a JDK 9 or more, the array backed set is only used if the <code>sun.nio.ch</code> package is opened, with
+ * <code>--add-opens java.base/sun.nio.ch=ALL-UNNAMED</code>.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@RunWith(Parameterized.class)
+public class Mina3SelectedKeySetBenchmarkTest {
+
+    private static final int SESSION_COUNT = 128;
+
+    private static final int MESSAGE_SIZE = 16;
+
+    private final boolean optimized;
+
+    private final int numberOfMessages;
+
+    private final int timeout;
+
+    private NioTcpServer server;
+
+    private NioSelectorLoop serverLoop;
+
+    private NioTcpClient client;
+
+    public Mina3SelectedKeySetBenchmarkTest(boolean optimized, int numberOfMessages, int timeout) {
+        this.optimized = optimized;
+        this.numberOfMessages = numberOfMessages;
+        this.timeout = timeout;
+    }
+
+    @Parameters(name = "optimized key set : {0}, {1} messages")
+    public static Collection<Object[]> getParameters() {
+        Object[][] parameters = new Object[][] { 
+                { false, 1000000, 2 * 60 }, 
+                { true, 1000000, 2 * 60 } };
+        return Arrays.asList(parameters);
+    }
+
+    @Before
+    public void init() throws IOException {
+        if (!optimized) {
+            System.setProperty(NioSelectorLoop.DISABLE_KEY_SET_OPTIMIZATION, "true");
+        }
+
+        try {
+            // all the server sessions are handled by a single loop
+            serverLoop = new NioSelectorLoop("Server", 0);
+        } finally {
+            System.clearProperty(NioSelectorLoop.DISABLE_KEY_SET_OPTIMIZATION);
+        }
+
+        server = new NioTcpServer(new NioSelectorLoop("accept"), new SelectorLoopPool() {
+            @Override
+            public SelectorLoop getSelectorLoop() {
+                return serverLoop;
+            }
+
+            @Override
+            public SelectorLoop[] getSelectorLoops() {
+                return new SelectorLoop[] { serverLoop };
+            }
+        }, null);
+        server.getSessionConfig().setTcpNoDelay(true);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // echo
+                ByteBuffer buffer = (ByteBuffer) message;
+                ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+                echo.put(buffer);
+                echo.flip();
+                session.write(echo);
+            }
+        });
+        server.bind(0);
+
+        // the client has enough selectors for not being the bottleneck
+        client = new NioTcpClient(new NioSelectorLoop("connect"), new FixedSelectorLoopPool("Client", 4), null);
+        client.getSessionConfig().setTcpNoDelay(true);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        client.disconnect();
+        server.unbind();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        final CountDownLatch counter = new CountDownLatch(numberOfMessages);
+        final byte[] data = new byte[MESSAGE_SIZE];
+
+        client.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                session.write(ByteBuffer.wrap(data));
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                counter.countDown();
+
+                if (counter.getCount() > 0) {
+                    session.write(ByteBuffer.wrap(data));
+                }
+            }
+        });
+
+        System.out.println("-------------- " + SESSION_COUNT + " sessions on a server selector with "
+                + (serverLoop.isSelectedKeySetOptimized() ? "an array backed" : "the default") + " selected keys set");
+        long start = System.currentTimeMillis();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getServerSocketChannel().socket()
+                .getLocalPort());
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            client.connect(address).get();
+        }
+
+        boolean result = counter.await(timeout, TimeUnit.SECONDS);
+        long duration = System.currentTimeMillis() - start;
+
+        System.out.println("Average : " + (numberOfMessages - counter.getCount()) * 1000 / Math.max(1, duration)
+                + " events per second, in " + duration + "ms");
+
+        assertTrue("Still " + counter.getCount() + " messages to receive of a total of " + numberOfMessages, result);
+    }
+}
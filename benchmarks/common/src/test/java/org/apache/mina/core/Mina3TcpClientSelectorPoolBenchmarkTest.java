@@ -0,0 +1,164 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.core;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.AttributeKey;
+import org.apache.mina.transport.nio.FixedSelectorLoopPool;
+import org.apache.mina.transport.nio.NioSelectorLoop;
+import org.apache.mina.transport.nio.NioTcpClient;
+import org.apache.mina.transport.nio.NioTcpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Measure the client side throughput of many sessions opened by a single {@link NioTcpClient}, depending on the
+ * number of selector loops used by the client for the read/write events. Each session exchanges small messages with
+ * an echo server, one at a time.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@RunWith(Parameterized.class)
+public class Mina3TcpClientSelectorPoolBenchmarkTest {
+
+    private static final int SESSION_COUNT = 64;
+
+    private static final int MESSAGE_SIZE = 64;
+
+    private static final AttributeKey<Integer> RECEIVED_ATTRIBUTE = new AttributeKey<Integer>(Integer.class,
+            Mina3TcpClientSelectorPoolBenchmarkTest.class.getName() + ".received");
+
+    private final int selectorCount;
+
+    private final int numberOfMessages;
+
+    private final int timeout;
+
+    private NioTcpServer server;
+
+    private NioTcpClient client;
+
+    public Mina3TcpClientSelectorPoolBenchmarkTest(int selectorCount, int numberOfMessages, int timeout) {
+        this.selectorCount = selectorCount;
+        this.numberOfMessages = numberOfMessages;
+        this.timeout = timeout;
+    }
+
+    @Parameters(name = "{0} client selectors, {1} messages")
+    public static Collection<Object[]> getParameters() {
+        Object[][] parameters = new Object[][] { 
+                { 1, 1000000, 2 * 60 }, 
+                { 2, 1000000, 2 * 60 },
+                { 4, 1000000, 2 * 60 }, 
+                { 8, 1000000, 2 * 60 } };
+        return Arrays.asList(parameters);
+    }
+
+    @Before
+    public void init() throws IOException {
+        // the server has enough selectors for not being the bottleneck
+        server = new NioTcpServer(new FixedSelectorLoopPool("Server", 8), null);
+        server.getSessionConfig().setTcpNoDelay(true);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // echo
+                ByteBuffer buffer = (ByteBuffer) message;
+                ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+                echo.put(buffer);
+                echo.flip();
+                session.write(echo);
+            }
+        });
+        server.bind(0);
+
+        client = new NioTcpClient(new NioSelectorLoop("connect"), new FixedSelectorLoopPool("Client", selectorCount),
+                null);
+        client.getSessionConfig().setTcpNoDelay(true);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        client.disconnect();
+        server.unbind();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        final CountDownLatch counter = new CountDownLatch(numberOfMessages);
+        final byte[] data = new byte[MESSAGE_SIZE];
+
+        client.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                session.setAttribute(RECEIVED_ATTRIBUTE, 0);
+                session.write(ByteBuffer.wrap(data));
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                int received = session.getAttribute(RECEIVED_ATTRIBUTE) + ((ByteBuffer) message).remaining();
+
+                while (received >= MESSAGE_SIZE) {
+                    received -= MESSAGE_SIZE;
+                    counter.countDown();
+
+                    if (counter.getCount() > 0) {
+                        session.write(ByteBuffer.wrap(data));
+                    }
+                }
+
+                session.setAttribute(RECEIVED_ATTRIBUTE, received);
+            }
+        });
+
+        System.out.println("-------------- " + SESSION_COUNT + " sessions on " + selectorCount + " client selectors");
+        long start = System.currentTimeMillis();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getServerSocketChannel().socket()
+                .getLocalPort());
+
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            client.connect(address).get();
+        }
+
+        boolean result = counter.await(timeout, TimeUnit.SECONDS);
+        long duration = System.currentTimeMillis() - start;
+
+        System.out.println("Average : " + (numberOfMessages - counter.getCount()) * 1000 / Math.max(1, duration)
+                + " messages per second, in " + duration + "ms");
+
+        assertTrue("Still " + counter.getCount() + " messages to receive of a total of " + numberOfMessages, result);
+    }
+}
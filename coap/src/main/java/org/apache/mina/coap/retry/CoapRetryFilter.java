@@ -21,9 +21,6 @@ package org.apache.mina.coap.retry;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.api.AbstractIoFilter;
@@ -32,7 +29,9 @@ import org.apache.mina.api.IoSession;
 import org.apache.mina.coap.CoapMessage;
 import org.apache.mina.filterchain.ReadFilterChainController;
 import org.apache.mina.filterchain.WriteFilterChainController;
+import org.apache.mina.session.SessionScheduler;
 import org.apache.mina.session.WriteRequest;
+import org.apache.mina.service.scheduler.ScheduledTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,14 +52,11 @@ public class CoapRetryFilter extends AbstractIoFilter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CoapRetryFilter.class);
 
-    /** The executor in charge of scheduling the retransmissions */
-    private ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor();
-
     /** The confirmable messages waiting to be acknowledged */
     private Map<String, CoapTransmission> inFlight = new ConcurrentHashMap<>();
 
     /** The list of processed messages used to handle duplicate copies of Confirmable messages */
-    private ExpiringMap<String, CoapMessage> processed = new ExpiringMap<String, CoapMessage>(retryExecutor);
+    private ExpiringMap<String, CoapMessage> processed = new ExpiringMap<String, CoapMessage>();
 
     /**
      * {@inheritDoc}
@@ -94,7 +90,7 @@ public class CoapRetryFilter extends AbstractIoFilter {
             CoapTransmission t = inFlight.get(transmissionId);
             if (t != null) {
                 // cancel the scheduled retransmission
-                t.getRetryFuture().cancel(false);
+                t.getRetryTask().cancel();
                 inFlight.remove(transmissionId);
             }
             controller.callReadNextFilter(coapMsg);
@@ -134,8 +130,8 @@ public class CoapRetryFilter extends AbstractIoFilter {
                 inFlight.put(t.getId(), t);
             }
 
-            // schedule a retry
-            ScheduledFuture<?> future = retryExecutor.schedule(new Runnable() {
+            // schedule a retry, on the selector loop of the session
+            ScheduledTask task = SessionScheduler.schedule(session, new Runnable() {
 
                 @Override
                 public void run() {
@@ -152,7 +148,7 @@ public class CoapRetryFilter extends AbstractIoFilter {
                 }
             }, t.getNextTimeout(), TimeUnit.MILLISECONDS);
 
-            t.setRetryFuture(future);
+            t.setRetryTask(task);
 
             // move to the next filter
             controller.callWriteNextFilter(message);
@@ -160,12 +156,4 @@ public class CoapRetryFilter extends AbstractIoFilter {
         }
 
     }
-
-    /**
-     * clear the running executor
-     */
-    @Override
-    protected void finalize() throws Throwable {
-        retryExecutor.shutdown();
-    }
 }
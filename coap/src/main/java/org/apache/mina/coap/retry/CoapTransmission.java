@@ -20,10 +20,10 @@
 package org.apache.mina.coap.retry;
 
 import java.util.Random;
-import java.util.concurrent.ScheduledFuture;
 
 import org.apache.mina.api.IoSession;
 import org.apache.mina.coap.CoapMessage;
+import org.apache.mina.service.scheduler.ScheduledTask;
 
 /**
  * A transmission is a wrapper of a <i>Confirmable</i> {@link CoapMessage} carrying additional data used to ensure a
@@ -55,10 +55,10 @@ public class CoapTransmission {
     private CoapMessage message;
 
     /**
-     * The future in charge of the retransmission when the timeout is reached. It is needed to keep track of this future
-     * to be able to cancel it when the expected acknowledgment is received
+     * The task in charge of the retransmission when the timeout is reached. It is needed to keep track of this task to
+     * be able to cancel it when the expected acknowledgment is received
      */
-    private ScheduledFuture<?> retryFuture;
+    private ScheduledTask retryTask;
 
     /**
      * The number of transmission retry
@@ -103,12 +103,12 @@ public class CoapTransmission {
         return message;
     }
 
-    public ScheduledFuture<?> getRetryFuture() {
-        return retryFuture;
+    public ScheduledTask getRetryTask() {
+        return retryTask;
     }
 
-    public void setRetryFuture(ScheduledFuture<?> retryFuture) {
-        this.retryFuture = retryFuture;
+    public void setRetryTask(ScheduledTask retryTask) {
+        this.retryTask = retryTask;
     }
 
     public long getNextTimeout() {
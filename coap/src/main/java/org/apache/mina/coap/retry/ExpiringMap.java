@@ -26,12 +26,14 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A {@link Map} implementation backed with a {@link ConcurrentHashMap} providing entry expiration facilities.
  * 
  * <p>
- * A worker thread is started to check periodically if expired entries should be removed from the underlying map.
+ * The expired entries are removed periodically from the underlying map, either by a task scheduled on the given
+ * executor, or on the updates of the map once the checker period has elapsed.
  * </p>
  * 
  * @see ConcurrentHashMap
@@ -54,6 +56,9 @@ public class ExpiringMap<K, V> implements Map<K, V> {
     /** For running expiration tasks */
     private ScheduledExecutorService executor;
 
+    /** The time of the next expiration check, when the map is checked on its updates */
+    private final AtomicLong nextCheck;
+
     /**
      * A new expiring map
      * 
@@ -65,9 +70,30 @@ public class ExpiringMap<K, V> implements Map<K, V> {
         this.expirationPeriod = expirationPeriod;
         this.checkerPeriod = checkerPeriod;
         this.executor = executor;
+        this.nextCheck = null;
         executor.scheduleAtFixedRate(new ExpirationTask(), checkerPeriod, checkerPeriod, TimeUnit.SECONDS);
     }
 
+    /**
+     * A new expiring map, checked for expired entries on its updates
+     * 
+     * @param expirationPeriod the expiration period for an entry
+     * @param checkerPeriod the period between two checks of expired elements
+     */
+    public ExpiringMap(int expirationPeriod, int checkerPeriod) {
+        this.expirationPeriod = expirationPeriod;
+        this.checkerPeriod = checkerPeriod;
+        this.nextCheck = new AtomicLong(System.currentTimeMillis() + checkerPeriod * 1000L);
+    }
+
+    /**
+     * A map with an expiration period of 30 seconds, checked for expired entries on its updates every 10 seconds at
+     * most.
+     */
+    public ExpiringMap() {
+        this(EXPIRATION_PERIOD_IN_SEC, CHECKER_PERIOD_IN_SEC);
+    }
+
     /**
      * A map with an expiration period of 30 seconds. The worker in charge of expiring the map entries will run every 10
      * seconds.
@@ -126,6 +152,7 @@ public class ExpiringMap<K, V> implements Map<K, V> {
      */
     @Override
     public V put(K key, V value) {
+        checkExpiration();
         ExpiringValue<V> expValue = map.put(key, new ExpiringValue<V>(value));
         if (expValue != null) {
             return expValue.value;
@@ -150,6 +177,8 @@ public class ExpiringMap<K, V> implements Map<K, V> {
      */
     @Override
     public void putAll(Map<? extends K, ? extends V> m) {
+        checkExpiration();
+
         for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
             map.put(e.getKey(), new ExpiringValue<V>(e.getValue()));
         }
@@ -200,6 +229,23 @@ public class ExpiringMap<K, V> implements Map<K, V> {
         }
     }
 
+    /**
+     * Remove the expired entries if the checker period has elapsed, when the map has no expiration task
+     */
+    private void checkExpiration() {
+        if (nextCheck == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long next = nextCheck.get();
+
+        // only one of the concurrent updaters does the check
+        if ((now >= next) && nextCheck.compareAndSet(next, now + checkerPeriod * 1000L)) {
+            expire(now);
+        }
+    }
+
     /**
      * Task in chage of expriring values, to be scheduled.
      */
@@ -84,4 +84,22 @@ public class ExpiringMapTest {
         assertEquals(0, map.size());
     }
 
+    @Test
+    public void expiring_element_on_update() throws InterruptedException {
+        ExpiringMap<String, String> map = new ExpiringMap<>(1, 1);
+
+        map.put("key1", "value1");
+
+        // wait after expiration
+        Thread.sleep(2500L);
+
+        assertEquals(1, map.size());
+
+        // the update triggers the check
+        map.put("key2", "value2");
+
+        assertEquals(1, map.size());
+        assertTrue(map.containsKey("key2"));
+    }
+
 }
@@ -50,6 +50,18 @@ public abstract class AbstractIoFilter implements IoFilter {
     public void sessionIdle(final IoSession session, final IdleStatus status) {
     }
 
+    /**
+     * Invoked when the number of bytes pending in the session write queue crosses one of the write buffer watermarks.
+     * <p>
+     * Not part of {@link IoFilter} for keeping the existing filters source compatible: only the filters extending this
+     * class receive the event.
+     * 
+     * @param session {@link IoSession} associated with the invocation
+     * @param writable <code>true</code> if the session write queue dropped below the low watermark
+     */
+    public void sessionWritabilityChanged(final IoSession session, final boolean writable) {
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -51,6 +51,20 @@ public abstract class AbstractIoHandler implements IoHandler {
     public void sessionIdle(final IoSession session, final IdleStatus status) {
     }
 
+    /**
+     * Invoked when the number of bytes pending in the session write queue crosses one of the write buffer watermarks.
+     * The session becomes unwritable when the high watermark is exceeded, and writable again once the queue has been
+     * drained below the low watermark.
+     * <p>
+     * Not part of {@link IoHandler} for keeping the existing handlers source compatible: only the handlers extending
+     * this class receive the event.
+     * 
+     * @param session {@link IoSession} associated with the invocation
+     * @param writable <code>true</code> if the session write queue dropped below the low watermark
+     */
+    public void sessionWritabilityChanged(final IoSession session, final boolean writable) {
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -21,6 +21,7 @@ package org.apache.mina.api;
 
 import java.util.Map;
 
+import org.apache.mina.service.buffer.BufferAllocator;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 
 /**
@@ -78,4 +79,20 @@ public interface IoService {
      * @return The default configuration for this {@link IoService}
      */
     IoSessionConfig getSessionConfig();
+
+    /**
+     * Get the {@link BufferAllocator} providing the direct buffers used by the sessions of this service for writing
+     * and for the SSL/TLS processing.
+     * 
+     * @return the buffer allocator of this service
+     */
+    BufferAllocator getBufferAllocator();
+
+    /**
+     * Set the {@link BufferAllocator} providing the direct buffers used by the sessions of this service. Must be
+     * called before the service is bound/connected.
+     * 
+     * @param bufferAllocator the buffer allocator
+     */
+    void setBufferAllocator(BufferAllocator bufferAllocator);
 }
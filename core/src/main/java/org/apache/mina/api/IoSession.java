@@ -178,7 +178,8 @@ public interface IoSession {
 
     /* READ/WRITE PAUSE MANAGEMENT */
     /**
-     * Suspends read operations for this session.
+     * Suspends read operations for this session. The suspensions are counted, so the handler, a filter or an executor
+     * can suspend the reads independently : each call must be balanced by a call to {@link #resumeRead()}.
      */
     void suspendRead();
 
@@ -188,7 +189,8 @@ public interface IoSession {
     void suspendWrite();
 
     /**
-     * Resumes read operations for this session.
+     * Resumes read operations for this session, once every suspension has been released. A call without a pending
+     * suspension is ignored.
      */
     void resumeRead();
 
@@ -226,6 +228,24 @@ public interface IoSession {
      */
     long getWrittenBytes();
 
+    /**
+     * Gets the number of bytes pending in the write queue of this session, waiting for being written in the channel.
+     * 
+     * @return the number of bytes not written yet
+     */
+    long getWriteQueueBytes();
+
+    /**
+     * Tells if the write queue of this session is below its high watermark. A session becomes unwritable when more
+     * than {@link IoSessionConfig#getWriteBufferHighWaterMark()} bytes are pending, and writable again once the queue
+     * has been drained below {@link IoSessionConfig#getWriteBufferLowWaterMark()}. Writing in an unwritable session is
+     * still possible, but the caller should hold its writes until the
+     * {@link AbstractIoHandler#sessionWritabilityChanged(IoSession, boolean)} event.
+     * 
+     * @return <code>true</code> if the write queue is below the high watermark
+     */
+    boolean isWritable();
+
     /* IDLE management */
     /**
      * Gets the session configuration, it where the idle timeout are set and other transport specific configuration.
@@ -352,6 +372,22 @@ public interface IoSession {
      */
     IoFuture<Void> writeWithFuture(Object message);
 
+    /**
+     * Enqueue a message for writing, without flushing it. The message is processed by the filter chain and stored in
+     * the session write queue, but it won't be written to the socket until {@link #flush()} is called (or a flushing
+     * write or a close flushes the queue). This allows a lot of small messages to be gathered and written with a
+     * single system call.
+     * 
+     * @param message the message to be processed and written
+     */
+    void writeWithoutFlush(Object message);
+
+    /**
+     * Flush the messages enqueued by {@link #writeWithoutFlush(Object)}. This method wont block : the pending
+     * messages are written by the {@link org.apache.mina.transport.nio.SelectorLoop}.
+     */
+    void flush();
+
     /**
      * Internal method for enqueue write request after filter chain processing
      * 
@@ -127,4 +127,33 @@ public interface IoSessionConfig {
      * @param timeOut The timeout to set, in milliseconds. 0 means infinite
      */
     void setTimeout(int timeOut);
+
+    /**
+     * Get the number of bytes pending in the write queue above which the session becomes unwritable and a
+     * {@link AbstractIoHandler#sessionWritabilityChanged(IoSession, boolean)} event is fired.
+     * 
+     * @return the high watermark in bytes, or <code>null</code> if the write queue is not watched
+     */
+    Integer getWriteBufferHighWaterMark();
+
+    /**
+     * Set the number of bytes pending in the write queue above which the session becomes unwritable.
+     * 
+     * @param highWaterMark the high watermark in bytes
+     */
+    void setWriteBufferHighWaterMark(int highWaterMark);
+
+    /**
+     * Get the number of bytes pending in the write queue below which an unwritable session becomes writable again.
+     * 
+     * @return the low watermark in bytes, or <code>null</code> if the write queue is not watched
+     */
+    Integer getWriteBufferLowWaterMark();
+
+    /**
+     * Set the number of bytes pending in the write queue below which an unwritable session becomes writable again.
+     * 
+     * @param lowWaterMark the low watermark in bytes
+     */
+    void setWriteBufferLowWaterMark(int lowWaterMark);
 }
@@ -0,0 +1,205 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.flowcontrol;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.apache.mina.api.AbstractIoFilter;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.session.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filter suspending the reads of the sessions linked to a session which can't keep up with its writes. Typically
+ * used by a proxy : the data read from the inbound session are written to the outbound one, so when the outbound
+ * session write queue goes above its high watermark (see {@link IoSessionConfig#getWriteBufferHighWaterMark()}), the
+ * inbound session stops reading until the outbound queue is drained below the low watermark.
+ * 
+ * The filter must be in the chain of the writing sessions, as it reacts to their writability changes. A reader can be
+ * linked to several writers : its reads are resumed once none of them is unwritable anymore.
+ * 
+ * <pre>
+ * service.setFilters(.., new BackpressureFilter());
+ * 
+ * BackpressureFilter.link(outbound, inbound);
+ * </pre>
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BackpressureFilter extends AbstractIoFilter {
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(BackpressureFilter.class);
+
+    /** The sessions whose reads depend on the writability of the session holding this attribute */
+    private static final AttributeKey<Links> LINKS = new AttributeKey<Links>(Links.class, "internal_backpressureLinks");
+
+    /** The number of writers holding the reads of the session holding this attribute */
+    private static final AttributeKey<ReadHold> READ_HOLD = new AttributeKey<ReadHold>(ReadHold.class,
+            "internal_backpressureReadHold");
+
+    /**
+     * Suspend the reads of the given reader while the writer is unwritable. If the writer is already unwritable, the
+     * reads are suspended immediately.
+     * 
+     * @param writer the session whose write queue is watched
+     * @param reader the session to suspend
+     */
+    public static void link(IoSession writer, IoSession reader) {
+        Links links = getLinks(writer);
+
+        synchronized (links) {
+            if (links.readers.add(reader) && links.holding) {
+                hold(reader);
+            }
+        }
+    }
+
+    /**
+     * Remove a link created by {@link #link(IoSession, IoSession)}. If the writer was holding the reads of the reader,
+     * they are released.
+     * 
+     * @param writer the session whose write queue is watched
+     * @param reader the linked session
+     */
+    public static void unlink(IoSession writer, IoSession reader) {
+        Links links = writer.getAttribute(LINKS);
+
+        if (links == null) {
+            return;
+        }
+
+        synchronized (links) {
+            if (links.readers.remove(reader) && links.holding) {
+                release(reader);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionWritabilityChanged(IoSession session, boolean writable) {
+        // the state is kept even without any reader, for the sessions linked later
+        Links links = getLinks(session);
+
+        synchronized (links) {
+            if (links.holding == writable) {
+                links.holding = !writable;
+
+                for (IoSession reader : links.readers) {
+                    if (writable) {
+                        release(reader);
+                    } else {
+                        hold(reader);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionClosed(IoSession session) {
+        // a closed writer must not keep its readers suspended
+        Links links = session.getAttribute(LINKS);
+
+        if (links == null) {
+            return;
+        }
+
+        synchronized (links) {
+            if (links.holding) {
+                links.holding = false;
+
+                for (IoSession reader : links.readers) {
+                    release(reader);
+                }
+            }
+
+            links.readers.clear();
+        }
+    }
+
+    private static Links getLinks(IoSession writer) {
+        synchronized (writer) {
+            Links links = writer.getAttribute(LINKS);
+
+            if (links == null) {
+                links = new Links();
+                writer.setAttribute(LINKS, links);
+            }
+
+            return links;
+        }
+    }
+
+    private static void hold(IoSession reader) {
+        ReadHold readHold;
+
+        synchronized (reader) {
+            readHold = reader.getAttribute(READ_HOLD);
+
+            if (readHold == null) {
+                readHold = new ReadHold();
+                reader.setAttribute(READ_HOLD, readHold);
+            }
+        }
+
+        synchronized (readHold) {
+            if (readHold.count++ == 0) {
+                LOG.debug("suspending the reads of {}", reader);
+                reader.suspendRead();
+            }
+        }
+    }
+
+    private static void release(IoSession reader) {
+        ReadHold readHold = reader.getAttribute(READ_HOLD);
+
+        if (readHold == null) {
+            return;
+        }
+
+        synchronized (readHold) {
+            if ((readHold.count > 0) && (--readHold.count == 0)) {
+                LOG.debug("resuming the reads of {}", reader);
+                reader.resumeRead();
+            }
+        }
+    }
+
+    /** The readers linked to a writer, and whether the writer currently holds their reads */
+    private static final class Links {
+        private final Set<IoSession> readers = new CopyOnWriteArraySet<IoSession>();
+
+        private boolean holding = false;
+    }
+
+    /** The number of unwritable writers a reader is linked to */
+    private static final class ReadHold {
+        private int count = 0;
+    }
+}
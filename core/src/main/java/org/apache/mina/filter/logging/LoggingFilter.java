@@ -21,8 +21,8 @@ package org.apache.mina.filter.logging;
 
 import java.nio.ByteBuffer;
 
+import org.apache.mina.api.AbstractIoFilter;
 import org.apache.mina.api.IdleStatus;
-import org.apache.mina.api.IoFilter;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.filterchain.ReadFilterChainController;
 import org.apache.mina.filterchain.WriteFilterChainController;
@@ -37,7 +37,7 @@ import org.slf4j.LoggerFactory;
  * @author jvermillar
  * 
  */
-public class LoggingFilter implements IoFilter {
+public class LoggingFilter extends AbstractIoFilter {
 
     /** The logger */
     private final Logger logger;
@@ -60,6 +60,9 @@ public class LoggingFilter implements IoFilter {
     /** The log level for the sessionIdle event. Default to INFO. */
     private LogLevel sessionIdleLevel = LogLevel.INFO;
 
+    /** The log level for the sessionWritabilityChanged event. Default to INFO. */
+    private LogLevel sessionWritabilityChangedLevel = LogLevel.INFO;
+
     /**
      * Default Constructor.
      */
@@ -171,6 +174,14 @@ public class LoggingFilter implements IoFilter {
         log(sessionIdleLevel, "IDLE");
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionWritabilityChanged(final IoSession session, final boolean writable) {
+        log(sessionWritabilityChangedLevel, writable ? "WRITABLE" : "UNWRITABLE");
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -280,6 +291,24 @@ public class LoggingFilter implements IoFilter {
         return sessionIdleLevel;
     }
 
+    /**
+     * Set the LogLevel for the SessionWritabilityChanged event.
+     * 
+     * @param level The LogLevel to set
+     */
+    public void setSessionWritabilityChangedLogLevel(final LogLevel level) {
+        sessionWritabilityChangedLevel = level;
+    }
+
+    /**
+     * Get the LogLevel for the SessionWritabilityChanged event.
+     * 
+     * @return The LogLevel for the SessionWritabilityChanged eventType
+     */
+    public LogLevel getSessionWritabilityChangedLogLevel() {
+        return sessionWritabilityChangedLevel;
+    }
+
     /**
      * Set the LogLevel for the SessionClosed event.
      * 
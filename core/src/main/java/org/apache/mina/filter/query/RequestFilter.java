@@ -21,8 +21,6 @@ package org.apache.mina.filter.query;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.mina.api.AbstractIoFilter;
@@ -30,6 +28,7 @@ import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.filterchain.ReadFilterChainController;
 import org.apache.mina.session.AttributeKey;
+import org.apache.mina.session.SessionScheduler;
 
 /**
  * A filter providing {@link IoFuture} for request/response protocol.
@@ -73,8 +72,8 @@ public class RequestFilter<REQUEST extends Request, RESPONSE extends Response> e
         Map inFlight = session.getAttribute(IN_FLIGHT_REQUESTS);
         RequestFuture<REQUEST, RESPONSE> future = new RequestFuture<REQUEST, RESPONSE>(session, request.requestId());
 
-        // schedule a timeout task
-        future.setTimeoutFuture(schedExec.schedule(future.timeout, timeoutInMs, TimeUnit.MILLISECONDS));
+        // schedule a timeout task, on the selector loop of the session
+        future.setTimeoutTask(SessionScheduler.schedule(session, future.timeout, timeoutInMs, TimeUnit.MILLISECONDS));
 
         // save the future for completion
         inFlight.put(request.requestId(), future);
@@ -85,8 +84,6 @@ public class RequestFilter<REQUEST extends Request, RESPONSE extends Response> e
     @SuppressWarnings("rawtypes")
     static final AttributeKey<Map> IN_FLIGHT_REQUESTS = new AttributeKey<Map>(Map.class, "request.in.flight");
 
-    private ScheduledExecutorService schedExec = Executors.newScheduledThreadPool(1);
-
     @SuppressWarnings("rawtypes")
     @Override
     public void sessionOpened(IoSession session) {
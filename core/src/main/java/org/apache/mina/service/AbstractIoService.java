@@ -27,6 +27,8 @@ import org.apache.mina.api.IoHandler;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.service.buffer.BufferAllocator;
+import org.apache.mina.service.buffer.PooledBufferAllocator;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +61,9 @@ public abstract class AbstractIoService implements IoService {
     /** used for executing IoHandler event in another pool of thread (not in the low level I/O one) */
     protected final IoHandlerExecutor ioHandlerExecutor;
 
+    /** The allocator providing the direct buffers used by the sessions */
+    private BufferAllocator bufferAllocator = new PooledBufferAllocator();
+
     /**
      * The Service states
      */
@@ -231,4 +236,24 @@ public abstract class AbstractIoService implements IoService {
     public void setFilters(final IoFilter... filters) {
         this.filters = filters;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBufferAllocator(final BufferAllocator bufferAllocator) {
+        if (bufferAllocator == null) {
+            throw new IllegalArgumentException("bufferAllocator cannot be null");
+        }
+
+        this.bufferAllocator = bufferAllocator;
+    }
 }
\ No newline at end of file
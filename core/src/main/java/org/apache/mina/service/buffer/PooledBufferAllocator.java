@@ -0,0 +1,413 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BufferAllocator} recycling the direct buffers. The requested capacity is rounded up to a power of two size
+ * class, and the buffers of each size class are carved from big direct slabs. The released buffers are first kept in a
+ * small cache local to the releasing thread (typically a selector loop), then in a pool shared by all the threads.
+ * <p>
+ * Requests bigger than the maximum buffer size are not pooled : a new direct buffer is allocated and left to the GC
+ * when released. The memory of the slabs is never given back to the system, so the allocator size is the peak usage.
+ * The counters can be used for sizing it.
+ * <p>
+ * A released buffer whose capacity is not a size class is rejected. Tracking the buffers handed by the allocator costs
+ * a hash set update on each allocation and release, so it is only done when the leak detection is enabled : releasing
+ * a buffer which doesn't come from this allocator, or releasing a buffer twice, is then rejected instead of corrupting
+ * the pool. It's meant for debugging the buffer ownership, using the {@link #LEAK_DETECTION} system property or the
+ * constructor flag.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(PooledBufferAllocator.class);
+
+    /** The default size of the smallest size class */
+    public static final int DEFAULT_MIN_BUFFER_SIZE = 256;
+
+    /** The default size of the biggest size class */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+
+    /** The default size of the direct memory chunks carved into buffers */
+    public static final int DEFAULT_SLAB_SIZE = 256 * 1024;
+
+    /** The default number of buffers per size class kept by each thread */
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 32;
+
+    /** The system property to set to <code>true</code> for tracking the buffers allocated by default */
+    public static final String LEAK_DETECTION = "org.apache.mina.service.buffer.leakDetection";
+
+    /** log2 of the smallest size class */
+    private final int minShift;
+
+    private final int maxBufferSize;
+
+    private final int slabSize;
+
+    private final int threadCacheSize;
+
+    /** the free buffers shared by all the threads, for each size class */
+    private final Queue<ByteBuffer>[] pools;
+
+    /** the pooled buffers allocated and not yet released, <code>null</code> if the leak detection is disabled */
+    private final Set<BufferKey> allocatedBuffers;
+
+    /** the free buffers owned by each thread */
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(pools.length, threadCacheSize);
+        }
+    };
+
+    // counters
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    private final AtomicLong cacheHitCount = new AtomicLong();
+
+    private final AtomicLong unpooledAllocationCount = new AtomicLong();
+
+    private final AtomicLong releaseCount = new AtomicLong();
+
+    private final AtomicLong slabCount = new AtomicLong();
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * Create a pooled allocator with the default sizes
+     */
+    public PooledBufferAllocator() {
+        this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_SLAB_SIZE, DEFAULT_THREAD_CACHE_SIZE);
+    }
+
+    /**
+     * Create a pooled allocator, tracking the buffers if the {@link #LEAK_DETECTION} system property is set.
+     * 
+     * @param minBufferSize the size of the smallest size class, must be a power of two
+     * @param maxBufferSize the size of the biggest size class, must be a power of two
+     * @param slabSize the size of the direct memory chunks carved into buffers
+     * @param threadCacheSize the number of buffers per size class kept by each thread, 0 for no thread cache
+     */
+    public PooledBufferAllocator(int minBufferSize, int maxBufferSize, int slabSize, int threadCacheSize) {
+        this(minBufferSize, maxBufferSize, slabSize, threadCacheSize, Boolean.getBoolean(LEAK_DETECTION));
+    }
+
+    /**
+     * Create a pooled allocator.
+     * 
+     * @param minBufferSize the size of the smallest size class, must be a power of two
+     * @param maxBufferSize the size of the biggest size class, must be a power of two
+     * @param slabSize the size of the direct memory chunks carved into buffers
+     * @param threadCacheSize the number of buffers per size class kept by each thread, 0 for no thread cache
+     * @param leakDetection <code>true</code> for tracking the buffers allocated and rejecting the double and foreign
+     *        releases
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public PooledBufferAllocator(int minBufferSize, int maxBufferSize, int slabSize, int threadCacheSize,
+            boolean leakDetection) {
+        if ((minBufferSize <= 0) || (Integer.bitCount(minBufferSize) != 1)) {
+            throw new IllegalArgumentException("minBufferSize: " + minBufferSize + " (expected: power of two)");
+        }
+
+        if ((maxBufferSize < minBufferSize) || (Integer.bitCount(maxBufferSize) != 1)) {
+            throw new IllegalArgumentException("maxBufferSize: " + maxBufferSize
+                    + " (expected: power of two, bigger than minBufferSize)");
+        }
+
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize: " + slabSize + " (expected: 1+)");
+        }
+
+        if (threadCacheSize < 0) {
+            throw new IllegalArgumentException("threadCacheSize: " + threadCacheSize + " (expected: 0+)");
+        }
+
+        this.minShift = Integer.numberOfTrailingZeros(minBufferSize);
+        this.maxBufferSize = maxBufferSize;
+        this.slabSize = slabSize;
+        this.threadCacheSize = threadCacheSize;
+
+        if (leakDetection) {
+            allocatedBuffers = Collections.newSetFromMap(new ConcurrentHashMap<BufferKey, Boolean>());
+        } else {
+            allocatedBuffers = null;
+        }
+
+        pools = new Queue[Integer.numberOfTrailingZeros(maxBufferSize) - minShift + 1];
+
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity + " (expected: 0+)");
+        }
+
+        allocationCount.incrementAndGet();
+
+        if (capacity > maxBufferSize) {
+            // too big for being pooled
+            unpooledAllocationCount.incrementAndGet();
+
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        int sizeClass = sizeClass(capacity);
+        ByteBuffer buffer = threadCaches.get().poll(sizeClass);
+
+        if (buffer != null) {
+            cacheHitCount.incrementAndGet();
+        } else {
+            buffer = pools[sizeClass].poll();
+
+            if (buffer == null) {
+                buffer = allocateSlab(sizeClass);
+            }
+        }
+
+        if (allocatedBuffers != null) {
+            allocatedBuffers.add(new BufferKey(buffer));
+        }
+
+        usedBytes.addAndGet(buffer.capacity());
+        buffer.clear();
+        buffer.limit(capacity);
+
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+        if ((buffer == null) || !buffer.isDirect()) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+
+        if (capacity > maxBufferSize) {
+            // not pooled, the GC will free it
+            return;
+        }
+
+        int sizeClass = sizeClass(capacity);
+
+        if (capacity != (1 << (sizeClass + minShift))) {
+            LOG.warn("releasing a buffer which was not allocated by this allocator : {}", buffer);
+            return;
+        }
+
+        if ((allocatedBuffers != null) && !allocatedBuffers.remove(new BufferKey(buffer))) {
+            LOG.warn("releasing a buffer which was not allocated by this allocator, or already released : {}", buffer);
+            return;
+        }
+
+        releaseCount.incrementAndGet();
+        usedBytes.addAndGet(-capacity);
+
+        if (!threadCaches.get().offer(sizeClass, buffer)) {
+            pools[sizeClass].offer(buffer);
+        }
+    }
+
+    /**
+     * Compute the index of the smallest size class able to hold the given capacity
+     */
+    private int sizeClass(int capacity) {
+        if (capacity <= (1 << minShift)) {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - minShift;
+    }
+
+    /**
+     * Allocate a new slab for a size class : the first buffer is returned, the other ones are pushed in the pool.
+     */
+    private ByteBuffer allocateSlab(int sizeClass) {
+        int bufferSize = 1 << (sizeClass + minShift);
+        int count = Math.max(1, slabSize / bufferSize);
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * count);
+
+        slabCount.incrementAndGet();
+        reservedBytes.addAndGet(slab.capacity());
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("allocated a slab of {} buffers of {} bytes", count, bufferSize);
+        }
+
+        ByteBuffer first = null;
+
+        for (int i = 0; i < count; i++) {
+            slab.limit((i + 1) * bufferSize);
+            slab.position(i * bufferSize);
+            ByteBuffer buffer = slab.slice();
+
+            if (first == null) {
+                first = buffer;
+            } else {
+                pools[sizeClass].offer(buffer);
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * @return the number of calls to {@link #allocate(int)}
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * @return the number of allocations served by the cache of the calling thread
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * @return the number of allocations too big for being pooled
+     */
+    public long getUnpooledAllocationCount() {
+        return unpooledAllocationCount.get();
+    }
+
+    /**
+     * @return the number of pooled buffers released
+     */
+    public long getReleaseCount() {
+        return releaseCount.get();
+    }
+
+    /**
+     * @return the number of slabs allocated
+     */
+    public long getSlabCount() {
+        return slabCount.get();
+    }
+
+    /**
+     * @return the direct memory held by the slabs, in bytes
+     */
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * @return the capacity of the pooled buffers currently allocated and not yet released, in bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * The free buffers kept by a thread, for each size class. Only accessed by its owner thread.
+     */
+    private static class ThreadCache {
+        private final ByteBuffer[][] stacks;
+
+        private final int[] sizes;
+
+        public ThreadCache(int sizeClassCount, int cacheSize) {
+            stacks = new ByteBuffer[sizeClassCount][cacheSize];
+            sizes = new int[sizeClassCount];
+        }
+
+        public ByteBuffer poll(int sizeClass) {
+            int size = sizes[sizeClass];
+
+            if (size == 0) {
+                return null;
+            }
+
+            size--;
+            ByteBuffer buffer = stacks[sizeClass][size];
+            stacks[sizeClass][size] = null;
+            sizes[sizeClass] = size;
+
+            return buffer;
+        }
+
+        public boolean offer(int sizeClass, ByteBuffer buffer) {
+            int size = sizes[sizeClass];
+
+            if (size == stacks[sizeClass].length) {
+                return false;
+            }
+
+            stacks[sizeClass][size] = buffer;
+            sizes[sizeClass] = size + 1;
+
+            return true;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the buffers allocated are tracked, for rejecting the double and foreign releases
+     */
+    public boolean isLeakDetection() {
+        return allocatedBuffers != null;
+    }
+
+    /**
+     * Identify a buffer by its reference : {@link ByteBuffer#equals(Object)} compares the content.
+     */
+    private static final class BufferKey {
+        private final ByteBuffer buffer;
+
+        public BufferKey(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof BufferKey) && (((BufferKey) obj).buffer == buffer);
+        }
+    }
+}
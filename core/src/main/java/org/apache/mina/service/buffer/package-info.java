@@ -0,0 +1,34 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+/**
+ * <p>
+ * Allocators providing the direct {@link java.nio.ByteBuffer}s used by the transports for writing and by the SSL/TLS
+ * layer.
+ * <p>
+ * Two kind of {@link org.apache.mina.service.buffer.BufferAllocator} are available :
+ * <ul>
+ * <li>unpooled, which allocates a new direct buffer for each request and let the GC free it
+ * <li>pooled, which carves the buffers into big direct slabs and recycles them through per-thread caches
+ * </ul>
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+package org.apache.mina.service.buffer;
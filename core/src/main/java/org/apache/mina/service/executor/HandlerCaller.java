@@ -20,6 +20,7 @@
 
 package org.apache.mina.service.executor;
 
+import org.apache.mina.api.AbstractIoHandler;
 import org.apache.mina.api.IoHandler;
 import org.apache.mina.api.IoSession;
 
@@ -51,6 +52,20 @@ class HandlerCaller implements EventVisitor {
 
     }
 
+    @Override
+    public void visit(WritabilityEvent event) {
+        IoSession session = event.getSession();
+        try {
+            IoHandler handler = session.getService().getIoHandler();
+
+            if (handler instanceof AbstractIoHandler) {
+                ((AbstractIoHandler) handler).sessionWritabilityChanged(session, event.isWritable());
+            }
+        } catch (Exception e) {
+            session.getService().getIoHandler().exceptionCaught(session, e);
+        }
+    }
+
     @Override
     public void visit(OpenEvent event) {
         IoSession session = event.getSession();
@@ -19,16 +19,24 @@
  */
 package org.apache.mina.service.executor;
 
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Use this executor if you want the {@link IoHandler} events of a session to be executed in order and on the same
  * thread. In your {@link IoHandler} code you don't need to care about session level concurrency.
+ * <br>
+ * The queue of a worker thread is bounded : when it's full, the new events are handled according to the
+ * {@link OverloadPolicy}, without blocking the caller.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -38,18 +46,48 @@ public final class OrderedHandlerExecutor implements IoHandlerExecutor {
 
     private Worker[] workers;
 
+    private final int queueSize;
+
+    private final OverloadPolicy overloadPolicy;
+
+    private volatile RejectedEventHandler rejectedEventHandler;
+
+    /** The number of events dropped by the overload policy */
+    private final AtomicLong rejectedEventCount = new AtomicLong();
+
     /**
-     * Create an {@link OrderedHandlerExecutor} with a given number of thread and a given queue size.
+     * Create an {@link OrderedHandlerExecutor} with a given number of thread and a given queue size, suspending the
+     * reads of the sessions submitting events to a full queue.
      * 
      * @param workerThreadCount the worker thread count
      * @param queueSize the size of the queue for each worker thread
      */
     public OrderedHandlerExecutor(int workerThreadCount, int queueSize) {
-        LOG.debug("creating OrderedHandlerExecutor workerThreadCount = {} queueSize = {}", workerThreadCount, queueSize);
+        this(workerThreadCount, queueSize, OverloadPolicy.SUSPEND_READ);
+    }
+
+    /**
+     * Create an {@link OrderedHandlerExecutor} with a given number of thread, a given queue size and a given overload
+     * policy.
+     * 
+     * @param workerThreadCount the worker thread count
+     * @param queueSize the size of the queue for each worker thread
+     * @param overloadPolicy what to do with the events submitted to a full queue
+     */
+    public OrderedHandlerExecutor(int workerThreadCount, int queueSize, OverloadPolicy overloadPolicy) {
+        LOG.debug("creating OrderedHandlerExecutor workerThreadCount = {} queueSize = {} overloadPolicy = {}",
+                new Object[] { workerThreadCount, queueSize, overloadPolicy });
+
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize: " + queueSize + " (expected: 1+)");
+        }
+
+        this.queueSize = queueSize;
+        this.overloadPolicy = overloadPolicy;
         workers = new Worker[workerThreadCount];
 
         for (int i = 0; i < workerThreadCount; i++) {
-            workers[i] = new Worker(i, queueSize);
+            workers[i] = new Worker(i);
         }
         for (int i = 0; i < workerThreadCount; i++) {
             workers[i].start();
@@ -62,31 +100,269 @@ public final class OrderedHandlerExecutor implements IoHandlerExecutor {
      */
     @Override
     public void execute(Event event) {
-        try {
-            int workerIndex = (int) (event.getSession().getId() % workers.length);
-            LOG.debug("executing event {} in worker {}", event, workerIndex);
-            workers[workerIndex].enqueue(event);
-        } catch (InterruptedException e) {
-            // interrupt the world
-            return;
+        IoSession session = event.getSession();
+        int workerIndex = (int) (session.getId() % workers.length);
+        LOG.debug("executing event {} in worker {}", event, workerIndex);
+        workers[workerIndex].enqueue(event, session);
+    }
+
+    /**
+     * @return what is done with the events submitted to a full queue
+     */
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    /**
+     * @return the handler notified of the dropped events, or <code>null</code>
+     */
+    public RejectedEventHandler getRejectedEventHandler() {
+        return rejectedEventHandler;
+    }
+
+    /**
+     * Set the handler notified of the events dropped by the {@link OverloadPolicy#REJECT} and
+     * {@link OverloadPolicy#DROP_OLDEST} policies.
+     * 
+     * @param rejectedEventHandler the handler, or <code>null</code>
+     */
+    public void setRejectedEventHandler(RejectedEventHandler rejectedEventHandler) {
+        this.rejectedEventHandler = rejectedEventHandler;
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Get the number of events waiting in the queue of a worker.
+     * 
+     * @param workerIndex the index of the worker
+     * @return the number of queued events
+     */
+    public int getWorkerBacklog(int workerIndex) {
+        return workers[workerIndex].queue.size();
+    }
+
+    /**
+     * Get the number of events of a session waiting in the queue of its worker, or being executed.
+     * 
+     * @param session the session
+     * @return the number of pending events
+     */
+    public int getSessionBacklog(IoSession session) {
+        return workers[(int) (session.getId() % workers.length)].getBacklog(session);
+    }
+
+    /**
+     * @return the number of events dropped by the overload policy
+     */
+    public long getRejectedEventCount() {
+        return rejectedEventCount.get();
+    }
+
+    /**
+     * The open, close and writability events are never dropped
+     */
+    private static boolean isDroppable(Event event) {
+        return (event instanceof ReceiveEvent) || (event instanceof SentEvent) || (event instanceof IdleEvent);
+    }
+
+    private void reject(Event event) {
+        rejectedEventCount.incrementAndGet();
+        LOG.debug("rejecting event {}", event);
+        RejectedEventHandler handler = rejectedEventHandler;
+
+        if (handler != null) {
+            handler.eventRejected(event);
+        }
+    }
+
+    /**
+     * The events of a session waiting in the queue of its worker, or being executed. Kept by the worker as long as the
+     * session has pending events.
+     */
+    private static final class SessionBacklog {
+        private final IoSession session;
+
+        /** The number of pending events, guarded by the lock of the worker */
+        private int count = 0;
+
+        /**
+         * Does the executor hold a read suspension of the session. The session counts the suspensions, so the one of
+         * the executor must be released exactly once : the transitions are done under the backlog lock.
+         */
+        private boolean readSuspended = false;
+
+        /** Has the session refused to suspend its reads */
+        private boolean suspendUnsupported = false;
+
+        SessionBacklog(IoSession session) {
+            this.session = session;
+        }
+
+        synchronized boolean isSuspendUnsupported() {
+            return suspendUnsupported;
+        }
+
+        /**
+         * Suspend the reads of the session until its backlog is drained. Called before queuing the event, so the
+         * backlog can't be drained before the suspension is recorded.
+         */
+        synchronized void suspendRead() {
+            if (readSuspended || suspendUnsupported) {
+                return;
+            }
+
+            try {
+                session.suspendRead();
+            } catch (IllegalStateException e) {
+                // the transport can't suspend the reads of this session, its next events will be rejected
+                LOG.debug("session {} can't suspend its reads, rejecting its events", session);
+                suspendUnsupported = true;
+                return;
+            }
+
+            LOG.debug("worker queue full, suspending the reads of session {}", session);
+            readSuspended = true;
+        }
+
+        synchronized void drained() {
+            if (readSuspended) {
+                LOG.debug("backlog drained, resuming the reads of session {}", session);
+                readSuspended = false;
+                session.resumeRead();
+            }
+        }
+    }
+
+    /**
+     * An event waiting in the queue of a worker, with the backlog of its session
+     */
+    private static final class PendingEvent {
+        private final Event event;
+
+        private final SessionBacklog backlog;
+
+        PendingEvent(Event event, SessionBacklog backlog) {
+            this.event = event;
+            this.backlog = backlog;
         }
     }
 
     /** thread in charge of gathering events from a queue and running them */
-    private static class Worker extends Thread {
+    private class Worker extends Thread {
+
+        private final HandlerCaller caller = new HandlerCaller();
+
+        /** Unbounded, the size is checked by the overload policy */
+        private final BlockingQueue<PendingEvent> queue = new LinkedBlockingQueue<PendingEvent>();
 
-        private static HandlerCaller caller = new HandlerCaller();
+        /** The backlog of the sessions having pending events, guarded by the lock */
+        private final Map<IoSession, SessionBacklog> backlogs = new IdentityHashMap<IoSession, SessionBacklog>();
 
-        private final BlockingQueue<Event> queue;
+        private final Object lock = new Object();
 
-        public Worker(int index, int queueSize) {
+        public Worker(int index) {
             super("IoHandlerWorker " + index);
-            queue = new LinkedBlockingQueue<Event>(queueSize);
         }
 
-        public void enqueue(Event event) throws InterruptedException {
+        public void enqueue(Event event, IoSession session) {
             LOG.debug("enqueing event : {}", event);
-            queue.put(event);
+            boolean overloaded = false;
+
+            if ((queue.size() >= queueSize) && isDroppable(event)) {
+                switch (overloadPolicy) {
+                case REJECT:
+                    reject(event);
+                    return;
+
+                case DROP_OLDEST:
+                    dropOldest();
+                    break;
+
+                default:
+                    overloaded = true;
+                    break;
+                }
+            }
+
+            SessionBacklog backlog = acquireBacklog(session);
+
+            if (overloaded) {
+                if (backlog.isSuspendUnsupported()) {
+                    // no back pressure possible on this session
+                    releaseBacklog(backlog);
+                    reject(event);
+                    return;
+                }
+
+                backlog.suspendRead();
+            }
+
+            queue.add(new PendingEvent(event, backlog));
+        }
+
+        /**
+         * Get the backlog of a session, counting a new pending event
+         */
+        private SessionBacklog acquireBacklog(IoSession session) {
+            synchronized (lock) {
+                SessionBacklog backlog = backlogs.get(session);
+
+                if (backlog == null) {
+                    backlog = new SessionBacklog(session);
+                    backlogs.put(session, backlog);
+                }
+
+                backlog.count++;
+
+                return backlog;
+            }
+        }
+
+        /**
+         * Count a pending event as done. Once the session has no more pending events its backlog is forgotten, and
+         * its reads are resumed if they were suspended by the executor.
+         */
+        private void releaseBacklog(SessionBacklog backlog) {
+            synchronized (lock) {
+                backlog.count--;
+
+                if (backlog.count > 0) {
+                    return;
+                }
+
+                backlogs.remove(backlog.session);
+            }
+
+            backlog.drained();
+        }
+
+        int getBacklog(IoSession session) {
+            synchronized (lock) {
+                SessionBacklog backlog = backlogs.get(session);
+
+                return backlog == null ? 0 : backlog.count;
+            }
+        }
+
+        private void dropOldest() {
+            Iterator<PendingEvent> it = queue.iterator();
+
+            while (it.hasNext()) {
+                PendingEvent oldest = it.next();
+
+                if (isDroppable(oldest.event)) {
+                    it.remove();
+                    releaseBacklog(oldest.backlog);
+                    reject(oldest.event);
+                    return;
+                }
+            }
         }
 
         /**
@@ -97,9 +373,14 @@ public final class OrderedHandlerExecutor implements IoHandlerExecutor {
             for (;;) {
                 try {
 
-                    Event e = queue.take();
-                    LOG.debug("dequeing event {}", e);
-                    e.visit(caller);
+                    PendingEvent e = queue.take();
+                    LOG.debug("dequeing event {}", e.event);
+
+                    try {
+                        e.event.visit(caller);
+                    } finally {
+                        releaseBacklog(e.backlog);
+                    }
 
                 } catch (InterruptedException e) {
                     // end this thread
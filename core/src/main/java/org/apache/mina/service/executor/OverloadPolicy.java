@@ -0,0 +1,47 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+/**
+ * What an {@link IoHandlerExecutor} does with a new event when its queue is full. The caller is never blocked : it's
+ * usually a selector loop, which would stop the I/O of all its sessions.
+ * <br>
+ * The open, close and writability events are always queued, the handler relying on them for managing the session.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum OverloadPolicy {
+    /**
+     * Queue the event anyway, and suspend the reads of its session until all its queued events have been executed.
+     * The queue exceeds its size by the events already read from the session. The events of a session whose transport
+     * can't suspend the reads are rejected as with {@link #REJECT}.
+     */
+    SUSPEND_READ,
+
+    /**
+     * Drop the new event, and give it to the {@link RejectedEventHandler}.
+     */
+    REJECT,
+
+    /**
+     * Drop the oldest queued event, and give it to the {@link RejectedEventHandler}.
+     */
+    DROP_OLDEST
+}
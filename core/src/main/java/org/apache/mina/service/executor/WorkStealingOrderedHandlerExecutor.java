@@ -0,0 +1,206 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.mina.api.IoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Use this executor if you want the {@link IoHandler} events of a session to be executed in order, without pinning
+ * the session to a thread. In your {@link IoHandler} code you don't need to care about session level concurrency, but
+ * the events of a session may be executed by different threads.
+ * <br>
+ * Each session has its own queue of events. A queue becoming non empty is submitted as a single task to a work
+ * stealing {@link ForkJoinPool}, and runs a bounded number of events before being submitted again : a busy session
+ * doesn't hold up the sessions which would share its thread with the {@link OrderedHandlerExecutor}, and the idle
+ * threads of the pool pick up the pending queues.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class WorkStealingOrderedHandlerExecutor implements IoHandlerExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkStealingOrderedHandlerExecutor.class);
+
+    /** The default number of events run by a session queue before letting the other sessions run */
+    public static final int DEFAULT_MAX_EVENTS_PER_RUN = 16;
+
+    /** The queue of events of a session */
+    private static final AttributeKey<SessionQueue> SESSION_QUEUE = new AttributeKey<SessionQueue>(
+            SessionQueue.class, "internal_handlerExecutorQueue");
+
+    private static final HandlerCaller CALLER = new HandlerCaller();
+
+    private final ForkJoinPool pool;
+
+    private final int maxEventsPerRun;
+
+    /** Serializes the creation of the session queues */
+    private final Object lock = new Object();
+
+    /**
+     * Create an executor with a pool of one thread per processor.
+     */
+    public WorkStealingOrderedHandlerExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_EVENTS_PER_RUN);
+    }
+
+    /**
+     * Create an executor with its own pool.
+     * 
+     * @param workerThreadCount the number of threads of the pool
+     * @param maxEventsPerRun the number of events run by a session before letting the other sessions run
+     */
+    public WorkStealingOrderedHandlerExecutor(int workerThreadCount, int maxEventsPerRun) {
+        // the queues are never joined, a FIFO scheduling is fairer for them
+        this(new ForkJoinPool(workerThreadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true),
+                maxEventsPerRun);
+    }
+
+    /**
+     * Create an executor running its events in a given pool.
+     * 
+     * @param pool the pool running the events
+     * @param maxEventsPerRun the number of events run by a session before letting the other sessions run
+     */
+    public WorkStealingOrderedHandlerExecutor(ForkJoinPool pool, int maxEventsPerRun) {
+        if (maxEventsPerRun <= 0) {
+            throw new IllegalArgumentException("maxEventsPerRun: " + maxEventsPerRun + " (expected: 1+)");
+        }
+
+        LOG.debug("creating WorkStealingOrderedHandlerExecutor parallelism = {} maxEventsPerRun = {}",
+                pool.getParallelism(), maxEventsPerRun);
+        this.pool = pool;
+        this.maxEventsPerRun = maxEventsPerRun;
+    }
+
+    /**
+     * @return the pool running the events
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the number of events run by a session before letting the other sessions run
+     */
+    public int getMaxEventsPerRun() {
+        return maxEventsPerRun;
+    }
+
+    /**
+     * Get the number of events of a session waiting in its queue. The queue being unbounded, this executor never
+     * applies an {@link OverloadPolicy}.
+     * 
+     * @param session the session
+     * @return the number of queued events, counted by traversing the queue
+     */
+    public int getSessionBacklog(IoSession session) {
+        SessionQueue queue = session.getAttribute(SESSION_QUEUE);
+        return queue == null ? 0 : queue.events.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Event event) {
+        LOG.debug("executing event {}", event);
+        getQueue(event.getSession()).add(event);
+    }
+
+    private SessionQueue getQueue(IoSession session) {
+        SessionQueue queue = session.getAttribute(SESSION_QUEUE);
+
+        if (queue == null) {
+            // the events of a session may come from different threads
+            synchronized (lock) {
+                queue = session.getAttribute(SESSION_QUEUE);
+
+                if (queue == null) {
+                    queue = new SessionQueue();
+                    session.setAttribute(SESSION_QUEUE, queue);
+                }
+            }
+        }
+
+        return queue;
+    }
+
+    /**
+     * The events of a session, run by one pool task at a time
+     */
+    private final class SessionQueue implements Runnable {
+        private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+
+        /** Is the queue submitted to the pool, or running */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        void add(Event event) {
+            events.add(event);
+
+            if (scheduled.compareAndSet(false, true)) {
+                pool.execute(this);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            for (int i = 0; i < maxEventsPerRun; i++) {
+                Event event = events.poll();
+
+                if (event == null) {
+                    break;
+                }
+
+                LOG.debug("dequeing event {}", event);
+
+                try {
+                    event.visit(CALLER);
+                } catch (RuntimeException e) {
+                    LOG.error("Unexpected exception while running the event " + event, e);
+                }
+            }
+
+            if (!events.isEmpty()) {
+                // let the other sessions run, the queue stays scheduled
+                pool.execute(this);
+                return;
+            }
+
+            scheduled.set(false);
+
+            // an event may have been added after the last poll, without scheduling the queue
+            if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+                pool.execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.idlechecker;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.session.AbstractIoSession;
+
+/**
+ * The position of a session in the {@link TimingWheelIdleChecker} for a given {@link IdleStatus}. Each session owns
+ * one entry per idle status, so the checker links the entries in its wheel without allocating or looking up anything
+ * on I/O events.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class IdleEntry {
+    /** the session owning this entry */
+    final AbstractIoSession session;
+
+    /** the idle status watched by this entry */
+    final IdleStatus status;
+
+    /** the time in ms of the last I/O event, written by the I/O threads */
+    volatile long lastEventTime;
+
+    /** is this entry linked in the wheel */
+    volatile boolean scheduled;
+
+    /** the time in ms at which the entry expires, guarded by the checker lock */
+    long deadline;
+
+    /** the wheel bucket holding this entry, guarded by the checker lock */
+    int bucket;
+
+    /** the previous entry of the bucket, guarded by the checker lock */
+    IdleEntry prev;
+
+    /** the next entry of the bucket, guarded by the checker lock */
+    IdleEntry next;
+
+    public IdleEntry(AbstractIoSession session, IdleStatus status) {
+        this.session = session;
+        this.status = status;
+    }
+}
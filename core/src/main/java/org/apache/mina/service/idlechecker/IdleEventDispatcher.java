@@ -0,0 +1,121 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.idlechecker;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.service.scheduler.TaskScheduler;
+import org.apache.mina.session.AbstractIoSession;
+
+/**
+ * Collects the idle events detected by an {@link IdleChecker} during a check, and hands them to the task schedulers of
+ * their sessions (the selector loops of the NIO sessions) : the filter chain and the handler are called by the thread
+ * processing the other events of the session, and each scheduler gets a single task per check. The events of the
+ * sessions without task scheduler are fired immediately.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class IdleEventDispatcher {
+    /** the idle sessions, by task scheduler */
+    private final Map<TaskScheduler, List<IdleEntry>> batches = new IdentityHashMap<TaskScheduler, List<IdleEntry>>();
+
+    /** the number of collected events */
+    private int count = 0;
+
+    /**
+     * Collect the idle event of a session.
+     * 
+     * @param entry the entry of the session for the idle status
+     */
+    void add(IdleEntry entry) {
+        count++;
+        TaskScheduler scheduler = entry.session.getTaskScheduler();
+
+        if (scheduler == null) {
+            fire(entry);
+            return;
+        }
+
+        List<IdleEntry> batch = batches.get(scheduler);
+
+        if (batch == null) {
+            batch = new ArrayList<IdleEntry>();
+            batches.put(scheduler, batch);
+        }
+
+        batch.add(entry);
+    }
+
+    /**
+     * Post the collected events to the task schedulers.
+     * 
+     * @return the number of collected events
+     */
+    int dispatch() {
+        for (Map.Entry<TaskScheduler, List<IdleEntry>> batch : batches.entrySet()) {
+            final TaskScheduler scheduler = batch.getKey();
+            final List<IdleEntry> entries = batch.getValue();
+
+            scheduler.runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    for (IdleEntry entry : entries) {
+                        fireInLoop(scheduler, entry);
+                    }
+                }
+            });
+        }
+
+        batches.clear();
+
+        return count;
+    }
+
+    private static void fireInLoop(TaskScheduler scheduler, final IdleEntry entry) {
+        TaskScheduler current = entry.session.getTaskScheduler();
+
+        if ((current != null) && (current != scheduler)) {
+            // the session moved to another selector loop in the meantime
+            current.runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    fire(entry);
+                }
+            });
+        } else {
+            fire(entry);
+        }
+    }
+
+    private static void fire(IdleEntry entry) {
+        AbstractIoSession session = entry.session;
+
+        // the session may have been closed, or its idle detection disabled, since the expiry was detected
+        if (session.isClosing() || session.isClosed()
+                || (session.getConfig().getIdleTimeInMillis(entry.status) <= 0L)) {
+            return;
+        }
+
+        session.processSessionIdle(entry.status);
+    }
+}
@@ -203,6 +203,24 @@ public class IndexedIdleChecker implements IdleChecker {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionClosed(AbstractIoSession session) {
+        Integer readIndex = session.getAttribute(READ_IDLE_INDEX);
+
+        if ((readIndex != null) && (readIdleSessionIndex[readIndex] != null)) {
+            readIdleSessionIndex[readIndex].remove(session);
+        }
+
+        Integer writeIndex = session.getAttribute(WRITE_IDLE_INDEX);
+
+        if ((writeIndex != null) && (writeIdleSessionIndex[writeIndex] != null)) {
+            writeIdleSessionIndex[writeIndex].remove(session);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -231,24 +249,29 @@ public class IndexedIdleChecker implements IdleChecker {
 
         LOG.trace("scaning from index {} to index {}", startIdx, endIdx);
 
+        IdleEventDispatcher dispatcher = new IdleEventDispatcher();
         int index = startIdx;
         do {
 
             LOG.trace("scanning index {}", index);
             // look at the read idle index
-            counter += processIndex(readIdleSessionIndex, index, IdleStatus.READ_IDLE);
-            counter += processIndex(writeIdleSessionIndex, index, IdleStatus.WRITE_IDLE);
+            counter += processIndex(readIdleSessionIndex, index, IdleStatus.READ_IDLE, dispatcher);
+            counter += processIndex(writeIdleSessionIndex, index, IdleStatus.WRITE_IDLE, dispatcher);
 
             index = (index + 1) % MAX_IDLE_TIME_IN_SEC;
         } while (index != endIdx);
 
+        // the events are fired by the selector loops of the sessions
+        dispatcher.dispatch();
+
         // save last check time for next call
         lastCheckTimeMs = timeMs;
         LOG.trace("detected {} idleing sessions", counter);
         return counter;
     }
 
-    private int processIndex(Set<AbstractIoSession>[] indexByTime, int position, IdleStatus status) {
+    private int processIndex(Set<AbstractIoSession>[] indexByTime, int position, IdleStatus status,
+            IdleEventDispatcher dispatcher) {
         Set<AbstractIoSession> sessions = indexByTime[position];
 
         if (sessions == null) {
@@ -261,7 +284,7 @@ public class IndexedIdleChecker implements IdleChecker {
             idleSession.setAttribute(status == IdleStatus.READ_IDLE ? READ_IDLE_INDEX : WRITE_IDLE_INDEX, null);
             // check if idle detection wasn't disabled since the index update
             if (idleSession.getConfig().getIdleTimeInMillis(status) > 0) {
-                idleSession.processSessionIdle(status);
+                dispatcher.add(idleSession.getIdleEntry(status));
             }
             counter++;
         }
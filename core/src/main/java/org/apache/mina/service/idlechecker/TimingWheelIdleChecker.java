@@ -0,0 +1,430 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.idlechecker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.session.AbstractIoSession;
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.apache.mina.service.scheduler.TaskScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An idle session detector based on a hashed timing wheel.<br>
+ * 
+ * The wheel is a circular array of buckets, each one covering a tick of time. A session is linked in the bucket of
+ * the tick when it will become idle, using the {@link IdleEntry} it owns for each {@link IdleStatus} : moving a
+ * session costs a few pointer updates, and needs neither allocation nor hash lookup. A session idle in more than one
+ * turn of the wheel is kept in its bucket until the turn of its deadline.
+ * 
+ * <pre>
+ *               +--- Current tick
+ *               |
+ *               v
+ * +---+---+...+---+---+...+---+
+ * | 0 | 1 |   | T |T+1|   |511|
+ * +---+---+...+---+---+...+---+
+ *               |   |
+ *               |   +--> S2 <-> S7 <-> S12 (sessions idle at the next tick)
+ *               +------> S5 <-> S6 (sessions idle now, or in one or more turns of the wheel)
+ * </pre>
+ * 
+ * In lazy mode (the default), an I/O event only records its time in the session entry : the session is moved when
+ * its deadline is reached, to the deadline computed from its last event, and is declared idle only if this deadline
+ * is reached too. An active session costs one volatile write per event. Otherwise the session is moved on each event.
+ * <br>
+ * The checker only detects the idle sessions : the events are fired by the task schedulers of the sessions (their
+ * selector loops). The check runs on each tick, either in a dedicated thread or as a task scheduled on a
+ * {@link TaskScheduler}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TimingWheelIdleChecker implements IdleChecker {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelIdleChecker.class);
+
+    // A speedup for logs
+    private static final boolean IS_DEBUG = LOG.isDebugEnabled();
+
+    /** The default duration of a tick in ms */
+    public static final long DEFAULT_TICK_IN_MS = 100;
+
+    /** The default number of ticks in the wheel */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** The duration of a tick */
+    private final long tickInMs;
+
+    /** The mask giving the bucket of a tick, the wheel size being a power of two */
+    private final int mask;
+
+    /** The first entry of each bucket, guarded by the lock */
+    private final IdleEntry[] wheel;
+
+    /** Are the sessions moved on their deadline rather than on each event */
+    private final boolean lazy;
+
+    /** The lock guarding the wheel */
+    private final Object lock = new Object();
+
+    /** The time of the tick 0 */
+    private final long startTimeMs = System.currentTimeMillis();
+
+    /** The last processed tick, guarded by the lock */
+    private long processedTick = -1;
+
+    /** The loop running the check, or <code>null</code> if the checker has its own thread */
+    private final TaskScheduler scheduler;
+
+    /** The check task scheduled on the loop */
+    private ScheduledTask checkTask;
+
+    private final Worker worker;
+
+    private volatile boolean running = true;
+
+    /**
+     * Create a lazy idle checker with the default tick and wheel size, running in its own thread.
+     */
+    public TimingWheelIdleChecker() {
+        this(DEFAULT_TICK_IN_MS, DEFAULT_WHEEL_SIZE, true);
+    }
+
+    /**
+     * Create a lazy idle checker with the default tick and wheel size, running on a task scheduler (typically a
+     * selector loop).
+     * 
+     * @param scheduler the task scheduler running the check
+     */
+    public TimingWheelIdleChecker(TaskScheduler scheduler) {
+        this(DEFAULT_TICK_IN_MS, DEFAULT_WHEEL_SIZE, true, scheduler);
+    }
+
+    /**
+     * Create an idle checker.
+     * 
+     * @param tickInMs the duration of a tick, which is the precision of the idle detection
+     * @param wheelSize the number of ticks in the wheel, rounded to the next power of two
+     * @param lazy <code>true</code> if the sessions are only moved on their deadline
+     */
+    public TimingWheelIdleChecker(long tickInMs, int wheelSize, boolean lazy) {
+        this(tickInMs, wheelSize, lazy, null);
+    }
+
+    /**
+     * Create an idle checker.
+     * 
+     * @param tickInMs the duration of a tick, which is the precision of the idle detection
+     * @param wheelSize the number of ticks in the wheel, rounded to the next power of two
+     * @param lazy <code>true</code> if the sessions are only moved on their deadline
+     * @param scheduler the task scheduler running the check, <code>null</code> for running it in its own thread
+     */
+    public TimingWheelIdleChecker(long tickInMs, int wheelSize, boolean lazy, TaskScheduler scheduler) {
+        if (tickInMs <= 0) {
+            throw new IllegalArgumentException("tickInMs: " + tickInMs + " (expected: 1+)");
+        }
+
+        if ((wheelSize <= 0) || (wheelSize > (1 << 30))) {
+            throw new IllegalArgumentException("wheelSize: " + wheelSize + " (expected: 1-2^30)");
+        }
+
+        int size = Integer.highestOneBit(wheelSize);
+
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickInMs = tickInMs;
+        this.mask = size - 1;
+        this.wheel = new IdleEntry[size];
+        this.lazy = lazy;
+        this.scheduler = scheduler;
+        this.worker = (scheduler == null) ? new Worker() : null;
+    }
+
+    /**
+     * @return the duration of a tick in ms
+     */
+    public long getTickInMs() {
+        return tickInMs;
+    }
+
+    /**
+     * @return the number of ticks in the wheel
+     */
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    /**
+     * @return <code>true</code> if the sessions are only moved on their deadline
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() {
+        if (worker != null) {
+            worker.start();
+            return;
+        }
+
+        checkTask = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                processIdleSession(scheduler.getClock().currentTimeMillis());
+            }
+        }, tickInMs, tickInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() {
+        running = false;
+
+        if (worker == null) {
+            if (checkTask != null) {
+                checkTask.cancel();
+            }
+
+            return;
+        }
+
+        try {
+            // interrupt the sleep
+            worker.interrupt();
+            // wait for worker to stop
+            worker.join();
+        } catch (InterruptedException e) {
+            // interrupted, we don't care much
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionRead(AbstractIoSession session, long timeInMs) {
+        touch(session.getIdleEntry(IdleStatus.READ_IDLE), timeInMs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionWritten(AbstractIoSession session, long timeInMs) {
+        touch(session.getIdleEntry(IdleStatus.WRITE_IDLE), timeInMs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionClosed(AbstractIoSession session) {
+        synchronized (lock) {
+            unlink(session.getIdleEntry(IdleStatus.READ_IDLE));
+            unlink(session.getIdleEntry(IdleStatus.WRITE_IDLE));
+        }
+    }
+
+    /**
+     * Record an I/O event, and move the session to the bucket of its new deadline if needed
+     */
+    private void touch(IdleEntry entry, long timeInMs) {
+        entry.lastEventTime = timeInMs;
+
+        if (lazy && entry.scheduled) {
+            // the deadline will be computed again when the current one is reached
+            return;
+        }
+
+        long idleTimeInMs = entry.session.getConfig().getIdleTimeInMillis(entry.status);
+
+        synchronized (lock) {
+            unlink(entry);
+
+            // a closing session is unlinked for good once closed, an event racing with the close must not link it again
+            if ((idleTimeInMs > 0L) && !entry.session.isClosing() && !entry.session.isClosed()) {
+                link(entry, timeInMs + idleTimeInMs);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int processIdleSession(long timeMs) {
+        List<IdleEntry> expired = null;
+
+        synchronized (lock) {
+            long currentTick = (timeMs - startTimeMs) / tickInMs;
+
+            if (currentTick <= processedTick) {
+                return 0;
+            }
+
+            // a full turn is enough for catching up, as the deadlines are compared with the current time
+            for (long tick = Math.max(processedTick + 1, currentTick - mask); tick <= currentTick; tick++) {
+                IdleEntry entry = wheel[(int) (tick & mask)];
+
+                while (entry != null) {
+                    IdleEntry next = entry.next;
+
+                    if (entry.deadline <= timeMs) {
+                        unlink(entry);
+
+                        if (expired == null) {
+                            expired = new ArrayList<IdleEntry>();
+                        }
+
+                        expired.add(entry);
+                    }
+
+                    entry = next;
+                }
+            }
+
+            processedTick = currentTick;
+        }
+
+        if (expired == null) {
+            return 0;
+        }
+
+        IdleEventDispatcher dispatcher = new IdleEventDispatcher();
+
+        for (IdleEntry entry : expired) {
+            AbstractIoSession session = entry.session;
+
+            if (session.isClosing() || session.isClosed()) {
+                continue;
+            }
+
+            long idleTimeInMs = session.getConfig().getIdleTimeInMillis(entry.status);
+
+            // check if idle detection wasn't disabled since the entry was linked
+            if (idleTimeInMs <= 0L) {
+                continue;
+            }
+
+            if (lazy) {
+                // the entry has been unlinked before reading the last event time, so an event
+                // racing with this check either is seen here or links the entry itself
+                long deadline = entry.lastEventTime + idleTimeInMs;
+
+                if (deadline > timeMs) {
+                    synchronized (lock) {
+                        if (!entry.scheduled) {
+                            link(entry, deadline);
+                        }
+                    }
+
+                    continue;
+                }
+            }
+
+            if (IS_DEBUG) {
+                LOG.debug("session {} is {}", session, entry.status);
+            }
+
+            dispatcher.add(entry);
+        }
+
+        return dispatcher.dispatch();
+    }
+
+    /**
+     * Link an entry in the bucket of its deadline. Must be called with the lock held.
+     */
+    private void link(IdleEntry entry, long deadline) {
+        // the bucket is processed once its tick is over, so round the deadline to the next tick
+        long tick = Math.max((deadline - startTimeMs + tickInMs - 1) / tickInMs, processedTick + 1);
+        int bucket = (int) (tick & mask);
+
+        entry.deadline = deadline;
+        entry.bucket = bucket;
+        entry.prev = null;
+        entry.next = wheel[bucket];
+
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+
+        wheel[bucket] = entry;
+        entry.scheduled = true;
+    }
+
+    /**
+     * Remove an entry from its bucket, if it is linked. Must be called with the lock held.
+     */
+    private void unlink(IdleEntry entry) {
+        if (!entry.scheduled) {
+            return;
+        }
+
+        if (entry.prev == null) {
+            wheel[entry.bucket] = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+
+        entry.prev = null;
+        entry.next = null;
+        entry.scheduled = false;
+    }
+
+    /**
+     * Thread in charge of checking the idleing sessions and fire events
+     */
+    private class Worker extends Thread {
+
+        public Worker() {
+            super("IdleChecker");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    sleep(tickInMs);
+                    processIdleSession(System.currentTimeMillis());
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task scheduled with {@link TaskScheduler#schedule(Runnable, long, TimeUnit)} or
+ * {@link TaskScheduler#scheduleAtFixedRate(Runnable, long, long, TimeUnit)}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ScheduledTask {
+    /**
+     * Cancel the task. A task can be cancelled from any thread : depending on the scheduler, it's removed at once or
+     * dropped when its deadline is reached.
+     * 
+     * @return <code>false</code> if the task was already cancelled, or was a one shot task already run
+     */
+    boolean cancel();
+
+    /**
+     * @return <code>true</code> if the task has been cancelled
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.util.Clock;
+
+/**
+ * Run tasks after a delay or periodically, independently of the transport running them. The tasks are run by the
+ * thread of the scheduler, which can also run a task as soon as possible.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface TaskScheduler {
+    /**
+     * Run a task once a delay has elapsed.
+     * 
+     * @param task the task to run
+     * @param delay the delay before running the task
+     * @param unit the unit of the delay
+     * @return the handle for cancelling the task
+     */
+    ScheduledTask schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Run a task periodically, the first time once a delay has elapsed.
+     * 
+     * @param task the task to run
+     * @param initialDelay the delay before the first run
+     * @param period the period between two runs
+     * @param unit the unit of the delay and the period
+     * @return the handle for cancelling the task
+     */
+    ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Run a task in the thread of this scheduler, immediately if the caller is this thread.
+     * 
+     * @param task the task to run
+     */
+    void runInLoop(Runnable task);
+
+    /**
+     * Tells if the caller is the thread of this scheduler.
+     * 
+     * @return <code>true</code> if called by the thread of this scheduler
+     */
+    boolean isLoopThread();
+
+    /**
+     * Get the clock of this scheduler, only up to date for its own thread.
+     * 
+     * @return the clock of this scheduler
+     */
+    Clock getClock();
+}
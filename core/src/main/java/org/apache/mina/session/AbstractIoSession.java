@@ -23,12 +23,12 @@ import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.net.ssl.SSLContext;
 
+import org.apache.mina.api.AbstractIoFilter;
+import org.apache.mina.api.AbstractIoHandler;
 import org.apache.mina.api.IdleStatus;
 import org.apache.mina.api.IoFilter;
 import org.apache.mina.api.IoFuture;
@@ -45,9 +45,12 @@ import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OpenEvent;
 import org.apache.mina.service.executor.ReceiveEvent;
 import org.apache.mina.service.executor.SentEvent;
+import org.apache.mina.service.executor.WritabilityEvent;
 import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.transport.nio.SelectorLoop;
+import org.apache.mina.service.idlechecker.IdleEntry;
+import org.apache.mina.service.scheduler.TaskScheduler;
 import org.apache.mina.transport.nio.SslHelper;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +84,12 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     /** the {@link IdleChecker} in charge of detecting idle event for this session */
     protected final IdleChecker idleChecker;
 
+    /** the read idle position of this session in the timing wheel of the idle checker */
+    private final IdleEntry readIdleEntry = new IdleEntry(this, IdleStatus.READ_IDLE);
+
+    /** the write idle position of this session in the timing wheel of the idle checker */
+    private final IdleEntry writeIdleEntry = new IdleEntry(this, IdleStatus.WRITE_IDLE);
+
     /** The session config */
     protected IoSessionConfig config;
 
@@ -97,6 +106,9 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     /** Last time something was read for this session */
     private volatile long lastReadTime;
 
+    /** The clock set for this session, if it doesn't use the clock of its task scheduler */
+    private volatile Clock clock;
+
     /** Last time something was written for this session */
     private volatile long lastWriteTime;
 
@@ -104,17 +116,12 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     // Session state
     // ------------------------------------------------------------------------
 
-    /** The session's state : one of CREATED, CONNECTED, CLOSING, CLOSED, SECURING, CONNECTED_SECURED */
-    protected volatile SessionState state;
-
-    /** A lock to protect the access to the session's state */
-    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
-
-    /** A Read lock on the reentrant session's state lock */
-    private final Lock stateReadLock = stateLock.readLock();
+    /** The session's state : one of CREATED, CONNECTED, CLOSING, CLOSED, SECURING, SECURED */
+    private volatile SessionState state;
 
-    /** A Write lock on the reentrant session's state lock */
-    private final Lock stateWriteLock = stateLock.writeLock();
+    /** The updater used for the lock-free transitions of the session's state */
+    private static final AtomicReferenceFieldUpdater<AbstractIoSession, SessionState> STATE_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(AbstractIoSession.class, SessionState.class, "state");
 
     /** Tells if the session is secured or not */
     protected volatile boolean secured;
@@ -164,13 +171,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isClosed() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CLOSED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CLOSED;
     }
 
     /**
@@ -178,13 +179,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isClosing() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CLOSING;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CLOSING;
     }
 
     /**
@@ -192,13 +187,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isConnected() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CONNECTED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CONNECTED;
     }
 
     /**
@@ -206,13 +195,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isCreated() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.CREATED;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.CREATED;
     }
 
     /**
@@ -220,13 +203,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isSecuring() {
-        try {
-            stateReadLock.lock();
-
-            return state == SessionState.SECURING;
-        } finally {
-            stateReadLock.unlock();
-        }
+        return state == SessionState.SECURING;
     }
 
     /**
@@ -234,13 +211,16 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public boolean isConnectedSecured() {
-        try {
-            stateReadLock.lock();
+        return state == SessionState.SECURED;
+    }
 
-            return state == SessionState.SECURED;
-        } finally {
-            stateReadLock.unlock();
-        }
+    /**
+     * Get the current state of this session
+     * 
+     * @return the session's state
+     */
+    protected SessionState getState() {
+        return state;
     }
 
     /**
@@ -248,77 +228,95 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public void changeState(SessionState to) {
-        try {
-            stateWriteLock.lock();
-
-            switch (state) {
-            case CREATED:
-                switch (to) {
-                case CONNECTED:
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+        for (;;) {
+            SessionState from = state;
+            checkTransition(from, to);
 
-                break;
+            if (STATE_UPDATER.compareAndSet(this, from, to)) {
+                return;
+            }
+        }
+    }
 
+    /**
+     * Atomically change the session's state if it is the expected one. Used for the transitions racing with other
+     * threads, like a close : only one of the callers wins.
+     * 
+     * @param from the expected current state
+     * @param to the new state
+     * @return <code>true</code> if the state has been changed, <code>false</code> if the current state was not the
+     *         expected one
+     * @throws IllegalStateException if the transition is not allowed
+     */
+    protected boolean changeState(SessionState from, SessionState to) {
+        checkTransition(from, to);
+
+        return STATE_UPDATER.compareAndSet(this, from, to);
+    }
+
+    /**
+     * Check a session state transition against the state machine
+     * 
+     * @param from the current state
+     * @param to the new state
+     * @throws IllegalStateException if the transition is not allowed
+     */
+    private static void checkTransition(SessionState from, SessionState to) {
+        switch (from) {
+        case CREATED:
+            switch (to) {
             case CONNECTED:
-                switch (to) {
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+            case SECURING:
+            case CLOSING:
+                return;
 
-                break;
+            default:
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
+            }
 
+        case CONNECTED:
+            switch (to) {
             case SECURING:
-                switch (to) {
-                case SECURED:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+            case CLOSING:
+                return;
 
-                break;
+            default:
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
+            }
 
+        case SECURING:
+            switch (to) {
             case SECURED:
-                switch (to) {
-                case CONNECTED:
-                case SECURING:
-                case CLOSING:
-                    state = to;
-                    break;
-
-                default:
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
-
-                break;
             case CLOSING:
-                if (to != SessionState.CLOSED) {
-                    throw new IllegalStateException("Cannot transit from " + state + " to " + to);
-                }
+                return;
 
-                state = to;
+            default:
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
+            }
 
-                break;
+        case SECURED:
+            switch (to) {
+            case CONNECTED:
+            case SECURING:
+            case CLOSING:
+                return;
+
+            default:
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
+            }
 
-            case CLOSED:
-                throw new IllegalStateException("The session is already closed. cannot switch to " + to);
+        case CLOSING:
+            if (to != SessionState.CLOSED) {
+                throw new IllegalStateException("Cannot transit from " + from + " to " + to);
             }
-        } finally {
-            stateWriteLock.unlock();
+
+            return;
+
+        case CLOSED:
+            throw new IllegalStateException("The session is already closed. cannot switch to " + to);
+
+        default:
+            throw new IllegalStateException("unknown session state : " + from);
         }
     }
 
@@ -393,6 +391,26 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         return writtenBytes;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The default implementation doesn't account the pending writes and always returns 0.
+     */
+    @Override
+    public long getWriteQueueBytes() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The default implementation doesn't watch the write queue and always returns <code>true</code>.
+     */
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -494,7 +512,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
      */
     @Override
     public void write(Object message) {
-        doWriteWithFuture(message, null);
+        doWriteWithFuture(message, null, true);
     }
 
     /**
@@ -503,22 +521,43 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     @Override
     public IoFuture<Void> writeWithFuture(Object message) {
         IoFuture<Void> future = new DefaultWriteFuture();
-        doWriteWithFuture(message, future);
+        doWriteWithFuture(message, future, true);
 
         return future;
     }
 
-    private void doWriteWithFuture(Object message, IoFuture<Void> future) {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeWithoutFlush(Object message) {
+        doWriteWithFuture(message, null, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The default implementation does nothing : the messages are written as soon as they are enqueued.
+     */
+    @Override
+    public void flush() {
+        // nothing to do
+    }
+
+    private void doWriteWithFuture(Object message, IoFuture<Void> future, boolean flush) {
         if (IS_DEBUG) {
             LOG.debug("writing message {} to session {}", message, this);
         }
 
-        if ((state == SessionState.CLOSED) || (state == SessionState.CLOSING)) {
+        final SessionState currentState = state;
+
+        if ((currentState == SessionState.CLOSED) || (currentState == SessionState.CLOSING)) {
             LOG.error("writing to closed or closing session, the message is discarded");
             return;
         }
 
         WriteRequest writeRequest = new DefaultWriteRequest(message);
+        writeRequest.setFlush(flush);
 
         // process the queue
         processMessageWriting(writeRequest, future);
@@ -542,7 +581,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     }
 
     /**
-     * process session open event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session open event using the filter chain. To be called by the session {@code SelectorLoop} .
      */
     public void processSessionOpen() {
         if (IS_DEBUG) {
@@ -574,7 +613,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     }
 
     /**
-     * process session closed event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session closed event using the filter chain. To be called by the session {@code SelectorLoop} .
      */
     public void processSessionClosed() {
         if (IS_DEBUG) {
@@ -601,11 +640,16 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         } catch (RuntimeException e) {
             LOG.error("Exception while closing the session : ", e);
         }
+
+        if (idleChecker != null) {
+            idleChecker.sessionClosed(this);
+        }
+
         service.getManagedSessions().remove(id);
     }
 
     /**
-     * process session idle event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session idle event using the filter chain. To be called by the session {@code SelectorLoop} .
      */
     public void processSessionIdle(IdleStatus status) {
         if (IS_DEBUG) {
@@ -635,6 +679,97 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         }
     }
 
+    /**
+     * Get the scheduler running the timed tasks of this session, in the thread processing its events (the selector loop
+     * of the NIO sessions). The idle events are fired by this thread.
+     * 
+     * @return the task scheduler of this session, or <code>null</code> if the session has none
+     */
+    public TaskScheduler getTaskScheduler() {
+        return null;
+    }
+
+    /**
+     * Get the clock timestamping the events of this session. Unless a clock has been set, the thread of the task
+     * scheduler reads its clock (the time cached by the selector loop for the current select), and the other threads
+     * read the system time.
+     * 
+     * @return the clock of this session
+     */
+    public Clock getClock() {
+        Clock sessionClock = clock;
+
+        if (sessionClock != null) {
+            return sessionClock;
+        }
+
+        TaskScheduler scheduler = getTaskScheduler();
+
+        // the time cached by the loop is only up to date for the loop thread
+        if ((scheduler != null) && scheduler.isLoopThread()) {
+            return scheduler.getClock();
+        }
+
+        return Clock.SYSTEM;
+    }
+
+    /**
+     * Set the clock timestamping the events of this session, for instance a manual clock driving the idle detection
+     * in tests.
+     * 
+     * @param clock the clock, <code>null</code> for the default one
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Get the entry locating this session in the idle checker for the given status. Used by the timing wheel idle
+     * checker for linking the session in its wheel, and by the idle checkers for dispatching the idle events.
+     * 
+     * @param status the idle status
+     * @return the entry of this session for the status
+     */
+    public IdleEntry getIdleEntry(IdleStatus status) {
+        return status == IdleStatus.READ_IDLE ? readIdleEntry : writeIdleEntry;
+    }
+
+    /**
+     * process session writability changed event using the filter chain. To be called by the thread crossing one of the
+     * write buffer watermarks.
+     * 
+     * @param writable <code>true</code> if the session became writable
+     */
+    public void processSessionWritabilityChanged(boolean writable) {
+        if (IS_DEBUG) {
+            LOG.debug("processing session writability changed to {} event for session {}", writable, this);
+        }
+
+        try {
+            for (IoFilter filter : chain) {
+                if (filter instanceof AbstractIoFilter) {
+                    ((AbstractIoFilter) filter).sessionWritabilityChanged(this, writable);
+                }
+            }
+
+            IoHandler handler = getService().getIoHandler();
+
+            if (handler instanceof AbstractIoHandler) {
+                IoHandlerExecutor executor = getService().getIoHandlerExecutor();
+
+                if (executor != null) {
+                    // asynchronous event
+                    executor.execute(new WritabilityEvent(this, writable));
+                } else {
+                    // synchronous call
+                    ((AbstractIoHandler) handler).sessionWritabilityChanged(this, writable);
+                }
+            }
+        } catch (RuntimeException e) {
+            processException(e);
+        }
+    }
+
     /** for knowing if the message buffer is the selector loop one */
     static ThreadLocal<ByteBuffer> tl = new ThreadLocal<ByteBuffer>() {
         @Override
@@ -644,7 +779,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     };
 
     /**
-     * process session message received event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session message received event using the filter chain. To be called by the session {@code SelectorLoop} .
      * 
      * @param message the received message
      */
@@ -657,7 +792,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         try {
             // save basic statistics
             readBytes += message.remaining();
-            lastReadTime = System.currentTimeMillis();
+            lastReadTime = getClock().currentTimeMillis();
 
             if (chain.length < 1) {
                 if (IS_DEBUG) {
@@ -702,7 +837,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     }
 
     /**
-     * process session message writing event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session message writing event using the filter chain. To be called by the session {@code SelectorLoop} .
      * 
      * @param message the wrote message, should be transformed into ByteBuffer at the end of the filter chain
      */
@@ -712,7 +847,11 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
         }
 
         try {
-            // lastWriteRequest = null;
+            // put the future in the write request before it reaches the write queue,
+            // so it can be completed even if the message is written immediately
+            if (future != null) {
+                writeRequest.setFuture(future);
+            }
 
             if (chain.length < 1) {
                 enqueueWriteRequest(writeRequest);
@@ -723,11 +862,6 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
                 IoFilter nextFilter = chain[position];
                 nextFilter.messageWriting(this, writeRequest, this);
             }
-
-            // put the future in the last write request
-            if (future != null) {
-                writeRequest.setFuture(future);
-            }
         } catch (RuntimeException e) {
             processException(e);
         }
@@ -766,7 +900,7 @@ public abstract class AbstractIoSession implements IoSession, ReadFilterChainCon
     }
 
     /**
-     * process session message received event using the filter chain. To be called by the session {@link SelectorLoop} .
+     * process session message received event using the filter chain. To be called by the session {@code SelectorLoop} .
      * 
      * @param message the received message
      */
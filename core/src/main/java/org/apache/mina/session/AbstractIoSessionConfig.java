@@ -55,6 +55,12 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
     /** The SO_TIMEOUT socket option */
     private Integer timeout = null;
 
+    /** The write queue size above which the session becomes unwritable */
+    private Integer writeBufferHighWaterMark = null;
+
+    /** The write queue size below which the session becomes writable again */
+    private Integer writeBufferLowWaterMark = null;
+
     /**
      * {@inheritDoc}
      */
@@ -177,4 +183,36 @@ public abstract class AbstractIoSessionConfig implements IoSessionConfig {
     public void setTimeout(int timeout) {
         this.timeout = timeout;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteBufferHighWaterMark(int highWaterMark) {
+        this.writeBufferHighWaterMark = highWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteBufferLowWaterMark(int lowWaterMark) {
+        this.writeBufferLowWaterMark = lowWaterMark;
+    }
 }
@@ -21,6 +21,9 @@ package org.apache.mina.session;
 
 import static org.apache.mina.util.Assert.assertNotNull;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.mina.api.IoSession;
 
 /**
@@ -28,12 +31,29 @@ import org.apache.mina.api.IoSession;
  * consists of the Type of the referenced attribute value and a name.<br>
  * <br>
  * Two {@link AttributeKey}'s are equal if the have the same attribute-type and
- * attribute-name.
+ * attribute-name.<br>
+ * <br>
+ * Each key gets a dense index at creation, shared by the equal keys, so that the sessions store the attribute values in
+ * an array. Once {@link #MAX_INDEXED_KEYS} different keys have been created, the new keys are not indexed anymore and
+ * their values are stored in a map.
  * 
  * @param <T> Type of the attribute-value this key is referring to
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public final class AttributeKey<T> {
+    /**
+     * the maximum number of different keys getting an index. The indexes are global to the process and never
+     * reclaimed : a key no longer used keeps its index, so creating keys dynamically (e.g. with a per-session name)
+     * quickly exhausts the indexes, and the keys created afterwards are stored in the map.
+     */
+    public static final int MAX_INDEXED_KEYS = 128;
+
+    /** the index of the keys created so far, guarded by the class lock */
+    private static final Map<AttributeKey<?>, Integer> INDEXES = new HashMap<AttributeKey<?>, Integer>();
+
+    /** the indexed keys, by index */
+    private static volatile AttributeKey<?>[] indexedKeys = new AttributeKey<?>[0];
+
     /** the {@link Class} of the referenced attribute-value */
     private final Class<T> attributeType;
 
@@ -43,6 +63,9 @@ public final class AttributeKey<T> {
     /** the cached hash code of this instance */
     private final int hashCode;
 
+    /** the index of the slot holding the value of this key, or -1 if the key is not indexed */
+    private final int index;
+
     /**
      * Creates a new {@link AttributeKey} with the given parameters. A
      * {@link IllegalArgumentException} will be thrown if any parameter is
@@ -62,6 +85,43 @@ public final class AttributeKey<T> {
         this.attributeName = assertNotNull(attributeName, "attributeName");
 
         this.hashCode = createHashCode();
+        this.index = indexOf(this);
+    }
+
+    /**
+     * Get the index of the given key, allocating a new one if no equal key has been created before
+     * 
+     * @param key the key to index
+     * @return the index of the key, or -1 if too many keys have been created
+     */
+    private static synchronized int indexOf(AttributeKey<?> key) {
+        Integer index = INDEXES.get(key);
+
+        if (index == null) {
+            if (INDEXES.size() >= MAX_INDEXED_KEYS) {
+                return -1;
+            }
+
+            index = INDEXES.size();
+            INDEXES.put(key, index);
+
+            AttributeKey<?>[] keys = new AttributeKey<?>[index + 1];
+            System.arraycopy(indexedKeys, 0, keys, 0, index);
+            keys[index] = key;
+            indexedKeys = keys;
+        }
+
+        return index;
+    }
+
+    /**
+     * Get the key having the given index
+     * 
+     * @param index the index of the key
+     * @return the first key created with this index
+     */
+    static AttributeKey<?> getIndexedKey(int index) {
+        return indexedKeys[index];
     }
 
     /**
@@ -114,6 +174,15 @@ public final class AttributeKey<T> {
         return attributeType;
     }
 
+    /**
+     * Returns the index of the slot holding the value of this key in a session.
+     * 
+     * @return the index of this key, or -1 if the key is not indexed
+     */
+    int getIndex() {
+        return index;
+    }
+
     @Override
     public int hashCode() {
         return hashCode;
@@ -23,27 +23,169 @@ import static java.util.Collections.unmodifiableSet;
 import static org.apache.mina.util.Assert.assertNotNull;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An {@link AttributeContainer} provides type-safe access to attribute values, using {@link AttributeKey}' s which as
  * reference-key to an attribute value. <br>
  * <br>
+ * The values of the indexed keys (see {@link AttributeKey#getIndex()}) are stored in an array growing with the number
+ * of keys, the other ones in a map created on demand. <br>
+ * <br>
  * This class is Thread-Safe !
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 final class DefaultAttributeContainer implements AttributeContainer {
+    /** Marks the slots of an array replaced by a larger copy : the value has to be read in the new array */
+    private static final Object MOVED = new Object();
+
+    /** The values of the indexed keys, by key index. Replaced by a larger copy when a new key is used */
+    private volatile AtomicReferenceArray<Object> slots;
+
     /**
-     * Contains all attributes
+     * Contains the attributes of the keys without index
      * <ul>
      * <li>Key: the typesafe attribute key
      * <li>Value: the attribute value
      * </ul>
      */
-    private final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<AttributeKey<?>, Object>();
+    private volatile Map<AttributeKey<?>, Object> attributes;
+
+    /**
+     * Get the value of an attribute
+     * 
+     * @param key the attribute's key
+     * @return the value, <code>null</code> if there is no attribute with the specified key
+     */
+    private Object get(AttributeKey<?> key) {
+        final int index = key.getIndex();
+
+        if (index < 0) {
+            Map<AttributeKey<?>, Object> map = attributes;
+
+            return map == null ? null : map.get(key);
+        }
+
+        AtomicReferenceArray<Object> array = slots;
+
+        if ((array == null) || (index >= array.length())) {
+            return null;
+        }
+
+        Object value = array.get(index);
+
+        if (value == MOVED) {
+            return waitForGrowth().get(index);
+        }
+
+        return value;
+    }
+
+    /**
+     * Set or remove the value of an attribute
+     * 
+     * @param key the attribute's key
+     * @param value the new value, <code>null</code> to remove the attribute
+     * @return the previous value, <code>null</code> if there was no attribute with the specified key
+     */
+    private Object put(AttributeKey<?> key, Object value) {
+        final int index = key.getIndex();
+
+        if (index < 0) {
+            if (value == null) {
+                Map<AttributeKey<?>, Object> map = attributes;
+
+                return map == null ? null : map.remove(key);
+            }
+
+            return getMap().put(key, value);
+        }
+
+        AtomicReferenceArray<Object> array = getSlots(index);
+
+        for (;;) {
+            Object previous = array.get(index);
+
+            if (previous == MOVED) {
+                // the array has been grown concurrently, the value now lives in the new one
+                array = waitForGrowth();
+            } else if (array.compareAndSet(index, previous, value)) {
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Wait for a concurrent growth of the slots array to be completed.
+     * 
+     * @return the grown array
+     */
+    private synchronized AtomicReferenceArray<Object> waitForGrowth() {
+        return slots;
+    }
+
+    /**
+     * Get the slots array, growing it if it can't hold the given index
+     * 
+     * @param index the index of the slot to set
+     * @return an array larger than the index
+     */
+    private AtomicReferenceArray<Object> getSlots(int index) {
+        AtomicReferenceArray<Object> array = slots;
+
+        if ((array != null) && (index < array.length())) {
+            return array;
+        }
+
+        synchronized (this) {
+            array = slots;
+
+            if ((array == null) || (index >= array.length())) {
+                // the indexes are global : grow geometrically, instead of sizing the array for all the keys
+                int length = index + 1;
+
+                if (array != null) {
+                    length = Math.max(length, Math.min(array.length() * 2, AttributeKey.MAX_INDEXED_KEYS));
+                }
+
+                AtomicReferenceArray<Object> grown = new AtomicReferenceArray<Object>(length);
+
+                if (array != null) {
+                    // the moved slots can't be set anymore, so no value set concurrently can be lost
+                    for (int i = 0; i < array.length(); i++) {
+                        grown.set(i, array.getAndSet(i, MOVED));
+                    }
+                }
+
+                slots = grown;
+                array = grown;
+            }
+
+            return array;
+        }
+    }
+
+    private Map<AttributeKey<?>, Object> getMap() {
+        Map<AttributeKey<?>, Object> map = attributes;
+
+        if (map == null) {
+            synchronized (this) {
+                map = attributes;
+
+                if (map == null) {
+                    map = new ConcurrentHashMap<AttributeKey<?>, Object>();
+                    attributes = map;
+                }
+            }
+        }
+
+        return map;
+    }
 
     /**
      * Returns the value of the user-defined attribute for the given <code>key</code>.
@@ -58,7 +200,7 @@ final class DefaultAttributeContainer implements AttributeContainer {
     public <T> T getAttribute(AttributeKey<T> key) {
         assertNotNull(key, "key");
 
-        T value = (T) attributes.get(key);
+        T value = (T) get(key);
 
         return value;
     }
@@ -76,7 +218,7 @@ final class DefaultAttributeContainer implements AttributeContainer {
     public <T> T getAttribute(AttributeKey<T> key, T defaultValue) {
         assertNotNull(key, "key");
 
-        T value = (T) attributes.get(key);
+        T value = (T) get(key);
 
         if (value != null) {
             return value;
@@ -110,7 +252,7 @@ final class DefaultAttributeContainer implements AttributeContainer {
             return removeAttribute(key);
         }
 
-        return (T) attributes.put(key, value);
+        return (T) put(key, value);
     }
 
     /**
@@ -145,7 +287,31 @@ final class DefaultAttributeContainer implements AttributeContainer {
      */
     @Override
     public Set<AttributeKey<?>> getAttributeKeys() {
-        return unmodifiableSet(attributes.keySet());
+        Set<AttributeKey<?>> keys = new HashSet<AttributeKey<?>>();
+        AtomicReferenceArray<Object> array = slots;
+
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                Object value = array.get(i);
+
+                if (value == MOVED) {
+                    // the array has been grown concurrently, restart with the new one
+                    keys.clear();
+                    array = waitForGrowth();
+                    i = -1;
+                } else if (value != null) {
+                    keys.add(AttributeKey.getIndexedKey(i));
+                }
+            }
+        }
+
+        Map<AttributeKey<?>, Object> map = attributes;
+
+        if (map != null) {
+            keys.addAll(map.keySet());
+        }
+
+        return unmodifiableSet(keys);
     }
 
     /**
@@ -162,6 +328,6 @@ final class DefaultAttributeContainer implements AttributeContainer {
     @SuppressWarnings("unchecked")
     public <T> T removeAttribute(AttributeKey<T> key) {
         assertNotNull(key, "key");
-        return (T) attributes.remove(key);
+        return (T) put(key, null);
     }
 }
\ No newline at end of file
@@ -39,6 +39,12 @@ public class DefaultWriteRequest implements WriteRequest {
     /** the future to complete when this message is written */
     private IoFuture<Void> future;
 
+    /** tells if the write queue must be flushed when this message is enqueued */
+    private boolean flush = true;
+
+    /** tells if the message has been obtained from the session buffer allocator */
+    private boolean allocated = false;
+
     /**
      * Creates a new instance of a WriteRequest, storing the message as it was
      * when the IoSession.write() has been called.
@@ -90,6 +96,38 @@ public class DefaultWriteRequest implements WriteRequest {
         return originalMessage;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFlush() {
+        return flush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFlush(boolean flush) {
+        this.flush = flush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAllocated() {
+        return allocated;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAllocated(boolean allocated) {
+        this.allocated = allocated;
+    }
+
     /**
      * @see Object#toString()
      */
@@ -0,0 +1,164 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.session;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.apache.mina.service.scheduler.TaskScheduler;
+
+/**
+ * Schedule the timeouts of the filters on the {@link TaskScheduler} of their session (the selector loop of the NIO
+ * sessions) : the tasks are run by the thread processing the other events of the session, without any additional
+ * thread. The tasks of the sessions without scheduler are run by a thread shared by the whole process, created on
+ * the first use.
+ * <p>
+ * A timer stays on the scheduler it was created on, even if the session is handed over to another one later (a NIO
+ * session moved to another selector loop) : when it expires, its task is then posted to the current scheduler of the
+ * session, so that it's still run by the thread processing the session.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public final class SessionScheduler {
+
+    private SessionScheduler() {
+    }
+
+    /**
+     * Run a task once a delay has elapsed.
+     * 
+     * @param session the session the task belongs to
+     * @param task the task to run
+     * @param delay the delay before running the task
+     * @param unit the unit of the delay
+     * @return the handle for cancelling the task
+     */
+    public static ScheduledTask schedule(IoSession session, Runnable task, long delay, TimeUnit unit) {
+        TaskScheduler scheduler = getTaskScheduler(session);
+
+        if (scheduler != null) {
+            return scheduler.schedule(new SessionTask(session, task), delay, unit);
+        }
+
+        return new ExecutorTask(SharedExecutor.INSTANCE.schedule(task, delay, unit));
+    }
+
+    /**
+     * Run a task periodically, the first time once a delay has elapsed.
+     * 
+     * @param session the session the task belongs to
+     * @param task the task to run
+     * @param initialDelay the delay before the first run
+     * @param period the period between two runs
+     * @param unit the unit of the delay and the period
+     * @return the handle for cancelling the task
+     */
+    public static ScheduledTask scheduleAtFixedRate(IoSession session, Runnable task, long initialDelay, long period,
+            TimeUnit unit) {
+        TaskScheduler scheduler = getTaskScheduler(session);
+
+        if (scheduler != null) {
+            return scheduler.scheduleAtFixedRate(new SessionTask(session, task), initialDelay, period, unit);
+        }
+
+        return new ExecutorTask(SharedExecutor.INSTANCE.scheduleAtFixedRate(task, initialDelay, period, unit));
+    }
+
+    private static TaskScheduler getTaskScheduler(IoSession session) {
+        if (session instanceof AbstractIoSession) {
+            return ((AbstractIoSession) session).getTaskScheduler();
+        }
+
+        return null;
+    }
+
+    /**
+     * A task run by the current scheduler of its session
+     */
+    private static final class SessionTask implements Runnable {
+        private final IoSession session;
+
+        private final Runnable task;
+
+        SessionTask(IoSession session, Runnable task) {
+            this.session = session;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            TaskScheduler scheduler = getTaskScheduler(session);
+
+            if ((scheduler != null) && !scheduler.isLoopThread()) {
+                // the session has been moved since the task was scheduled
+                scheduler.runInLoop(task);
+            } else {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * The executor of the sessions without scheduler, created on the first use
+     */
+    private static final class SharedExecutor {
+        static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SessionScheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * A task scheduled on the shared executor
+     */
+    private static final class ExecutorTask implements ScheduledTask {
+        private final ScheduledFuture<?> future;
+
+        ExecutorTask(ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel() {
+            return future.cancel(false);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+    }
+}
@@ -69,4 +69,35 @@ public interface WriteRequest {
      * @param the future
      */
     void setFuture(IoFuture<Void> future);
+
+    /**
+     * Tells if the session write queue must be flushed when this request is enqueued. Requests written with
+     * {@link org.apache.mina.api.IoSession#writeWithoutFlush(Object)} stay in the queue until the next flush.
+     * 
+     * @return <code>true</code> if the request must be flushed immediately
+     */
+    boolean isFlush();
+
+    /**
+     * Set the flag telling if the session write queue must be flushed when this request is enqueued.
+     * 
+     * @param flush <code>false</code> to keep the request in the write queue until the next flush
+     */
+    void setFlush(boolean flush);
+
+    /**
+     * Tells if the message is a buffer obtained from the session
+     * {@link org.apache.mina.service.buffer.BufferAllocator}, which must be released once written.
+     * 
+     * @return <code>true</code> if the message has to be released
+     */
+    boolean isAllocated();
+
+    /**
+     * Set the flag telling if the message is a buffer obtained from the session
+     * {@link org.apache.mina.service.buffer.BufferAllocator}.
+     * 
+     * @param allocated <code>true</code> if the message has to be released once written
+     */
+    void setAllocated(boolean allocated);
 }
\ No newline at end of file
@@ -34,7 +34,7 @@ import org.apache.mina.api.IoSession;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.udp.AbstractUdpServer;
 import org.apache.mina.transport.udp.UdpSessionConfig;
@@ -61,7 +61,7 @@ public class BioUdpServer extends AbstractUdpServer {
     private boolean bound = false;
 
     // for detecting idle sessions
-    private IdleChecker idleChecker = new IndexedIdleChecker();
+    private IdleChecker idleChecker = new TimingWheelIdleChecker();
 
     // list of all the sessions by remote socket address
     private final Map<SocketAddress /* remote socket address */, BioUdpSession> sessions = new ConcurrentHashMap<SocketAddress, BioUdpSession>();
@@ -192,7 +192,7 @@ public class BioUdpServer extends AbstractUdpServer {
                                 config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
                         session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE,
                                 config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
-                        idleChecker.sessionWritten(session, System.currentTimeMillis());
+                        idleChecker.sessionWritten(session, session.getClock().currentTimeMillis());
                         session.setConnected();
                         
                         // fire open
@@ -202,7 +202,7 @@ public class BioUdpServer extends AbstractUdpServer {
                     rcvdBuffer.flip();
                     session.processMessageReceived(rcvdBuffer);
                     // Update the session idle status
-                    idleChecker.sessionRead(session, System.currentTimeMillis());
+                    idleChecker.sessionRead(session, session.getClock().currentTimeMillis());
                 } catch (AsynchronousCloseException aec) {
                     LOG.debug("closed service");
                     break;
@@ -21,15 +21,22 @@ package org.apache.mina.transport.nio;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectableChannel;
-import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.service.buffer.BufferAllocator;
+import org.apache.mina.service.buffer.UnpooledBufferAllocator;
 import org.apache.mina.service.idlechecker.IdleChecker;
+import org.apache.mina.service.scheduler.TaskScheduler;
 import org.apache.mina.session.AbstractIoSession;
 import org.apache.mina.session.DefaultWriteFuture;
 import org.apache.mina.session.DefaultWriteQueue;
@@ -57,12 +64,90 @@ public abstract class AbstractNioSession extends AbstractIoSession {
     /** is this session registered for being polled for write ready events */
     private final AtomicBoolean registeredForWrite = new AtomicBoolean();
 
+    /**
+     * the number of read suspensions not yet released : the handler, a filter or the executor can suspend the reads
+     * independently, and the reads are resumed once all of them have called {@link #resumeRead()}
+     */
+    private final AtomicInteger readSuspensions = new AtomicInteger();
+
     /** the queue of pending writes for the session, to be dequeued by the {@link SelectorLoop} */
     private final Queue<WriteRequest> writeQueue = new DefaultWriteQueue();
 
+    /** the number of bytes pending in the write queue */
+    private final AtomicLong writeQueueBytes = new AtomicLong();
+
+    /** is the write queue below the high watermark */
+    private volatile boolean writable = true;
+
+    /** serializes the writability transitions, so the events are fired in order */
+    private final Object writabilityLock = new Object();
+
+    /** the writes done by the other threads, waiting for being enqueued by the selector loop owning the writes */
+    private final Queue<WriteRequest> foreignWriteQueue = new ConcurrentLinkedQueue<WriteRequest>();
+
+    /** is a drain of the foreign writes scheduled on the selector loop */
+    private final AtomicBoolean foreignWritesScheduled = new AtomicBoolean();
+
+    /** the task enqueuing the foreign writes, run by the selector loop owning the writes */
+    private final Runnable foreignWritesDrainer = new Runnable() {
+        @Override
+        public void run() {
+            drainForeignWrites();
+        }
+    };
+
+    /** is this session waiting for its selector loop to flush it (only accessed by the selector loop thread) */
+    private boolean flushScheduled = false;
+
+    /** the allocator providing the direct buffers used for writing */
+    protected final BufferAllocator bufferAllocator;
+
+    /** have the buffers of the pending writes been given back, the channel being closed */
+    private volatile boolean pendingWritesReleased = false;
+
+    /** the task giving back the buffers of the pending writes, run by the selector loop owning the writes */
+    private final Runnable pendingWritesReleaser = new Runnable() {
+        @Override
+        public void run() {
+            releasePendingWrites();
+        }
+    };
+
     public AbstractNioSession(IoService service, SelectableChannel channel, IdleChecker idleChecker) {
         super(service, idleChecker);
         this.channel = channel;
+
+        BufferAllocator allocator = service.getBufferAllocator();
+
+        if (allocator == null) {
+            allocator = new UnpooledBufferAllocator();
+        }
+
+        this.bufferAllocator = allocator;
+    }
+
+    /**
+     * @return the allocator providing the direct buffers used by this session
+     */
+    public BufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
+    /**
+     * Get the selector loop processing the I/O events of this session.
+     * 
+     * @return the selector loop of this session, or <code>null</code> if the session has none
+     */
+    public abstract SelectorLoop getSelectorLoop();
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The timed tasks are run by the selector loop of the session.
+     */
+    @Override
+    public TaskScheduler getTaskScheduler() {
+        return getSelectorLoop();
     }
 
     /**
@@ -104,32 +189,42 @@ public abstract class AbstractNioSession extends AbstractIoSession {
      */
     @Override
     public IoFuture<Void> close(final boolean immediately) {
-        switch (state) {
-        case CREATED:
-            LOG.error("Session {} not opened", this);
-            throw new IllegalStateException("cannot close an not opened session");
-        case CONNECTED:
-            state = SessionState.CLOSING;
-            if (immediately) {
-                channelClose();
-                processSessionClosed();
-            } else {
-                // flush this session the flushing code will close the session
-                flushWriteQueue();
+        for (;;) {
+            final SessionState currentState = getState();
+
+            switch (currentState) {
+            case CREATED:
+                LOG.error("Session {} not opened", this);
+                throw new IllegalStateException("cannot close an not opened session");
+            case CONNECTED:
+            case SECURING:
+            case SECURED:
+                if (!changeState(currentState, SessionState.CLOSING)) {
+                    // the state changed concurrently (another close, or the SSL/TLS handshake) : check it again
+                    continue;
+                }
+
+                if (immediately) {
+                    channelClose();
+                    processSessionClosed();
+                } else {
+                    // flush this session the flushing code will close the session
+                    flushWriteQueue();
+                }
+                break;
+            case CLOSING:
+                // return the same future
+                LOG.warn("Already closing session {}", this);
+                break;
+            case CLOSED:
+                LOG.warn("Already closed session {}", this);
+                break;
+            default:
+                throw new IllegalStateException("not implemented session state : " + currentState);
             }
-            break;
-        case CLOSING:
-            // return the same future
-            LOG.warn("Already closing session {}", this);
-            break;
-        case CLOSED:
-            LOG.warn("Already closed session {}", this);
-            break;
-        default:
-            throw new IllegalStateException("not implemented session state : " + state);
-        }
 
-        return closeFuture;
+            return closeFuture;
+        }
     }
 
     /**
@@ -146,6 +241,38 @@ public abstract class AbstractNioSession extends AbstractIoSession {
             LOG.debug("enqueueWriteRequest {}", writeRequest);
         }
 
+        boolean flushRequested = writeRequest.isFlush();
+        final SelectorLoop writeLoop = getWriteLoop();
+
+        if (writeLoop != null) {
+            if (!writeLoop.isLoopThread()) {
+                // hand the write to the selector loop, which will gather it with the other pending ones
+                foreignWriteQueue.add(writeRequest);
+
+                if (foreignWritesScheduled.compareAndSet(false, true)) {
+                    writeLoop.runInLoop(foreignWritesDrainer);
+                }
+
+                return writeRequest;
+            }
+
+            // keep the order of the writes : the ones handed by the other threads go first
+            flushRequested |= transferForeignWrites();
+        }
+
+        // a write done by the selector loop while it processes I/O events can be deferred
+        // to the end of the batch, for being gathered with the following ones
+        return enqueueWriteRequest(writeRequest, flushRequested && !deferFlush());
+    }
+
+    /**
+     * Enqueue a write request, and write it immediately if the flush is requested and nothing is pending.
+     * 
+     * @param writeRequest the request to write
+     * @param flush <code>true</code> if the write queue has to be flushed
+     * @return the enqueued request
+     */
+    private WriteRequest enqueueWriteRequest(WriteRequest writeRequest, final boolean flush) {
         if (isConnectedSecured()) {
             // SSL/TLS : we have to encrypt the message
             SslHelper sslHelper = getAttribute(SSL_HELPER, null);
@@ -154,74 +281,283 @@ public abstract class AbstractNioSession extends AbstractIoSession {
                 throw new IllegalStateException();
             }
 
-            writeRequest = sslHelper.processWrite(this, writeRequest.getMessage(), writeQueue);
+            writeRequest = sslHelper.processWrite(this, writeRequest, writeQueue);
         }
 
-        /*synchronized (writeQueue)*/{
-            ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+        ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
 
-            if (writeQueue.isEmpty()) {
-                // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer and if it's too big
-                message = convertToDirectBuffer(writeRequest, false);
+        if (flush && writeQueue.isEmpty() && !isWriteSuspended()) {
+            // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer and if it's too big
+            message = convertToDirectBuffer(writeRequest, false);
 
-                // We don't have anything in the writeQueue, let's try to write the
-                // data in the channel immediately if we can
-                int written = writeDirect(writeRequest.getMessage());
+            // We don't have anything in the writeQueue, let's try to write the
+            // data in the channel immediately if we can
+            int written = writeDirect(writeRequest.getMessage());
 
-                if (IS_DEBUG) {
-                    LOG.debug("wrote {} bytes to {}", written, this);
-                }
+            if (IS_DEBUG) {
+                LOG.debug("wrote {} bytes to {}", written, this);
+            }
+
+            if (written > 0) {
+                incrementWrittenBytes(written);
+            }
+
+            // Update the idle status for this session
+            idleChecker.sessionWritten(this, getClock().currentTimeMillis());
+            int remaining = message.remaining();
+
+            if ((written < 0) || (remaining > 0)) {
+                // Create a DirectBuffer unconditionally
+                convertToDirectBuffer(writeRequest, true);
 
-                if (written > 0) {
-                    incrementWrittenBytes(written);
+                // We have to push the request on the writeQueue
+                addToWriteQueue(writeRequest);
+
+                // If it wasn't, we register this session as interested to write.
+                // It's done in atomic fashion for avoiding two concurrent registering.
+                if (!registeredForWrite.getAndSet(true)) {
+                    flushWriteQueue();
                 }
+            } else {
+                // The message has been fully written : update the stats, and signal the handler
+                completeWriteRequest(writeRequest);
+            }
+        } else {
+            // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer
+            message = convertToDirectBuffer(writeRequest, true);
 
-                // Update the idle status for this session
-                idleChecker.sessionWritten(this, System.currentTimeMillis());
-                int remaining = message.remaining();
+            // We have to push the request on the writeQueue
+            addToWriteQueue(writeRequest);
 
-                if ((written < 0) || (remaining > 0)) {
-                    // Create a DirectBuffer unconditionally
-                    convertToDirectBuffer(writeRequest, true);
+            if (flush) {
+                flush();
+            }
+        }
+
+        return writeRequest;
+    }
+
+    /**
+     * Returns the selector loop in charge of the writes of this session, when the writes done by the other threads are
+     * handed to it. The default implementation returns <code>null</code> : the writes are done by the calling thread.
+     * 
+     * @return the selector loop owning the writes, or <code>null</code> if the writes are not confined
+     */
+    protected SelectorLoop getWriteLoop() {
+        return null;
+    }
+
+    /**
+     * Move the writes handed by the other threads to the write queue, without flushing it. Must be called by the
+     * selector loop owning the writes.
+     * 
+     * @return <code>true</code> if one of the moved writes requested a flush
+     */
+    private boolean transferForeignWrites() {
+        boolean flush = false;
+        WriteRequest writeRequest;
+
+        while ((writeRequest = foreignWriteQueue.poll()) != null) {
+            flush |= writeRequest.isFlush();
+            enqueueWriteRequest(writeRequest, false);
+        }
+
+        return flush;
+    }
 
-                    // We have to push the request on the writeQueue
-                    writeQueue.add(writeRequest);
+    /**
+     * Enqueue all the writes handed by the other threads since the last drain, then flush them at once.
+     */
+    private void drainForeignWrites() {
+        final SelectorLoop writeLoop = getWriteLoop();
+
+        if ((writeLoop != null) && !writeLoop.isLoopThread()) {
+            // the session moved to another selector loop in the meantime
+            writeLoop.runInLoop(foreignWritesDrainer);
+            return;
+        }
+
+        // cleared before polling : a write added after the last poll schedules a new drain
+        foreignWritesScheduled.set(false);
+
+        if (pendingWritesReleased) {
+            // the channel has been closed meanwhile : these writes will never be done
+            releasePendingWrites();
+            return;
+        }
+
+        if (transferForeignWrites()) {
+            if ((writeLoop != null) && isConnected()) {
+                flushNow(writeLoop);
+            } else {
+                flush();
+            }
+        }
+    }
 
-                    // If it wasn't, we register this session as interested to write.
-                    // It's done in atomic fashion for avoiding two concurrent registering.
-                    if (!registeredForWrite.getAndSet(true)) {
-                        flushWriteQueue();
+    /**
+     * Push a request on the write queue, accounting its bytes. If the queue crosses the high watermark the session
+     * becomes unwritable.
+     * 
+     * @param writeRequest the request to enqueue, containing a {@link ByteBuffer}
+     */
+    private void addToWriteQueue(WriteRequest writeRequest) {
+        int bytes = ((ByteBuffer) writeRequest.getMessage()).remaining();
+        writeQueue.add(writeRequest);
+        long pending = writeQueueBytes.addAndGet(bytes);
+
+        if (writable) {
+            Integer highWaterMark = getConfig().getWriteBufferHighWaterMark();
+
+            if ((highWaterMark != null) && (pending > highWaterMark)) {
+                updateWritability();
+            }
+        }
+    }
+
+    /**
+     * Account the bytes written from the write queue. If the queue drops below the low watermark an unwritable session
+     * becomes writable again.
+     * 
+     * @param bytes the number of bytes written
+     */
+    private void writeQueueDrained(long bytes) {
+        writeQueueBytes.addAndGet(-bytes);
+
+        if (!writable) {
+            updateWritability();
+        }
+    }
+
+    /**
+     * Compare the pending bytes with the watermarks and fire the writability changed event on a transition. A missing
+     * low watermark defaults to half the high one. The check is done again after each transition, as the queue may
+     * have been drained by the selector loop while the session was becoming unwritable.
+     */
+    private void updateWritability() {
+        synchronized (writabilityLock) {
+            for (;;) {
+                Integer highWaterMark = getConfig().getWriteBufferHighWaterMark();
+                long pending = writeQueueBytes.get();
+
+                if (writable) {
+                    if ((highWaterMark == null) || (pending <= highWaterMark)) {
+                        return;
                     }
-                } else {
-                    // The message has been fully written : update the stats, and signal the handler
-                    // generate the message sent event
-                    // complete the future if we have one (we should...)
-                    final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+                } else if (highWaterMark != null) {
+                    Integer lowWaterMark = getConfig().getWriteBufferLowWaterMark();
+                    long threshold = lowWaterMark == null ? highWaterMark / 2 : Math.min(lowWaterMark, highWaterMark);
 
-                    if (future != null) {
-                        future.complete();
+                    if (pending > threshold) {
+                        return;
                     }
+                }
 
-                    final Object highLevel = ((DefaultWriteRequest) writeRequest).getOriginalMessage();
+                writable = !writable;
 
-                    if (highLevel != null) {
-                        processMessageSent(highLevel);
-                    }
+                if (IS_DEBUG) {
+                    LOG.debug("session {} is now {} with {} pending bytes", new Object[] { this,
+                            writable ? "writable" : "unwritable", pending });
                 }
-            } else {
-                // Transfer the buffer in a DirectByteBuffer if it's a HeapByteBuffer
-                message = convertToDirectBuffer(writeRequest, true);
 
-                // We have to push the request on the writeQueue
-                writeQueue.add(writeRequest);
+                processSessionWritabilityChanged(writable);
             }
         }
+    }
 
-        return writeRequest;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getWriteQueueBytes() {
+        return writeQueueBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+        // IMPORTANT : this section is synchronized with the end of processWrite(), so
+        // that a request can't be left in the queue while nobody is registered for write.
+        synchronized (writeQueue) {
+            if (!writeQueue.isEmpty() && !registeredForWrite.getAndSet(true)) {
+                flushWriteQueue();
+            }
+        }
+    }
+
+    /**
+     * Tells if a flushing write can be deferred, the caller being the selector loop currently processing I/O events.
+     * In this case the session write queue will be flushed by the selector loop once all the ready sessions have been
+     * processed. The default implementation never defers the flush.
+     * 
+     * @return <code>true</code> if the selector loop will flush the write queue itself
+     */
+    protected boolean deferFlush() {
+        return false;
+    }
+
+    /**
+     * Flush the write queue immediately, without waiting for the channel to be selected for write. This must only be
+     * called by the selector loop thread handling this session.
+     * 
+     * @param selectorLoop the selector loop handling this session
+     */
+    void flushNow(SelectorLoop selectorLoop) {
+        if (registeredForWrite.getAndSet(true)) {
+            // the session is already waiting for the channel to be writable,
+            // the queue will be flushed by the next write event
+            return;
+        }
+
+        if (isWriteSuspended()) {
+            // the queue will be flushed once the writes are resumed
+            return;
+        }
+
+        processWrite(selectorLoop);
+
+        if (!writeQueue.isEmpty() && channel.isOpen()) {
+            // the socket buffer is full : wait for the channel to be writable
+            flushWriteQueue();
+        }
+    }
+
+    /**
+     * Make the write interest of the selector loop consistent with the write queue : register the session for write
+     * if the queue is not empty. Used once the session has been registered on a new selector loop, as a flush
+     * requested while the session was moving can't have been registered.
+     */
+    void restoreWriteInterest() {
+        synchronized (writeQueue) {
+            if (writeQueue.isEmpty()) {
+                registeredForWrite.set(false);
+            } else {
+                registeredForWrite.set(true);
+                flushWriteQueue();
+            }
+        }
     }
 
     public abstract void flushWriteQueue();
 
+    boolean isFlushScheduled() {
+        return flushScheduled;
+    }
+
+    void setFlushScheduled(boolean flushScheduled) {
+        this.flushScheduled = flushScheduled;
+    }
+
     public void setNotRegisteredForWrite() {
         registeredForWrite.set(false);
     }
@@ -230,6 +566,42 @@ public abstract class AbstractNioSession extends AbstractIoSession {
         return registeredForWrite.get();
     }
 
+    /**
+     * Add a read suspension.
+     * 
+     * @return <code>true</code> if the reads were not suspended before
+     */
+    protected boolean addReadSuspension() {
+        return readSuspensions.incrementAndGet() == 1;
+    }
+
+    /**
+     * Release a read suspension. A release without suspension is ignored.
+     * 
+     * @return <code>true</code> if the last suspension has been released
+     */
+    protected boolean releaseReadSuspension() {
+        for (;;) {
+            int suspensions = readSuspensions.get();
+
+            if (suspensions == 0) {
+                return false;
+            }
+
+            if (readSuspensions.compareAndSet(suspensions, suspensions - 1)) {
+                return suspensions == 1;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReadSuspended() {
+        return readSuspensions.get() > 0;
+    }
+
     /**
      * Get the {@link Queue} of this session. The write queue contains the pending writes.
      * 
@@ -240,75 +612,211 @@ public abstract class AbstractNioSession extends AbstractIoSession {
     }
 
     /**
-     * Process a write operation. This will be executed only because the session has something to write into the
-     * channel.
+     * Returns the maximum number of queued buffers gathered in a single write operation when the write queue is
+     * flushed. The default implementation returns 1, which means the buffers are written one by one.
+     * 
+     * @return the maximum number of buffers written at once
      */
-    public void processWrite(SelectorLoop selectorLoop) {
-        try {
-            if (IS_DEBUG) {
-                LOG.debug("ready for write");
-                LOG.debug("writable session : {}", this);
+    protected int getGatheringWriteMaxBuffers() {
+        return 1;
+    }
+
+    /**
+     * Returns the maximum number of bytes gathered in a single write operation when the write queue is flushed.
+     * 
+     * @return the maximum number of bytes written at once
+     */
+    protected int getGatheringWriteMaxBytes() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * The message has been fully written : complete the future if we have one and generate the message sent event.
+     * 
+     * @param writeRequest the completed write request
+     */
+    private void completeWriteRequest(WriteRequest writeRequest) {
+        // complete the future if we have one (we should...)
+        final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+
+        if (future != null) {
+            future.complete();
+        }
+
+        // generate the message sent event
+        final Object highLevel = ((DefaultWriteRequest) writeRequest).getOriginalMessage();
+
+        if (highLevel != null) {
+            processMessageSent(highLevel);
+        }
+
+        // give back the buffer if it came from the allocator, once nobody can read it anymore
+        if (writeRequest.isAllocated()) {
+            writeRequest.setAllocated(false);
+            bufferAllocator.release((ByteBuffer) writeRequest.getMessage());
+        }
+    }
+
+    /**
+     * Give back to the allocator the buffers of the writes which will never be done, and the buffers kept by the
+     * SSL/TLS layer. Called once the channel is closed, whatever the reason : the release is done by the selector loop
+     * owning the writes, so it doesn't race with a flush.
+     */
+    protected void releasePendingWrites() {
+        final SelectorLoop writeLoop = getWriteLoop();
+
+        if ((writeLoop != null) && !writeLoop.isLoopThread()) {
+            writeLoop.runInLoop(pendingWritesReleaser);
+            return;
+        }
+
+        pendingWritesReleased = true;
+
+        synchronized (writeQueue) {
+            releaseWriteRequests(foreignWriteQueue);
+            releaseWriteRequests(writeQueue);
+        }
+
+        SslHelper sslHelper = getAttribute(SSL_HELPER, null);
+
+        if (sslHelper != null) {
+            sslHelper.release();
+        }
+    }
+
+    /**
+     * Empty a write queue, giving back the buffers which came from the allocator.
+     * 
+     * @param queue the queue to empty
+     */
+    private void releaseWriteRequests(Queue<WriteRequest> queue) {
+        WriteRequest writeRequest;
+
+        while ((writeRequest = queue.poll()) != null) {
+            if (writeRequest.isAllocated()) {
+                writeRequest.setAllocated(false);
+                writeQueueBytes.addAndGet(-((ByteBuffer) writeRequest.getMessage()).remaining());
+                bufferAllocator.release((ByteBuffer) writeRequest.getMessage());
             }
+        }
+    }
 
-            do {
-                // get a write request from the queue. We left it in the queue,
-                // just in case we can't write all of the message content into
-                // the channel : we will have to retrieve the message later
-                final WriteRequest writeRequest = writeQueue.peek();
+    /** The array used by each selector thread to gather the buffers of a flush */
+    private static final ThreadLocal<ByteBuffer[]> GATHERING_BUFFERS = new ThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[0];
+        }
+    };
 
-                if (writeRequest == null) {
-                    // Nothing to write : we are done
-                    break;
-                }
+    /**
+     * Write the head of the write queue into the channel. Up to {@link #getGatheringWriteMaxBuffers()} requests, and
+     * up to {@link #getGatheringWriteMaxBytes()} bytes, are gathered and written with a single system call. The fully
+     * written requests are removed from the queue and completed.
+     * 
+     * @return <code>true</code> if all the gathered requests have been written, <code>false</code> if the socket
+     *         buffer is full
+     * @throws IOException if the write failed
+     */
+    private boolean writeQueuedRequests() throws IOException {
+        final int maxBuffers = getGatheringWriteMaxBuffers();
+        final int maxBytes = getGatheringWriteMaxBytes();
+        ByteBuffer[] buffers = GATHERING_BUFFERS.get();
+
+        if (buffers.length < maxBuffers) {
+            buffers = new ByteBuffer[maxBuffers];
+            GATHERING_BUFFERS.set(buffers);
+        }
 
-                // The message is necessarily a ByteBuffer at this point
-                ByteBuffer buf = (ByteBuffer) writeRequest.getMessage();
+        // Collect the buffers to write. The message is necessarily a ByteBuffer
+        // at this point. Note that if the connection is secured, the buffer
+        // already contains encrypted data.
+        int count = 0;
+        long bytes = 0;
 
-                // Note that if the connection is secured, the buffer
-                // already contains encrypted data.
+        for (WriteRequest writeRequest : writeQueue) {
+            ByteBuffer buf = (ByteBuffer) writeRequest.getMessage();
 
-                // Try to write the data, and get back the number of bytes
-                // actually written
-                int written = ((SocketChannel) channel).write(buf);
+            if ((count > 0) && (bytes + buf.remaining() > maxBytes)) {
+                break;
+            }
 
-                if (IS_DEBUG) {
-                    LOG.debug("wrote {} bytes to {}", written, this);
-                }
+            buffers[count++] = buf;
+            bytes += buf.remaining();
 
-                if (written > 0) {
-                    incrementWrittenBytes(written);
-                }
+            if (count == maxBuffers) {
+                break;
+            }
+        }
 
-                // Update the idle status for this session
-                idleChecker.sessionWritten(this, System.currentTimeMillis());
+        try {
+            // Try to write the data, and get back the number of bytes
+            // actually written
+            final GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+            long written;
 
-                // Ok, we may not have written everything. Check that.
-                if (buf.remaining() == 0) {
-                    // completed write request, let's remove it (we use poll() instead
-                    // of remove(), because remove() may throw an exception if the
-                    // queue is empty.
-                    writeQueue.poll();
+            if (count == 1) {
+                written = gatheringChannel.write(buffers[0]);
+            } else {
+                written = gatheringChannel.write(buffers, 0, count);
+            }
 
-                    // complete the future if we have one (we should...)
-                    final DefaultWriteFuture future = (DefaultWriteFuture) writeRequest.getFuture();
+            if (IS_DEBUG) {
+                LOG.debug("wrote {} bytes from {} buffers to {}", new Object[] { written, count, this });
+            }
 
-                    if (future != null) {
-                        future.complete();
-                    }
+            if (written > 0) {
+                incrementWrittenBytes((int) written);
+                writeQueueDrained(written);
+            }
 
-                    // generate the message sent event
-                    final Object highLevel = ((DefaultWriteRequest) writeRequest).getOriginalMessage();
+            // Update the idle status for this session
+            idleChecker.sessionWritten(this, getClock().currentTimeMillis());
 
-                    if (highLevel != null) {
-                        processMessageSent(highLevel);
-                    }
-                } else {
+            // Ok, we may not have written everything. Check that.
+            for (int i = 0; i < count; i++) {
+                if (buffers[i].hasRemaining()) {
                     // output socket buffer is full, we need
                     // to give up until next selection for
                     // writing.
+                    return false;
+                }
+
+                // completed write request, let's remove it (we use poll() instead
+                // of remove(), because remove() may throw an exception if the
+                // queue is empty.
+                completeWriteRequest(writeQueue.poll());
+            }
+
+            return true;
+        } finally {
+            // don't retain the written buffers
+            Arrays.fill(buffers, 0, count, null);
+        }
+    }
+
+    /**
+     * Process a write operation. This will be executed only because the session has something to write into the
+     * channel.
+     */
+    public void processWrite(SelectorLoop selectorLoop) {
+        try {
+            if (IS_DEBUG) {
+                LOG.debug("ready for write");
+                LOG.debug("writable session : {}", this);
+            }
+
+            // the writes handed by the other threads must be done before the session is closed
+            transferForeignWrites();
+
+            // we left the requests in the queue, just in case we can't write
+            // all of the message content into the channel : we will have to
+            // retrieve the message later. The writes suspended meanwhile stop the flush.
+            while (!writeQueue.isEmpty() && !isWriteSuspended()) {
+                if (!writeQueuedRequests()) {
                     break;
                 }
-            } while (!writeQueue.isEmpty());
+            }
 
             // We may have exited from the loop for some other reason
             // that an empty queue
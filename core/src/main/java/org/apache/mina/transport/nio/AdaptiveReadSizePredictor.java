@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+/**
+ * Predicts the number of bytes to ask for the next read of a session, from the size of its previous reads. The size
+ * is a power of two between {@link #MIN_SIZE} and {@link #MAX_SIZE} : it quickly grows when the reads fill the
+ * predicted size, and slowly shrinks when two reads in a row use less than half of it.
+ * <p>
+ * Not thread safe : a session is only read by its selector loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class AdaptiveReadSizePredictor {
+    /** The smallest predicted size */
+    static final int MIN_SIZE = 64;
+
+    /** The biggest predicted size, the size of the selector loop read buffer */
+    static final int MAX_SIZE = 64 * 1024;
+
+    /** The predicted size for the first read */
+    static final int INITIAL_SIZE = 2048;
+
+    /** The number of power of two steps when the size grows */
+    private static final int GROW_STEPS = 2;
+
+    /** The highest index */
+    private static final int MAX_INDEX = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE);
+
+    /** The predicted size is MIN_SIZE << index */
+    private int index = Integer.numberOfTrailingZeros(INITIAL_SIZE / MIN_SIZE);
+
+    /** Tells if the previous read was small enough to shrink the size */
+    private boolean shrinkNext = false;
+
+    /**
+     * @return the number of bytes to ask for the next read
+     */
+    int nextReadSize() {
+        return MIN_SIZE << index;
+    }
+
+    /**
+     * Update the prediction with the number of bytes of a read.
+     * 
+     * @param readCount the number of bytes read
+     */
+    void readCompleted(int readCount) {
+        int size = MIN_SIZE << index;
+
+        if (readCount >= size) {
+            // the read filled the buffer, more was probably available
+            index = Math.min(index + GROW_STEPS, MAX_INDEX);
+            shrinkNext = false;
+        } else if ((index > 0) && (readCount <= (size >> 1))) {
+            if (shrinkNext) {
+                index--;
+                shrinkNext = false;
+            } else {
+                shrinkNext = true;
+            }
+        } else {
+            shrinkNext = false;
+        }
+    }
+}
@@ -18,10 +18,9 @@
  */
 package org.apache.mina.transport.nio;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
- * A fixed size pool of {@link SelectorLoop}.
+ * A fixed size pool of {@link SelectorLoop}. The selector loop handling a new session is chosen by a
+ * {@link SelectorLoopBalancer}, round-robin by default.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -29,19 +28,34 @@ public class FixedSelectorLoopPool implements SelectorLoopPool {
     /** the pool of selector loop */
     private final SelectorLoop[] pool;
 
-    /** the index of the next selector loop to be served */
-    private final AtomicInteger nextIndex = new AtomicInteger();
+    /** the strategy choosing the selector loop to be served */
+    private final SelectorLoopBalancer balancer;
 
     /**
-     * Create a pool of "size" {@link SelectorLoop}
+     * Create a pool of "size" {@link SelectorLoop}, served in turn
      * 
      * @param size
      */
     public FixedSelectorLoopPool(String prefix, final int size) {
+        this(prefix, size, new RoundRobinBalancer());
+    }
+
+    /**
+     * Create a pool of "size" {@link SelectorLoop}, served according to the given balancing strategy
+     * 
+     * @param size
+     * @param balancer the strategy choosing the selector loop of a new session
+     */
+    public FixedSelectorLoopPool(String prefix, final int size, final SelectorLoopBalancer balancer) {
         if (size <= 0) {
             throw new IllegalArgumentException("We can't create a pool with no Selectorloop in it");
         }
 
+        if (balancer == null) {
+            throw new IllegalArgumentException("The balancer cannot be null");
+        }
+
+        this.balancer = balancer;
         pool = new SelectorLoop[size];
 
         for (int i = 0; i < size; i++) {
@@ -54,6 +68,14 @@ public class FixedSelectorLoopPool implements SelectorLoopPool {
      */
     @Override
     public SelectorLoop getSelectorLoop() {
-        return pool[Math.abs(nextIndex.incrementAndGet() % pool.length)];
+        return balancer.select(pool);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop[] getSelectorLoops() {
+        return pool.clone();
     }
 }
@@ -0,0 +1,51 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+/**
+ * A {@link SelectorLoopBalancer} choosing the selector loop which has processed the fewest bytes recently, according
+ * to the moving average of its byte rate. The loops with the same rate (typically idle loops) are compared on their
+ * number of sessions.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class LeastRecentBytesBalancer implements SelectorLoopBalancer {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop select(SelectorLoop[] loops) {
+        SelectorLoop selected = loops[0];
+        double minRate = selected.getRecentByteRate();
+
+        for (int i = 1; i < loops.length; i++) {
+            double rate = loops[i].getRecentByteRate();
+
+            if ((rate < minRate)
+                    || ((rate == minRate) && (loops[i].getSessionCount() < selected.getSessionCount()))) {
+                selected = loops[i];
+                minRate = rate;
+            }
+        }
+
+        return selected;
+    }
+}
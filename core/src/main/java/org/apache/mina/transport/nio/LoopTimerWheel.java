@@ -0,0 +1,348 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The tasks scheduled on a {@link SelectorLoop}, hashed by deadline in a wheel of ticks. Scheduling, cancelling and
+ * expiring a task are O(1). Apart from {@link Timer#cancel()}, all the methods are called by the loop thread : a task
+ * cancelled by another thread is unlinked by a task posted to the loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class LoopTimerWheel {
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(LoopTimerWheel.class);
+
+    /** The default duration of a tick in ms */
+    static final long DEFAULT_TICK_IN_MS = 10;
+
+    /** The default number of ticks in the wheel */
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int PENDING = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int DONE = 2;
+
+    private static final AtomicIntegerFieldUpdater<Timer> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(
+            Timer.class, "state");
+
+    /** The loop running the tasks */
+    private final SelectorLoop selectorLoop;
+
+    /** The duration of a tick in ns */
+    private final long tickInNanos;
+
+    /** The mask giving the bucket of a tick, the wheel size being a power of two */
+    private final int mask;
+
+    /** The first timer of each bucket */
+    private final Timer[] wheel;
+
+    /** The time of the tick 0 */
+    private final long startTime = System.nanoTime();
+
+    /** The last processed tick */
+    private long processedTick = 0;
+
+    /** A tick not after the first tick holding a timer */
+    private long nextTick = Long.MAX_VALUE;
+
+    /** The number of linked timers */
+    private int size = 0;
+
+    /** The timers expired by the current tick */
+    private final List<Timer> expired = new ArrayList<Timer>();
+
+    LoopTimerWheel(SelectorLoop selectorLoop) {
+        this(selectorLoop, DEFAULT_TICK_IN_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    LoopTimerWheel(SelectorLoop selectorLoop, long tickInMs, int wheelSize) {
+        this.selectorLoop = selectorLoop;
+        this.tickInNanos = TimeUnit.MILLISECONDS.toNanos(tickInMs);
+        this.mask = wheelSize - 1;
+        this.wheel = new Timer[wheelSize];
+    }
+
+    /**
+     * Create a timer, to be added to the wheel by the loop thread.
+     * 
+     * @param task the task to run
+     * @param delayInNanos the delay before the first run
+     * @param periodInNanos the period between two runs, 0 for a one shot task
+     * @return the timer
+     */
+    Timer newTimer(Runnable task, long delayInNanos, long periodInNanos) {
+        return new Timer(task, System.nanoTime() + Math.max(delayInNanos, 0L), periodInNanos);
+    }
+
+    /**
+     * Link a timer in the bucket of its deadline, unless it has been cancelled in the meantime.
+     */
+    void add(Timer timer) {
+        if (timer.state != PENDING) {
+            return;
+        }
+
+        // the bucket is processed once its tick is over, so round the deadline to the next tick
+        long tick = Math.max((timer.deadline - startTime + tickInNanos - 1) / tickInNanos, processedTick + 1);
+        int bucket = (int) (tick & mask);
+
+        timer.tick = tick;
+        timer.bucket = bucket;
+        timer.prev = null;
+        timer.next = wheel[bucket];
+
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+
+        wheel[bucket] = timer;
+        timer.linked = true;
+        size++;
+
+        if (tick < nextTick) {
+            nextTick = tick;
+        }
+    }
+
+    private void remove(Timer timer) {
+        if (!timer.linked) {
+            return;
+        }
+
+        if (timer.prev == null) {
+            wheel[timer.bucket] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+
+        timer.prev = null;
+        timer.next = null;
+        timer.linked = false;
+        size--;
+    }
+
+    /**
+     * @return the number of scheduled tasks, including the cancelled tasks not yet dropped
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the time the loop can wait before the next tick holding a timer.
+     * 
+     * @return the timeout in ms, 0 if some timers are expired, -1 if no timer is scheduled
+     */
+    long getTimeoutInMs() {
+        if (size == 0) {
+            return -1L;
+        }
+
+        long remaining = startTime + nextTick * tickInNanos - System.nanoTime();
+
+        if (remaining <= 0) {
+            return 0L;
+        }
+
+        // round up, so the loop doesn't wake up just before the tick
+        return (remaining + 999999L) / 1000000L;
+    }
+
+    /**
+     * Run the expired timers.
+     * 
+     * @param now the current {@link System#nanoTime()}
+     * @return the number of tasks run
+     */
+    int expire(long now) {
+        long tick = (now - startTime) / tickInNanos;
+
+        if ((size == 0) || (tick <= processedTick) || (tick < nextTick)) {
+            return 0;
+        }
+
+        // the buckets before the next tick are empty, and one turn of the wheel visits all the buckets
+        long firstTick = Math.max(processedTick + 1, nextTick);
+        long lastTick = Math.min(tick, firstTick + wheel.length - 1);
+
+        for (long t = firstTick; t <= lastTick; t++) {
+            Timer timer = wheel[(int) (t & mask)];
+
+            while (timer != null) {
+                Timer next = timer.next;
+
+                if ((timer.tick <= tick) || (timer.state != PENDING)) {
+                    remove(timer);
+
+                    if (timer.state == PENDING) {
+                        expired.add(timer);
+                    }
+                }
+
+                timer = next;
+            }
+        }
+
+        processedTick = tick;
+        updateNextTick();
+
+        int count = expired.size();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                run(expired.get(i), now);
+            }
+        } finally {
+            expired.clear();
+        }
+
+        return count;
+    }
+
+    /**
+     * Find the first bucket holding a timer, within one turn of the wheel
+     */
+    private void updateNextTick() {
+        nextTick = Long.MAX_VALUE;
+
+        if (size == 0) {
+            return;
+        }
+
+        for (long t = processedTick + 1; t <= processedTick + wheel.length; t++) {
+            if (wheel[(int) (t & mask)] != null) {
+                nextTick = t;
+                return;
+            }
+        }
+    }
+
+    private void run(Timer timer, long now) {
+        if (timer.period == 0) {
+            if (!STATE_UPDATER.compareAndSet(timer, PENDING, DONE)) {
+                // cancelled by the previous tasks
+                return;
+            }
+        } else if (timer.state != PENDING) {
+            return;
+        }
+
+        try {
+            timer.task.run();
+        } catch (Exception e) {
+            LOG.error("Unexpected exception while running a scheduled task : ", e);
+        }
+
+        if (timer.period != 0) {
+            // fixed rate : the executions missed while the loop was busy are skipped
+            long deadline = timer.deadline + timer.period;
+
+            if (deadline <= now) {
+                deadline += ((now - deadline) / timer.period + 1) * timer.period;
+            }
+
+            timer.deadline = deadline;
+            add(timer);
+        }
+    }
+
+    /**
+     * A task in the wheel
+     */
+    final class Timer implements ScheduledTask {
+        private final Runnable task;
+
+        /** the period in ns, 0 for a one shot task */
+        private final long period;
+
+        /** the next run time, as given by {@link System#nanoTime()} */
+        private long deadline;
+
+        /** the tick of the deadline, and its bucket */
+        private long tick;
+
+        private int bucket;
+
+        /** the neighbours in the bucket */
+        private Timer prev;
+
+        private Timer next;
+
+        /** is the timer in the wheel */
+        private boolean linked = false;
+
+        /** accessed through the updater */
+        volatile int state = PENDING;
+
+        Timer(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+
+            if (selectorLoop.isLoopThread()) {
+                remove(this);
+            } else {
+                selectorLoop.runInLoop(new Runnable() {
+                    @Override
+                    public void run() {
+                        remove(Timer.this);
+                    }
+                });
+            }
+
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+    }
+}
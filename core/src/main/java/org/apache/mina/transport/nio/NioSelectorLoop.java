@@ -20,15 +20,25 @@
 package org.apache.mina.transport.nio;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.apache.mina.util.CachedClock;
+import org.apache.mina.util.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,8 +55,42 @@ public class NioSelectorLoop implements SelectorLoop {
 
     private static final boolean IS_DEBUG = LOG.isDebugEnabled();
 
-    /** the selector managed by this class */
-    private Selector selector;
+    /**
+     * The system property to set to <code>true</code> for keeping the selected keys set of the selector
+     * implementation, instead of replacing it by an array backed set
+     */
+    public static final String DISABLE_KEY_SET_OPTIMIZATION = "org.apache.mina.transport.nio.disableKeySetOptimization";
+
+    /**
+     * The system property giving the number of consecutive premature selects after which the selector is rebuilt, 0 to
+     * disable the rebuild
+     */
+    public static final String SELECTOR_REBUILD_THRESHOLD = "org.apache.mina.transport.nio.selectorRebuildThreshold";
+
+    /** The default number of consecutive premature selects after which the selector is rebuilt */
+    public static final int DEFAULT_SELECTOR_REBUILD_THRESHOLD = 512;
+
+    /** the selector managed by this class, replaced when it's rebuilt */
+    private volatile Selector selector;
+
+    /**
+     * held while the interest ops of a key are modified, and while the keys are moved to a new selector : a change done
+     * by another thread during a rebuild is neither lost nor done on the replaced selector
+     */
+    private final Object registrationLock = new Object();
+
+    /**
+     * The array backed selected keys of the selector, <code>null</code> if the selector could not be modified (only
+     * modified by the worker)
+     */
+    private SelectedSelectionKeySet selectedKeys;
+
+    /** The number of consecutive premature selects after which the selector is rebuilt */
+    private volatile int selectorRebuildThreshold = Integer.getInteger(SELECTOR_REBUILD_THRESHOLD,
+            DEFAULT_SELECTOR_REBUILD_THRESHOLD);
+
+    /** The number of times the selector has been rebuilt */
+    private final AtomicInteger selectorRebuildCount = new AtomicInteger();
 
     /** Read buffer for all the incoming bytes (default to 64Kb) */
     private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
@@ -60,6 +104,73 @@ public class NioSelectorLoop implements SelectorLoop {
      */
     private final Queue<Runnable> runnableQueue = new ConcurrentLinkedQueue<>();
 
+    /** The thread running this loop */
+    private final SelectorWorker worker;
+
+    /** The time of the current iteration, updated by the worker thread */
+    private final CachedClock clock;
+
+    /** The tasks scheduled on this loop, only accessed by the worker thread */
+    private final LoopTimerWheel timers = new LoopTimerWheel(this);
+
+    /** Tells if the worker is processing the selected I/O events (only accessed by the worker) */
+    private boolean processingEvents = false;
+
+    /** The sessions to flush once the selected I/O events are processed (only accessed by the worker) */
+    private final List<AbstractNioSession> flushList = new ArrayList<>();
+
+    /** Tells if the selector has been woken up since the last select returned */
+    private final AtomicBoolean wakenUp = new AtomicBoolean(false);
+
+    /** The number of wakeup() calls done on the selector */
+    private final AtomicLong wakeupCount = new AtomicLong();
+
+    /** The number of wakeup requests which didn't need a wakeup() call on the selector */
+    private final AtomicLong savedWakeupCount = new AtomicLong();
+
+    /** The default percentage of the loop time given to the I/O events processing, versus the tasks */
+    public static final int DEFAULT_IO_RATIO = 50;
+
+    /** The default maximum number of tasks run per loop iteration */
+    public static final int DEFAULT_MAX_TASKS_PER_ITERATION = 1024;
+
+    /** The percentage of the loop time given to the I/O events processing, versus the tasks */
+    private volatile int ioRatio = DEFAULT_IO_RATIO;
+
+    /** The maximum number of tasks run per loop iteration */
+    private volatile int maxTasksPerIteration = DEFAULT_MAX_TASKS_PER_ITERATION;
+
+    /** The number of tasks waiting to be run by the loop */
+    private final AtomicInteger pendingTaskCount = new AtomicInteger();
+
+    /** The number of tasks run by the loop, excluding the ones run directly by the loop thread */
+    private final AtomicLong executedTaskCount = new AtomicLong();
+
+    /** The time spent running the tasks, in ns */
+    private final AtomicLong taskRunTime = new AtomicLong();
+
+    /** The minimum delay between two samples of the byte rate, in ms */
+    private static final long BYTE_RATE_SAMPLE_INTERVAL = 100;
+
+    /** The time in ms a timed select can return before its timeout without being considered as premature */
+    private static final long SELECT_TIMEOUT_TOLERANCE = 1;
+
+    /** The time constant of the byte rate moving average, in ms */
+    private static final double BYTE_RATE_TIME_CONSTANT = 1000;
+
+    /** The number of sessions handled by this loop */
+    private final AtomicInteger sessionCount = new AtomicInteger();
+
+    /** The number of bytes read and written by the sessions of this loop */
+    private final AtomicLong processedBytes = new AtomicLong();
+
+    // the byte rate moving average state, guarded by this
+    private long lastSampleTime = System.currentTimeMillis();
+
+    private long lastSampleBytes = 0;
+
+    private double byteRate = 0;
+
     /**
      * Creates an instance of the SelectorLoop.
      * 
@@ -77,13 +188,25 @@ public class NioSelectorLoop implements SelectorLoop {
      * @param index
      */
     public NioSelectorLoop(final String prefix, final int index) {
+        this(prefix, index, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates an instance of the SelectorLoop, with a given source of time.
+     * 
+     * @param prefix
+     * @param index
+     * @param clock the clock read by the loop once per select
+     */
+    public NioSelectorLoop(final String prefix, final int index, final Clock clock) {
+        this.clock = new CachedClock(clock);
         String workerName = "SelectorWorker " + prefix;
 
         if (index >= 0) {
             workerName += "-" + index;
         }
 
-        SelectorWorker worker = new SelectorWorker(workerName);
+        worker = new SelectorWorker(workerName);
 
         try {
             if (IS_DEBUG) {
@@ -97,6 +220,8 @@ public class NioSelectorLoop implements SelectorLoop {
                     ioe);
         }
 
+        selectedKeys = optimizeSelectedKeys(selector);
+
         if (IS_DEBUG) {
             LOG.debug("starting worker thread");
         }
@@ -105,6 +230,60 @@ public class NioSelectorLoop implements SelectorLoop {
 
     }
 
+    /**
+     * Replace the selected keys set of the JDK selector implementation by an array backed set, so the selection and
+     * the processing of the keys don't allocate anything. The selector fields are only reachable by reflection : if
+     * it's forbidden (for instance when the <code>sun.nio.ch</code> package is not opened to MINA on a recent JDK), we
+     * keep the default set.
+     * 
+     * @param selector the selector to modify
+     * @return the set now used by the selector, or <code>null</code> if it was not modified
+     */
+    private static SelectedSelectionKeySet optimizeSelectedKeys(Selector selector) {
+        if (Boolean.getBoolean(DISABLE_KEY_SET_OPTIMIZATION)) {
+            return null;
+        }
+
+        try {
+            Class<?> selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false,
+                    ClassLoader.getSystemClassLoader());
+
+            if (!selectorImplClass.isInstance(selector)) {
+                return null;
+            }
+
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+
+            SelectedSelectionKeySet keySet = new SelectedSelectionKeySet();
+            selectedKeysField.set(selector, keySet);
+            publicSelectedKeysField.set(selector, keySet);
+
+            if (IS_DEBUG) {
+                LOG.debug("using an array backed selected keys set for {}", selector);
+            }
+
+            return keySet;
+        } catch (Exception | LinkageError e) {
+            if (IS_DEBUG) {
+                LOG.debug("impossible to replace the selected keys set, using the default one", e);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Tells if the selected keys are stored in an array backed set, or in the default set of the selector
+     * 
+     * @return <code>true</code> if the selected keys set is array backed
+     */
+    public boolean isSelectedKeySetOptimized() {
+        return selectedKeys != null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -134,10 +313,10 @@ public class NioSelectorLoop implements SelectorLoop {
             ops |= SelectionKey.OP_WRITE;
         }
 
-        // TODO : if it's the same selector/worker, we don't need to do that we could directly enqueue
         registrationQueue.add(new Registration(ops, channel, listener, callback));
 
-        // Now, wakeup the selector in order to let it update the selectionKey status
+        // Now, wakeup the selector in order to let it update the selectionKey status. If we are in the worker, the
+        // registration will be processed before the next select.
         wakeup();
     }
 
@@ -146,8 +325,108 @@ public class NioSelectorLoop implements SelectorLoop {
      */
     @Override
     public void runInLoop(Runnable task) {
-        runnableQueue.add(task);
-        wakeup();
+        if (Thread.currentThread() == worker) {
+            // we are already in the loop
+            task.run();
+        } else {
+            pendingTaskCount.incrementAndGet();
+            runnableQueue.add(task);
+            wakeup();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+        return addTimer(timers.newTimer(task, unit.toNanos(delay), 0L));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period: " + period + " (expected: 1+)");
+        }
+
+        return addTimer(timers.newTimer(task, unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    /**
+     * @return the number of tasks scheduled on this loop, to be called by the loop thread
+     */
+    int getScheduledTaskCount() {
+        return timers.size();
+    }
+
+    private ScheduledTask addTimer(final LoopTimerWheel.Timer timer) {
+        if (Thread.currentThread() == worker) {
+            timers.add(timer);
+        } else {
+            // the wakeup lets the worker compute its select timeout with the new timer
+            runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    timers.add(timer);
+                }
+            });
+        }
+
+        return timer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLoopThread() {
+        return Thread.currentThread() == worker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean flushLater(AbstractNioSession session) {
+        if (!processingEvents || (Thread.currentThread() != worker)) {
+            return false;
+        }
+
+        if (!session.isFlushScheduled()) {
+            session.setFlushScheduled(true);
+            flushList.add(session);
+        }
+
+        return true;
+    }
+
+    /**
+     * Flush the sessions written while the selected I/O events were processed
+     */
+    private void flushScheduledSessions() {
+        for (int i = 0; i < flushList.size(); i++) {
+            AbstractNioSession session = flushList.get(i);
+            session.setFlushScheduled(false);
+
+            try {
+                session.flushNow(this);
+            } catch (final Exception e) {
+                LOG.error("Unexpected exception while flushing session " + session, e);
+            }
+        }
+
+        flushList.clear();
     }
 
     /**
@@ -161,13 +440,6 @@ public class NioSelectorLoop implements SelectorLoop {
                                     listener, accept, read, write, channel });
         }
 
-        final SelectionKey key = channel.keyFor(selector);
-
-        if (key == null) {
-            LOG.error("Trying to modify the registration of a not registered channel");
-            return;
-        }
-
         int ops = 0;
 
         if (accept) {
@@ -182,9 +454,18 @@ public class NioSelectorLoop implements SelectorLoop {
             ops |= SelectionKey.OP_WRITE;
         }
 
-        key.interestOps(ops);
+        synchronized (registrationLock) {
+            final SelectionKey key = channel.keyFor(selector);
+
+            if (key == null) {
+                LOG.error("Trying to modify the registration of a not registered channel");
+                return;
+            }
+
+            key.interestOps(ops);
+        }
 
-        // we need to wakeup for the registration to be modified (TODO : not needed if we are in the worker thread)
+        // we need to wakeup for the registration to be modified, unless we are in the worker thread
         if (wakeup) {
             wakeup();
         }
@@ -199,26 +480,279 @@ public class NioSelectorLoop implements SelectorLoop {
             LOG.debug("unregistering : {}", listener);
         }
 
-        final SelectionKey key = channel.keyFor(selector);
+        synchronized (registrationLock) {
+            final SelectionKey key = channel.keyFor(selector);
 
-        if (key == null) {
-            LOG.error("Trying to modify the registration of a not registered channel");
-            return;
+            if (key == null) {
+                LOG.error("Trying to modify the registration of a not registered channel");
+                return;
+            }
+            key.cancel();
+            key.attach(null);
         }
-        key.cancel();
-        key.attach(null);
 
         if (IS_DEBUG) {
             LOG.debug("unregistering : {} done !", listener);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementSessionCount() {
+        sessionCount.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decrementSessionCount() {
+        sessionCount.decrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementProcessedBytes(int bytesCount) {
+        processedBytes.addAndGet(bytesCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getProcessedBytes() {
+        return processedBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The average is updated when this method is called, at most every 100 ms.
+     */
+    @Override
+    public synchronized double getRecentByteRate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastSampleTime;
+
+        if (elapsed >= BYTE_RATE_SAMPLE_INTERVAL) {
+            long bytes = processedBytes.get();
+            double rate = (bytes - lastSampleBytes) * 1000d / elapsed;
+
+            // the older samples weight decreases exponentially with the elapsed time
+            double alpha = 1 - Math.exp(-elapsed / BYTE_RATE_TIME_CONSTANT);
+            byteRate += alpha * (rate - byteRate);
+
+            lastSampleTime = now;
+            lastSampleBytes = bytes;
+        }
+
+        return byteRate;
+    }
+
+    /**
+     * @return the percentage of the loop time given to the I/O events processing, versus the tasks
+     */
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * Set the percentage of the loop time given to the I/O events processing. After having processed the I/O events
+     * of a select, the loop runs the pending tasks for at most <code>ioTime * (100 - ioRatio) / ioRatio</code>. With a
+     * ratio of 100, the tasks run time is not limited, only their number is.
+     * 
+     * @param ioRatio the ratio, between 1 and 100
+     */
+    public void setIoRatio(int ioRatio) {
+        if ((ioRatio <= 0) || (ioRatio > 100)) {
+            throw new IllegalArgumentException("ioRatio must be between 1 and 100 : " + ioRatio);
+        }
+
+        this.ioRatio = ioRatio;
+    }
+
+    /**
+     * @return the maximum number of tasks run per loop iteration
+     */
+    public int getMaxTasksPerIteration() {
+        return maxTasksPerIteration;
+    }
+
+    /**
+     * Set the maximum number of tasks run per loop iteration. The remaining tasks are run after the I/O events of the
+     * next select, which doesn't block.
+     * 
+     * @param maxTasksPerIteration the maximum number of tasks, at least 1
+     */
+    public void setMaxTasksPerIteration(int maxTasksPerIteration) {
+        if (maxTasksPerIteration <= 0) {
+            throw new IllegalArgumentException("maxTasksPerIteration must be positive : " + maxTasksPerIteration);
+        }
+
+        this.maxTasksPerIteration = maxTasksPerIteration;
+    }
+
+    /**
+     * @return the number of tasks waiting to be run by the loop
+     */
+    public int getPendingTaskCount() {
+        return pendingTaskCount.get();
+    }
+
+    /**
+     * @return the number of tasks run by the loop, the tasks run directly because {@link #runInLoop(Runnable)} was
+     *         called by the loop thread are not counted
+     */
+    public long getExecutedTaskCount() {
+        return executedTaskCount.get();
+    }
+
+    /**
+     * @return the total time spent running the tasks counted by {@link #getExecutedTaskCount()}, in ns
+     */
+    public long getTaskRunTime() {
+        return taskRunTime.get();
+    }
+
+    /**
+     * @return the number of consecutive premature selects after which the selector is rebuilt, 0 if it's never rebuilt
+     */
+    public int getSelectorRebuildThreshold() {
+        return selectorRebuildThreshold;
+    }
+
+    /**
+     * Set the number of consecutive premature selects after which the selector is rebuilt. A select is premature when
+     * it returns without any selected key while nothing woke it up, which is the symptom of the epoll bug making the
+     * loop spin.
+     * 
+     * @param selectorRebuildThreshold the number of premature selects, 0 for never rebuilding the selector
+     */
+    public void setSelectorRebuildThreshold(int selectorRebuildThreshold) {
+        if (selectorRebuildThreshold < 0) {
+            throw new IllegalArgumentException("selectorRebuildThreshold must not be negative : "
+                    + selectorRebuildThreshold);
+        }
+
+        this.selectorRebuildThreshold = selectorRebuildThreshold;
+    }
+
+    /**
+     * @return the number of times the selector has been rebuilt
+     */
+    public int getSelectorRebuildCount() {
+        return selectorRebuildCount.get();
+    }
+
+    /**
+     * Replace the selector by a new one, moving all the registered channels with their interest ops and their
+     * attachment. Must be called by the worker.
+     */
+    void rebuildSelector() {
+        final Selector oldSelector = selector;
+        final Selector newSelector;
+
+        try {
+            newSelector = Selector.open();
+        } catch (final IOException ioe) {
+            LOG.error("Impossible to open a new NIO selector for replacing the current one", ioe);
+            return;
+        }
+
+        SelectedSelectionKeySet newSelectedKeys = optimizeSelectedKeys(newSelector);
+        List<AbstractNioSession> failedSessions = new ArrayList<>();
+        int channelCount = 0;
+
+        // the interest ops are copied and the selector swapped atomically with respect to the modifications done by
+        // the other threads
+        synchronized (registrationLock) {
+            for (SelectionKey key : oldSelector.keys()) {
+                final Object attachment = key.attachment();
+
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    int interestOps = key.interestOps();
+                    key.cancel();
+                    SelectionKey newKey = key.channel().register(newSelector, interestOps, attachment);
+
+                    if (attachment instanceof NioTcpSession) {
+                        ((NioTcpSession) attachment).setSelectionKey(newKey);
+                    }
+
+                    channelCount++;
+                } catch (final Exception e) {
+                    LOG.error("Impossible to register the channel " + key.channel() + " on the new selector", e);
+
+                    if (attachment instanceof AbstractNioSession) {
+                        failedSessions.add((AbstractNioSession) attachment);
+                    }
+                }
+            }
+
+            selector = newSelector;
+            selectedKeys = newSelectedKeys;
+        }
+
+        // a wakeup done on the replaced selector would be lost, and the following ones skipped until the next select
+        if (wakenUp.get()) {
+            newSelector.wakeup();
+        }
+
+        // closed out of the lock, as closing runs the handlers
+        for (AbstractNioSession session : failedSessions) {
+            session.close(true);
+        }
+
+        try {
+            oldSelector.close();
+        } catch (final IOException ioe) {
+            LOG.warn("Error while closing the replaced selector", ioe);
+        }
+
+        selectorRebuildCount.incrementAndGet();
+        LOG.warn("The selector of {} has been rebuilt, {} channels moved to the new selector", worker.getName(),
+                channelCount);
+    }
+
+    /**
+     * @return the number of wakeup() calls done on the selector
+     */
+    public long getWakeupCount() {
+        return wakeupCount.get();
+    }
+
+    /**
+     * @return the number of wakeup requests which didn't need a wakeup() call on the selector, because they were done
+     *         by the loop thread or because a wakeup was already pending
+     */
+    public long getSavedWakeupCount() {
+        return savedWakeupCount.get();
+    }
+
     /**
      * The worker processing incoming session creation, session destruction requests, session write and reads. It will
      * also bind new servers.
      */
     private class SelectorWorker extends Thread {
 
+        /** The number of consecutive blocking selects which returned before their timeout without any reason */
+        private int prematureSelectCount = 0;
+
         public SelectorWorker(String name) {
             super(name);
             setDaemon(true);
@@ -233,32 +767,56 @@ public class NioSelectorLoop implements SelectorLoop {
                         LOG.debug("selecting...");
                     }
 
-                    final int readyCount = selector.select();
+                    // don't block if some registrations or tasks are pending : added by the worker itself, which
+                    // didn't wakeup the selector, or left by the tasks budget of the previous iteration
+                    final boolean blocking = registrationQueue.isEmpty() && runnableQueue.isEmpty();
+                    // wait until the next scheduled task at most
+                    final long timeout = blocking ? timers.getTimeoutInMs() : 0L;
+                    final int readyCount;
+                    final long selectStart = System.nanoTime();
+
+                    if (timeout < 0) {
+                        readyCount = selector.select();
+                    } else if (timeout > 0) {
+                        readyCount = selector.select(timeout);
+                    } else {
+                        readyCount = selector.selectNow();
+                    }
+
+                    // from now on, the registrations and the tasks added by the other threads need a new wakeup
+                    boolean wokenUp = wakenUp.getAndSet(false);
+
+                    // the time of all the events and the tasks of this iteration
+                    clock.update();
+
+                    // a blocking select returning without events nor wakeup is premature, unless its timeout has
+                    // elapsed (a timed select may return slightly early)
+                    if ((timeout != 0) && (readyCount == 0) && !wokenUp
+                            && ((timeout < 0) || (System.nanoTime() - selectStart
+                                    < (timeout - SELECT_TIMEOUT_TOLERANCE) * 1000000L))) {
+                        checkPrematureSelect();
+                    } else {
+                        prematureSelectCount = 0;
+                    }
 
                     if (IS_DEBUG) {
                         LOG.debug("... done selecting : {} events", readyCount);
                     }
 
+                    long ioTime = 0;
+
                     if (readyCount > 0) {
-                        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-
-                        while (it.hasNext()) {
-                            final SelectionKey key = it.next();
-                            final SelectorListener listener = (SelectorListener) key.attachment();
-                            int ops = key.readyOps();
-                            boolean isAcceptable = (ops & SelectionKey.OP_ACCEPT) == SelectionKey.OP_ACCEPT;
-                            boolean isConnectable = (ops & SelectionKey.OP_CONNECT) == SelectionKey.OP_CONNECT;
-                            boolean isReadable = (ops & SelectionKey.OP_READ) == SelectionKey.OP_READ;
-                            boolean isWritable = (ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE;
-                            listener.ready(isAcceptable, isConnectable, isReadable, isReadable ? readBuffer : null,
-                                    isWritable);
-                            // if you don't remove the event of the set, the selector will present you this event again
-                            // and again
-                            if (IS_DEBUG) {
-                                LOG.debug("remove");
-                            }
+                        processingEvents = true;
+                        long ioStart = System.nanoTime();
+
+                        try {
+                            processSelectedKeys();
+                        } finally {
+                            processingEvents = false;
 
-                            it.remove();
+                            // write in one shot what the handlers wrote while processing the events
+                            flushScheduledSessions();
+                            ioTime = System.nanoTime() - ioStart;
                         }
                     }
 
@@ -279,19 +837,141 @@ public class NioSelectorLoop implements SelectorLoop {
                     }
 
                     // tasks
-                    while (!runnableQueue.isEmpty()) {
-                        runnableQueue.poll().run();
+                    if (!runnableQueue.isEmpty()) {
+                        runTasks(ioTime);
+                    }
+
+                    // scheduled tasks
+                    if (timers.size() > 0) {
+                        timers.expire(System.nanoTime());
                     }
                 } catch (final Exception e) {
                     LOG.error("Unexpected exception : ", e);
                 }
             }
         }
+
+        /**
+         * Called when a blocking select returned before its timeout without selected keys nor wakeup. Rebuild the
+         * selector if it happens too many times in a row.
+         */
+        private void checkPrematureSelect() {
+            if (Thread.interrupted()) {
+                // select() returns immediately while the thread is interrupted, it's not a selector issue
+                if (IS_DEBUG) {
+                    LOG.debug("selector worker interrupted, the interrupt status is cleared");
+                }
+
+                prematureSelectCount = 0;
+                return;
+            }
+
+            prematureSelectCount++;
+            int threshold = selectorRebuildThreshold;
+
+            if ((threshold > 0) && (prematureSelectCount >= threshold)) {
+                LOG.warn("The selector of {} returned prematurely {} times in a row, rebuilding it", getName(),
+                        prematureSelectCount);
+                prematureSelectCount = 0;
+                rebuildSelector();
+            }
+        }
+
+        /**
+         * Run the pending tasks, within the time budget given by the I/O time and the ratio, and up to the maximum
+         * number of tasks per iteration
+         */
+        private void runTasks(final long ioTime) {
+            final int ratio = ioRatio;
+            final int maxTasks = maxTasksPerIteration;
+            final long start = System.nanoTime();
+            long deadline = 0;
+
+            if ((ratio < 100) && (ioTime > 0)) {
+                deadline = start + ioTime * (100 - ratio) / ratio;
+            }
+
+            int count = 0;
+            Runnable task;
+
+            while ((count < maxTasks) && ((task = runnableQueue.poll()) != null)) {
+                pendingTaskCount.decrementAndGet();
+                count++;
+
+                try {
+                    task.run();
+                } catch (final Exception e) {
+                    LOG.error("Unexpected exception while running a task : ", e);
+                }
+
+                // System.nanoTime() is not free, check the deadline every 64 tasks
+                if ((deadline != 0) && ((count & 0x3F) == 0) && (System.nanoTime() >= deadline)) {
+                    break;
+                }
+            }
+
+            executedTaskCount.addAndGet(count);
+            taskRunTime.addAndGet(System.nanoTime() - start);
+        }
+
+        /**
+         * Process the I/O events of the selected keys
+         */
+        private void processSelectedKeys() {
+            if (selectedKeys != null) {
+                try {
+                    for (int i = 0; i < selectedKeys.size(); i++) {
+                        processKey(selectedKeys.get(i));
+                    }
+                } finally {
+                    selectedKeys.reset();
+                }
+            } else {
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    // if you don't remove the event of the set, the selector will present you this event again
+                    // and again
+                    it.remove();
+                    processKey(key);
+                }
+            }
+        }
+
+        /**
+         * Process the I/O events of a selected key
+         */
+        private void processKey(final SelectionKey key) {
+            final SelectorListener listener = (SelectorListener) key.attachment();
+
+            // the key may have been cancelled while processing a previous event
+            if ((listener == null) || !key.isValid()) {
+                return;
+            }
+
+            int ops = key.readyOps();
+            boolean isAcceptable = (ops & SelectionKey.OP_ACCEPT) == SelectionKey.OP_ACCEPT;
+            boolean isConnectable = (ops & SelectionKey.OP_CONNECT) == SelectionKey.OP_CONNECT;
+            boolean isReadable = (ops & SelectionKey.OP_READ) == SelectionKey.OP_READ;
+            boolean isWritable = (ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE;
+            listener.ready(isAcceptable, isConnectable, isReadable, isReadable ? readBuffer : null, isWritable);
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The selector is not woken up if the caller is the loop thread, or if a wakeup is already pending.
+     */
     @Override
     public void wakeup() {
-        selector.wakeup();
+        if ((Thread.currentThread() != worker) && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+            wakeupCount.incrementAndGet();
+        } else {
+            savedWakeupCount.incrementAndGet();
+        }
     }
 
     private static class Registration {
@@ -32,7 +32,7 @@ import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
 import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.tcp.AbstractTcpClient;
 import org.apache.mina.transport.tcp.TcpSessionConfig;
@@ -84,6 +84,9 @@ public class NioTcpClient extends AbstractTcpClient {
         super(handlerExecutor);
         connectSelectorLoop = selectorLoopPool.getSelectorLoop();
         readWriteSelectorPool = selectorLoopPool;
+        // the idle sessions are checked by the connect loop, no need for another thread
+        idleChecker = new TimingWheelIdleChecker(connectSelectorLoop);
+        idleChecker.start();
     }
 
     /**
@@ -100,7 +103,9 @@ public class NioTcpClient extends AbstractTcpClient {
         super(handlerExecutor);
         this.connectSelectorLoop = connectSelectorLoop;
         this.readWriteSelectorPool = readWriteSelectorLoop;
-        idleChecker = new IndexedIdleChecker();
+        // the idle sessions are checked by the connect loop, no need for another thread
+        idleChecker = new TimingWheelIdleChecker(connectSelectorLoop);
+        idleChecker.start();
     }
 
     /**
@@ -130,10 +135,13 @@ public class NioTcpClient extends AbstractTcpClient {
             throw new MinaRuntimeException("can't configure socket as non-blocking", e);
         }
 
-        // apply idle configuration
+        // the connected session will be handled by one of the read/write selector loops,
+        // the connect selector loop only waits for the connection completion.
         // Has to be final, as it's used in a inner class...
-        final NioTcpSession session = new NioTcpSession(this, clientSocket, readWriteSelectorPool.getSelectorLoop(),
-                idleChecker);
+        final SelectorLoop readWriteSelectorLoop = readWriteSelectorPool.getSelectorLoop();
+        final NioTcpSession session = new NioTcpSession(this, clientSocket, readWriteSelectorLoop, idleChecker);
+
+        // apply idle configuration
         TcpSessionConfig config = getSessionConfig();
 
         session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
@@ -205,6 +213,54 @@ public class NioTcpClient extends AbstractTcpClient {
             session.getConfig().setSoLinger(soLinger);
         }
 
+        Integer gatheringWriteMaxBuffers = config.getGatheringWriteMaxBuffers();
+
+        if (gatheringWriteMaxBuffers != null) {
+            session.getConfig().setGatheringWriteMaxBuffers(gatheringWriteMaxBuffers);
+        }
+
+        Integer gatheringWriteMaxBytes = config.getGatheringWriteMaxBytes();
+
+        if (gatheringWriteMaxBytes != null) {
+            session.getConfig().setGatheringWriteMaxBytes(gatheringWriteMaxBytes);
+        }
+
+        Boolean batchedFlush = config.isBatchedFlush();
+
+        if (batchedFlush != null) {
+            session.getConfig().setBatchedFlush(batchedFlush);
+        }
+
+        Boolean loopConfinedWrite = config.isLoopConfinedWrite();
+
+        if (loopConfinedWrite != null) {
+            session.getConfig().setLoopConfinedWrite(loopConfinedWrite);
+        }
+
+        Boolean adaptiveReadSize = config.isAdaptiveReadSize();
+
+        if (adaptiveReadSize != null) {
+            session.getConfig().setAdaptiveReadSize(adaptiveReadSize);
+        }
+
+        Integer maxReadBytesPerEvent = config.getMaxReadBytesPerEvent();
+
+        if (maxReadBytesPerEvent != null) {
+            session.getConfig().setMaxReadBytesPerEvent(maxReadBytesPerEvent);
+        }
+
+        Integer writeBufferHighWaterMark = config.getWriteBufferHighWaterMark();
+
+        if (writeBufferHighWaterMark != null) {
+            session.getConfig().setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+        }
+
+        Integer writeBufferLowWaterMark = config.getWriteBufferLowWaterMark();
+
+        if (writeBufferLowWaterMark != null) {
+            session.getConfig().setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+        }
+
         // Set the secured flag if the service is to be used over SSL/TLS
         if (config.isSecured()) {
             session.initSecure(config.getSslContext());
@@ -226,7 +282,7 @@ public class NioTcpClient extends AbstractTcpClient {
 
         if (!connected) {
             // async connection, let's the connection complete in background, the selector loop will detect when the
-            // connection is successful
+            // connection is successful, and the session will then be registered on its read/write selector loop
             connectSelectorLoop.register(false, true, false, false, session, clientSocket, new RegistrationCallback() {
 
                 @Override
@@ -236,16 +292,16 @@ public class NioTcpClient extends AbstractTcpClient {
             });
         } else {
             // already connected (probably a loopback connection, or a blocking socket)
-            // register for read
-            connectSelectorLoop.register(false, false, true, false, session, clientSocket, new RegistrationCallback() {
-
-                @Override
-                public void done(SelectionKey selectionKey) {
-                    session.setSelectionKey(selectionKey);
-                }
-            });
-
-            session.setConnected();
+            // register for read on the session selector loop
+            readWriteSelectorLoop.register(false, false, true, false, session, clientSocket,
+                    new RegistrationCallback() {
+
+                        @Override
+                        public void done(SelectionKey selectionKey) {
+                            session.setSelectionKey(selectionKey);
+                            session.setConnected();
+                        }
+                    });
         }
 
         return connectFuture;
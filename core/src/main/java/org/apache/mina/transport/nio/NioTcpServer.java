@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.mina.api.IdleStatus;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
 import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.tcp.AbstractTcpServer;
 import org.apache.mina.transport.tcp.TcpSessionConfig;
 import org.apache.mina.util.Assert;
@@ -63,6 +64,46 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
 
     private IdleChecker idleChecker;
 
+    /** The default maximum number of connections accepted per accept event */
+    public static final int DEFAULT_MAX_ACCEPTS_PER_EVENT = 64;
+
+    /** The maximum number of connections accepted per accept event */
+    private volatile int maxAcceptsPerEvent = DEFAULT_MAX_ACCEPTS_PER_EVENT;
+
+    /** The default number of sessions a loop can have above the least loaded loop before it stops accepting */
+    public static final int DEFAULT_MULTI_ACCEPTOR_MAX_IMBALANCE = 16;
+
+    /** Tells if the server channel is registered on every read/write loop, instead of the accept loop */
+    private boolean multiAcceptor = false;
+
+    /** The number of sessions a loop can have above the least loaded loop before it stops accepting */
+    private volatile int multiAcceptorMaxImbalance = DEFAULT_MULTI_ACCEPTOR_MAX_IMBALANCE;
+
+    /** The acceptors of the read/write loops, in multi acceptor mode */
+    private volatile LoopAcceptor[] loopAcceptors = null;
+
+    /** The minimum delay between two samples of the accept rate, in ms */
+    private static final long ACCEPT_RATE_SAMPLE_INTERVAL = 100;
+
+    /** The time constant of the accept rate moving average, in ms */
+    private static final double ACCEPT_RATE_TIME_CONSTANT = 1000;
+
+    /** The number of accepted connections */
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    /** The total time between the accept of the connections and their setup on their selector loop, in ns */
+    private final AtomicLong totalAcceptLatency = new AtomicLong();
+
+    /** The longest time between the accept of a connection and its setup on its selector loop, in ns */
+    private final AtomicLong maxAcceptLatency = new AtomicLong();
+
+    // the accept rate moving average state, guarded by this
+    private long lastAcceptSampleTime = System.currentTimeMillis();
+
+    private long lastAcceptSampleCount = 0;
+
+    private double acceptRate = 0;
+
     /**
      * Create a TCP server with new selector pool of default size and a {@link IoHandlerExecutor} of default type (
      * {@link OrderedHandlerExecutor})
@@ -184,17 +225,29 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         try {
             serverChannel = ServerSocketChannel.open();
             serverChannel.socket().setReuseAddress(isReuseAddress());
-            serverChannel.socket().bind(address);
+            serverChannel.socket().bind(address, getBacklog());
             serverChannel.configureBlocking(false);
         } catch (IOException e) {
             throw new MinaRuntimeException("can't bind address" + address, e);
         }
 
-        acceptSelectorLoop.register(true, false, false, false, this, serverChannel, null);
-
-        idleChecker = new IndexedIdleChecker();
+        // the idle sessions are checked by the accept loop, no need for another thread
+        idleChecker = new TimingWheelIdleChecker(acceptSelectorLoop);
         idleChecker.start();
 
+        if (multiAcceptor) {
+            // each read/write loop accepts its own sessions
+            SelectorLoop[] loops = readWriteSelectorPool.getSelectorLoops();
+            loopAcceptors = new LoopAcceptor[loops.length];
+
+            for (int i = 0; i < loops.length; i++) {
+                loopAcceptors[i] = new LoopAcceptor(loops[i]);
+                loops[i].register(true, false, false, false, loopAcceptors[i], serverChannel, null);
+            }
+        } else {
+            acceptSelectorLoop.register(true, false, false, false, this, serverChannel, null);
+        }
+
         // it's the first address bound, let's fire the event
         fireServiceActivated();
     }
@@ -223,7 +276,15 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
             throw new MinaRuntimeException("can't unbind server", e);
         }
 
-        acceptSelectorLoop.unregister(this, serverChannel);
+        if (loopAcceptors != null) {
+            for (LoopAcceptor loopAcceptor : loopAcceptors) {
+                loopAcceptor.loop.unregister(loopAcceptor, serverChannel);
+            }
+
+            loopAcceptors = null;
+        } else {
+            acceptSelectorLoop.unregister(this, serverChannel);
+        }
 
         this.address = null;
         this.fireServiceInactivated();
@@ -246,6 +307,122 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
         this.acceptKey = acceptKey;
     }
 
+    /**
+     * @return the maximum number of connections accepted per accept event
+     */
+    public int getMaxAcceptsPerEvent() {
+        return maxAcceptsPerEvent;
+    }
+
+    /**
+     * Set the maximum number of pending connections accepted each time the accept selector loop reports the server
+     * socket acceptable. Accepting many connections at once empties the backlog faster during connection storms.
+     * 
+     * @param maxAcceptsPerEvent the maximum number of connections, at least 1
+     */
+    public void setMaxAcceptsPerEvent(int maxAcceptsPerEvent) {
+        if (maxAcceptsPerEvent <= 0) {
+            throw new IllegalArgumentException("maxAcceptsPerEvent must be positive : " + maxAcceptsPerEvent);
+        }
+
+        this.maxAcceptsPerEvent = maxAcceptsPerEvent;
+    }
+
+    /**
+     * @return <code>true</code> if the server channel is registered on every read/write selector loop
+     */
+    public boolean isMultiAcceptor() {
+        return multiAcceptor;
+    }
+
+    /**
+     * Set the multi acceptor mode, before binding the server. In this mode, the server channel is registered on every
+     * selector loop of the read/write pool, instead of the accept selector loop, and each loop handles the sessions it
+     * accepts : there is no hand-off between an accept loop and the session loop. It suits the workloads opening many
+     * short lived connections.
+     * <p>
+     * As all the loops are notified of the pending connections, a loop stops accepting when it handles more than
+     * {@link #getMultiAcceptorMaxImbalance()} sessions above the least loaded loop, until the other loops have caught up.
+     * 
+     * @param multiAcceptor <code>true</code> to accept the connections on every read/write loop
+     */
+    public synchronized void setMultiAcceptor(boolean multiAcceptor) {
+        if (address != null) {
+            throw new IllegalStateException("the acceptor mode can't be changed while the server is bound");
+        }
+
+        this.multiAcceptor = multiAcceptor;
+    }
+
+    /**
+     * @return the number of sessions a loop can have above the least loaded loop before it stops accepting, in multi
+     *         acceptor mode
+     */
+    public int getMultiAcceptorMaxImbalance() {
+        return multiAcceptorMaxImbalance;
+    }
+
+    /**
+     * Set the number of sessions a loop can have above the least loaded loop before it stops accepting, in multi
+     * acceptor mode.
+     * 
+     * @param maxImbalance the number of sessions, at least 1
+     */
+    public void setMultiAcceptorMaxImbalance(int maxImbalance) {
+        if (maxImbalance <= 0) {
+            throw new IllegalArgumentException("maxImbalance must be positive : " + maxImbalance);
+        }
+
+        this.multiAcceptorMaxImbalance = maxImbalance;
+    }
+
+    /**
+     * @return the number of connections accepted by this server
+     */
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * Get an exponentially weighted moving average of the number of connections accepted per second. The average is
+     * updated when this method is called, at most every 100 ms.
+     * 
+     * @return the recent accept rate, in connections per second
+     */
+    public synchronized double getRecentAcceptRate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastAcceptSampleTime;
+
+        if (elapsed >= ACCEPT_RATE_SAMPLE_INTERVAL) {
+            long count = acceptedCount.get();
+            double rate = (count - lastAcceptSampleCount) * 1000d / elapsed;
+
+            // the older samples weight decreases exponentially with the elapsed time
+            double alpha = 1 - Math.exp(-elapsed / ACCEPT_RATE_TIME_CONSTANT);
+            acceptRate += alpha * (rate - acceptRate);
+
+            lastAcceptSampleTime = now;
+            lastAcceptSampleCount = count;
+        }
+
+        return acceptRate;
+    }
+
+    /**
+     * @return the total time between the accept of the connections and their setup by their selector loop, in ns.
+     *         Divide by {@link #getAcceptedCount()} for the average.
+     */
+    public long getTotalAcceptLatency() {
+        return totalAcceptLatency.get();
+    }
+
+    /**
+     * @return the longest time between the accept of a connection and its setup by its selector loop, in ns
+     */
+    public long getMaxAcceptLatency() {
+        return maxAcceptLatency.get();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -253,32 +430,92 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
     public void ready(final boolean accept, boolean connect, final boolean read, final ByteBuffer readBuffer,
             final boolean write) {
         if (accept) {
-            LOG.debug("acceptable new client");
+            acceptConnections(null);
+        }
+
+        if (read || write) {
+            throw new IllegalStateException("should not receive read or write events");
+        }
+    }
+
+    /**
+     * Accept the pending connections, up to the limit.
+     * 
+     * @param acceptingLoop the read/write loop accepting the connections in multi acceptor mode, <code>null</code> if
+     *        it's the accept loop
+     */
+    private void acceptConnections(SelectorLoop acceptingLoop) {
+        LOG.debug("acceptable new client");
+        ServerSocketChannel channel = getServerSocketChannel();
+        int maxAccepts = maxAcceptsPerEvent;
 
-            // accepted connection
+        for (int i = 0; i < maxAccepts; i++) {
             try {
+                SocketChannel clientSocket = channel.accept();
+
+                if (clientSocket == null) {
+                    // no more pending connection
+                    break;
+                }
+
                 LOG.debug("new client accepted");
-                createSession(getServerSocketChannel().accept());
+                acceptedCount.incrementAndGet();
 
+                if (acceptingLoop == null) {
+                    createSession(clientSocket, readWriteSelectorPool.getSelectorLoop());
+                } else {
+                    createSession(clientSocket, acceptingLoop);
+                }
             } catch (final IOException e) {
                 LOG.error("error while accepting new client", e);
+                break;
             }
         }
-
-        if (read || write) {
-            throw new IllegalStateException("should not receive read or write events");
-        }
     }
 
-    private synchronized void createSession(SocketChannel clientSocket) throws IOException {
+    /**
+     * Create the session of an accepted connection, and let its selector loop set it up. Only called by the accepting
+     * selector loop.
+     */
+    private void createSession(SocketChannel clientSocket, final SelectorLoop readWriteSelectorLoop) throws IOException {
         LOG.debug("create session");
-        SocketChannel socketChannel = clientSocket;
-        TcpSessionConfig config = getSessionConfig();
-        SelectorLoop readWriteSelectorLoop = readWriteSelectorPool.getSelectorLoop();
+        final long acceptTime = System.nanoTime();
+        final SocketChannel socketChannel = clientSocket;
         final NioTcpSession session = new NioTcpSession(this, socketChannel, readWriteSelectorLoop, idleChecker);
 
         socketChannel.configureBlocking(false);
 
+        // the accept loop is free to accept the next connections while the session is set up (in multi acceptor
+        // mode, the task is run right now)
+        readWriteSelectorLoop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                long latency = System.nanoTime() - acceptTime;
+                totalAcceptLatency.addAndGet(latency);
+                long max;
+
+                while ((latency > (max = maxAcceptLatency.get())) && !maxAcceptLatency.compareAndSet(max, latency)) {
+                    // retry
+                }
+
+                try {
+                    setupSession(session, readWriteSelectorLoop);
+                } catch (final RuntimeException e) {
+                    LOG.error("error while setting up the new session " + session, e);
+
+                    // the session has never been opened, so it can't be closed as usual
+                    session.abortSetup();
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply the service configuration to a new session, and register it. Called by the session selector loop.
+     */
+    private void setupSession(final NioTcpSession session, SelectorLoop readWriteSelectorLoop) {
+        TcpSessionConfig config = getSessionConfig();
+
         // apply idle configuration
         session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
         session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE,
@@ -333,13 +570,61 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
             session.getConfig().setSoLinger(soLinger);
         }
 
+        Integer gatheringWriteMaxBuffers = config.getGatheringWriteMaxBuffers();
+
+        if (gatheringWriteMaxBuffers != null) {
+            session.getConfig().setGatheringWriteMaxBuffers(gatheringWriteMaxBuffers);
+        }
+
+        Integer gatheringWriteMaxBytes = config.getGatheringWriteMaxBytes();
+
+        if (gatheringWriteMaxBytes != null) {
+            session.getConfig().setGatheringWriteMaxBytes(gatheringWriteMaxBytes);
+        }
+
+        Boolean batchedFlush = config.isBatchedFlush();
+
+        if (batchedFlush != null) {
+            session.getConfig().setBatchedFlush(batchedFlush);
+        }
+
+        Boolean loopConfinedWrite = config.isLoopConfinedWrite();
+
+        if (loopConfinedWrite != null) {
+            session.getConfig().setLoopConfinedWrite(loopConfinedWrite);
+        }
+
+        Boolean adaptiveReadSize = config.isAdaptiveReadSize();
+
+        if (adaptiveReadSize != null) {
+            session.getConfig().setAdaptiveReadSize(adaptiveReadSize);
+        }
+
+        Integer maxReadBytesPerEvent = config.getMaxReadBytesPerEvent();
+
+        if (maxReadBytesPerEvent != null) {
+            session.getConfig().setMaxReadBytesPerEvent(maxReadBytesPerEvent);
+        }
+
+        Integer writeBufferHighWaterMark = config.getWriteBufferHighWaterMark();
+
+        if (writeBufferHighWaterMark != null) {
+            session.getConfig().setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+        }
+
+        Integer writeBufferLowWaterMark = config.getWriteBufferLowWaterMark();
+
+        if (writeBufferLowWaterMark != null) {
+            session.getConfig().setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+        }
+
         // Set the secured flag if the service is to be used over SSL/TLS
         if (config.isSecured()) {
             session.initSecure(config.getSslContext());
         }
 
         // add the session to the queue for being added to the selector
-        readWriteSelectorLoop.register(false, false, true, false, session, socketChannel, new RegistrationCallback() {
+        readWriteSelectorLoop.register(false, false, true, false, session, session.getSocketChannel(), new RegistrationCallback() {
 
             @Override
             public void done(SelectionKey selectionKey) {
@@ -348,8 +633,87 @@ public class NioTcpServer extends AbstractTcpServer implements SelectorListener
             }
         });
 
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+        long now = session.getClock().currentTimeMillis();
+        idleChecker.sessionRead(session, now);
+        idleChecker.sessionWritten(session, now);
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Accepts the connections on a read/write selector loop, in multi acceptor mode. The acceptor stops listening to
+     * the accept events when its loop has too many sessions compared to the least loaded loop, and is resumed by the
+     * other acceptors.
+     */
+    private class LoopAcceptor implements SelectorListener {
+        private final SelectorLoop loop;
+
+        /** Tells if the loop doesn't listen to the accept events (only modified by the loop) */
+        private volatile boolean paused = false;
+
+        LoopAcceptor(SelectorLoop loop) {
+            this.loop = loop;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void ready(boolean accept, boolean connect, boolean read, ByteBuffer readBuffer, boolean write) {
+            if (!accept) {
+                throw new IllegalStateException("should only receive accept events");
+            }
+
+            LoopAcceptor[] acceptors = loopAcceptors;
+
+            if (acceptors == null) {
+                // unbound
+                return;
+            }
+
+            if (isOverloaded(acceptors)) {
+                // let the other loops accept the pending connections
+                paused = true;
+                loop.modifyRegistration(false, false, false, this, getServerSocketChannel(), false);
+            } else {
+                acceptConnections(loop);
+            }
+
+            // the paused loops may have caught up, and at least the least loaded loop must accept
+            for (final LoopAcceptor acceptor : acceptors) {
+                if (acceptor.paused && (acceptor != this)) {
+                    acceptor.loop.runInLoop(new Runnable() {
+                        @Override
+                        public void run() {
+                            acceptor.resume();
+                        }
+                    });
+                }
+            }
+        }
+
+        /**
+         * Listen again to the accept events, if the loop is not overloaded anymore. Called by the loop.
+         */
+        private void resume() {
+            LoopAcceptor[] acceptors = loopAcceptors;
+
+            if (paused && (acceptors != null) && !isOverloaded(acceptors)) {
+                paused = false;
+                loop.modifyRegistration(true, false, false, this, getServerSocketChannel(), false);
+            }
+        }
+
+        /**
+         * Tells if the loop has too many sessions compared to the least loaded loop
+         */
+        private boolean isOverloaded(LoopAcceptor[] acceptors) {
+            int minSessions = Integer.MAX_VALUE;
+
+            for (LoopAcceptor acceptor : acceptors) {
+                minSessions = Math.min(minSessions, acceptor.loop.getSessionCount());
+            }
+
+            return loop.getSessionCount() - minSessions > multiAcceptorMaxImbalance;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -47,7 +48,7 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
     private static final Logger LOG = LoggerFactory.getLogger(NioTcpSession.class);
 
     /** the selector loop in charge of generating read/write events for this session */
-    private final SelectorLoop selectorLoop;
+    private volatile SelectorLoop selectorLoop;
 
     /** the socket configuration */
     private final TcpSessionConfig configuration;
@@ -55,22 +56,121 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
     /** the future representing this session connection operation (client only) */
     private ConnectFuture connectFuture;
 
+    /** Tells if the session doesn't write its pending messages in its channel */
+    private volatile boolean writeSuspended = false;
+
+    /** Predicts the size of the next read */
+    private final AdaptiveReadSizePredictor readSizePredictor = new AdaptiveReadSizePredictor();
+
     /** The associated selectionKey */
     private SelectionKey selectionKey;
 
-    /** The Direct Buffer used to send data */
-    private ByteBuffer sendBuffer;
+    /** Tells if this session is still counted in the sessions of its selector loop, guarded by selectorLoopLock */
+    private boolean countedInSelectorLoop = true;
+
+    /**
+     * Tells if the session is moving to another selector loop : its channel is not registered, so the interest ops
+     * changes are left to the registration on the new loop. Guarded by the write queue lock.
+     */
+    private boolean migrating = false;
 
-    /** The size of the buffer configured in the socket to send data */
-    private int sendBufferSize;
+    /** The lock protecting the selector loop change */
+    private final Object selectorLoopLock = new Object();
+
+    /** The size of the direct buffers used for staging the messages written immediately */
+    private static final int STAGING_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The direct buffer used by each thread (typically a selector loop) for staging the heap messages written
+     * immediately. As the staged message is written before the thread does anything else, a single buffer can be
+     * shared by all the sessions.
+     */
+    private static final ThreadLocal<ByteBuffer> STAGING_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE);
+        }
+    };
 
     /* No qualifier */NioTcpSession(final IoService service, final SocketChannel channel,
             final SelectorLoop selectorLoop, final IdleChecker idleChecker) {
         super(service, channel, idleChecker);
         this.selectorLoop = selectorLoop;
         this.configuration = new ProxyTcpSessionConfig(channel.socket());
-        sendBufferSize = configuration.getSendBufferSize();
-        sendBuffer = ByteBuffer.allocateDirect(sendBufferSize);
+        selectorLoop.incrementSessionCount();
+    }
+
+    /**
+     * @return the selector loop currently handling this session
+     */
+    @Override
+    public SelectorLoop getSelectorLoop() {
+        return selectorLoop;
+    }
+
+    /**
+     * Move this session to another selector loop, without interrupting it. The move is done asynchronously by the
+     * current selector loop : its registration is cancelled, then the channel is registered on the new loop. The
+     * session itself (write queue, filters, attributes, SSL/TLS state) is left untouched, and as the current loop
+     * stops processing the session before the new one starts, the events order is kept.
+     * <p>
+     * The timers already scheduled through the {@link org.apache.mina.session.SessionScheduler} stay on the current
+     * loop, but their tasks are handed over to the new loop when they expire.
+     * 
+     * @param newSelectorLoop the selector loop which will handle this session
+     */
+    public void moveTo(final SelectorLoop newSelectorLoop) {
+        final SelectorLoop oldSelectorLoop = selectorLoop;
+
+        if (newSelectorLoop == oldSelectorLoop) {
+            return;
+        }
+
+        oldSelectorLoop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                if ((selectorLoop != oldSelectorLoop) || isCreated() || isClosing() || isClosed()) {
+                    // moved or closed in the meantime
+                    return;
+                }
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("moving session {} to selector loop {}", NioTcpSession.this, newSelectorLoop);
+                }
+
+                synchronized (getWriteQueue()) {
+                    migrating = true;
+                }
+
+                oldSelectorLoop.unregister(NioTcpSession.this, channel);
+
+                synchronized (selectorLoopLock) {
+                    if (countedInSelectorLoop) {
+                        oldSelectorLoop.decrementSessionCount();
+                        newSelectorLoop.incrementSessionCount();
+                    }
+
+                    selectorLoop = newSelectorLoop;
+                }
+
+                newSelectorLoop.register(false, false, !isReadSuspended(), false, NioTcpSession.this, channel,
+                        new RegistrationCallback() {
+
+                            @Override
+                            public void done(SelectionKey selectionKey) {
+                                setSelectionKey(selectionKey);
+
+                                synchronized (getWriteQueue()) {
+                                    migrating = false;
+                                }
+
+                                // apply the flushes and the suspensions requested during the move
+                                restoreWriteInterest();
+                                updateInterestOps(false);
+                            }
+                        });
+            }
+        });
     }
 
     void setConnectFuture(ConnectFuture connectFuture) {
@@ -126,8 +226,10 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void suspendRead() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+        if (addReadSuspension()) {
+            // a read event already selected will be ignored, no need to wakeup the selector
+            updateInterestOps(false);
+        }
     }
 
     /**
@@ -135,8 +237,10 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void suspendWrite() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+        writeSuspended = true;
+
+        // a write event already selected will be ignored, no need to wakeup the selector
+        updateInterestOps(false);
     }
 
     /**
@@ -166,55 +270,92 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
     @Override
     protected ByteBuffer convertToDirectBuffer(WriteRequest writeRequest, boolean createNew) {
         ByteBuffer message = (ByteBuffer) writeRequest.getMessage();
+        ByteBuffer stagingBuffer = STAGING_BUFFER.get();
 
-        if (!message.isDirect()) {
-            int remaining = message.remaining();
-
-            if ((remaining > sendBufferSize) || createNew) {
-                ByteBuffer directBuffer = ByteBuffer.allocateDirect(remaining);
-                directBuffer.put(message);
-                directBuffer.flip();
-                writeRequest.setMessage(directBuffer);
+        if (message == stagingBuffer) {
+            // The staging buffer is shared by all the sessions using this thread, so what
+            // hasn't been written has to be moved into a buffer owned by the write request
+            return copyToAllocatedBuffer(writeRequest, message);
+        }
 
-                return directBuffer;
+        if (!message.isDirect()) {
+            if ((message.remaining() > STAGING_BUFFER_SIZE) || createNew) {
+                return copyToAllocatedBuffer(writeRequest, message);
             } else {
-                sendBuffer.clear();
-                sendBuffer.put(message);
-                sendBuffer.flip();
-                writeRequest.setMessage(sendBuffer);
+                stagingBuffer.clear();
+                stagingBuffer.put(message);
+                stagingBuffer.flip();
+                writeRequest.setMessage(stagingBuffer);
 
-                return sendBuffer;
+                return stagingBuffer;
             }
         }
 
         return message;
     }
 
+    /**
+     * Copy the message into a direct buffer obtained from the allocator, released once the message is written.
+     */
+    private ByteBuffer copyToAllocatedBuffer(WriteRequest writeRequest, ByteBuffer message) {
+        ByteBuffer directBuffer = bufferAllocator.allocate(message.remaining());
+        directBuffer.put(message);
+        directBuffer.flip();
+        writeRequest.setMessage(directBuffer);
+        writeRequest.setAllocated(true);
+
+        return directBuffer;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public void resumeRead() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+    protected int getGatheringWriteMaxBuffers() {
+        return configuration.getGatheringWriteMaxBuffers();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void resumeWrite() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+    protected int getGatheringWriteMaxBytes() {
+        return configuration.getGatheringWriteMaxBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean deferFlush() {
+        return configuration.isBatchedFlush() && selectorLoop.flushLater(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected SelectorLoop getWriteLoop() {
+        return configuration.isLoopConfinedWrite() ? selectorLoop : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resumeRead() {
+        if (releaseReadSuspension()) {
+            updateInterestOps(true);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isReadSuspended() {
-        // TODO
-        return false;
+    public void resumeWrite() {
+        writeSuspended = false;
+        updateInterestOps(true);
     }
 
     /**
@@ -222,8 +363,29 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public boolean isWriteSuspended() {
-        // TODO
-        throw new RuntimeException("Not implemented");
+        return writeSuspended;
+    }
+
+    /**
+     * Set the interest ops of the channel according to the suspend flags and to the pending writes. The update is
+     * synchronized with the other updates of the interest ops, so the last one always reflects the current flags.
+     * 
+     * @param wakeup <code>true</code> if the selector must take the new interest ops into account immediately
+     */
+    private void updateInterestOps(boolean wakeup) {
+        synchronized (getWriteQueue()) {
+            if (!channel.isOpen() || migrating) {
+                return;
+            }
+
+            try {
+                selectorLoop.modifyRegistration(false, !isReadSuspended(), isRegisteredForWrite() && !writeSuspended,
+                        this, channel, wakeup);
+            } catch (final CancelledKeyException e) {
+                // the session is being closed
+                LOG.debug("the selection key of session {} has been cancelled", this);
+            }
+        }
     }
 
     /**
@@ -238,12 +400,10 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      * Set this session status as connected. To be called by the processor selecting/polling this session.
      */
     void setConnected() {
-        if (!isCreated()) {
+        if (!changeState(SessionState.CREATED, SessionState.CONNECTED)) {
             throw new RuntimeException("Trying to open a non created session");
         }
 
-        state = SessionState.CONNECTED;
-
         if (connectFuture != null) {
             connectFuture.complete(this);
             // free some memory
@@ -258,6 +418,8 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     protected void channelClose() {
+        removeFromSelectorLoop();
+
         try {
             selectorLoop.unregister(this, channel);
             channel.close();
@@ -265,6 +427,8 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
             LOG.error("Exception while closing the channel : ", e);
             processException(e);
         }
+
+        releasePendingWrites();
     }
 
     /**
@@ -272,8 +436,20 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void flushWriteQueue() {
-        // register for write
-        selectorLoop.modifyRegistration(false, !isReadSuspended(), true, this, channel, true);
+        // register for write, unless the writes are suspended : resumeWrite() will do it
+        synchronized (getWriteQueue()) {
+            if (migrating) {
+                // registered for write once on the new selector loop
+                return;
+            }
+
+            try {
+                selectorLoop.modifyRegistration(false, !isReadSuspended(), !writeSuspended, this, channel, true);
+            } catch (final CancelledKeyException e) {
+                // the session is being closed
+                LOG.debug("the selection key of session {} has been cancelled", this);
+            }
+        }
     }
 
     /**
@@ -283,18 +459,49 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
      */
     private void processRead(final ByteBuffer readBuffer) {
         try {
-            LOG.debug("readable session : {}", this);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("readable session : {}", this);
+            }
 
-            // Read everything we can up to the buffer size
-            final int readCount = ((SocketChannel) channel).read(readBuffer);
+            final boolean adaptive = configuration.isAdaptiveReadSize();
+            final int maxBytes = configuration.getMaxReadBytesPerEvent();
+            int totalRead = 0;
 
-            LOG.debug("read {} bytes", readCount);
+            // Read until the budget is consumed or the socket has no more data
+            while (totalRead < maxBytes) {
+                int readSize = readBuffer.capacity();
+
+                if (adaptive) {
+                    readSize = Math.min(readSizePredictor.nextReadSize(), readSize);
+                }
+
+                readBuffer.clear();
+                readBuffer.limit(readSize);
+
+                final int readCount = ((SocketChannel) channel).read(readBuffer);
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("read {} bytes", readCount);
+                }
+
+                if (readCount < 0) {
+                    // session closed by the remote peer
+                    LOG.debug("session closed by the remote peer");
+                    close(true);
+                    break;
+                }
+
+                if (readCount == 0) {
+                    break;
+                }
+
+                totalRead += readCount;
+                selectorLoop.incrementProcessedBytes(readCount);
+
+                if (adaptive) {
+                    readSizePredictor.readCompleted(readCount);
+                }
 
-            if (readCount < 0) {
-                // session closed by the remote peer
-                LOG.debug("session closed by the remote peer");
-                close(true);
-            } else if (readCount > 0) {
                 // we have read some data
                 // limit at the current position & rewind buffer back to start &
                 // push to the chain
@@ -320,8 +527,15 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
                     readBuffer.clear();
                 }
 
+                // the socket is drained, or the session doesn't want to read anymore
+                if ((readCount < readSize) || isClosing() || isClosed() || isReadSuspended()) {
+                    break;
+                }
+            }
+
+            if (totalRead > 0) {
                 // Update the session idle status
-                idleChecker.sessionRead(this, System.currentTimeMillis());
+                idleChecker.sessionRead(this, getClock().currentTimeMillis());
             }
         } catch (final IOException e) {
             LOG.error("Exception while reading : ", e);
@@ -346,33 +560,45 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
 
                 if (!isConnected) {
                     LOG.error("unable to connect session {}", this);
+                } else if (selectorLoop.isLoopThread()) {
+                    // the connect selector loop is also the one handling this session : cancelling the key and
+                    // registering the channel again on the same selector would fail, so we just switch the
+                    // interest of the current key from connect to read
+                    selectorLoop.modifyRegistration(false, !isReadSuspended(), false, this, channel, false);
+                    setConnected();
                 } else {
                     // cancel current registration for connection
                     selectionKey.cancel();
                     selectionKey = null;
 
-                    // Register for reading
-                    selectorLoop.register(false, false, true, false, this, channel, new RegistrationCallback() {
-
-                        @Override
-                        public void done(SelectionKey selectionKey) {
-                            setConnected();
-                        }
-                    });
+                    // Register for reading on the selector loop handling this session, which
+                    // is not necessarily the one which has processed the connection
+                    selectorLoop.register(false, false, !isReadSuspended(), false, this, channel,
+                            new RegistrationCallback() {
+
+                                @Override
+                                public void done(SelectionKey selectionKey) {
+                                    setSelectionKey(selectionKey);
+                                    setConnected();
+                                }
+                            });
                 }
             } catch (IOException e) {
                 LOG.debug("Connection error, we cancel the future", e);
+                removeFromSelectorLoop();
+
                 if (connectFuture != null) {
                     connectFuture.error(e);
                 }
             }
         }
 
-        if (read) {
+        // the events selected before a suspension are ignored
+        if (read && !isReadSuspended()) {
             processRead(readBuffer);
         }
 
-        if (write) {
+        if (write && !writeSuspended) {
             processWrite(selectorLoop);
         }
         if (accept) {
@@ -380,6 +606,41 @@ public class NioTcpSession extends AbstractNioSession implements SelectorListene
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void incrementWrittenBytes(int bytesCount) {
+        super.incrementWrittenBytes(bytesCount);
+        selectorLoop.incrementProcessedBytes(bytesCount);
+    }
+
+    /**
+     * Give up a session which has failed to be set up : its channel is closed without any event, since the session
+     * has never been opened, and the session is removed from its selector loop.
+     */
+    void abortSetup() {
+        removeFromSelectorLoop();
+
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            LOG.error("Exception while closing the channel : ", e);
+        }
+    }
+
+    /**
+     * The session doesn't use its selector loop anymore : remove it from the loop session count
+     */
+    private void removeFromSelectorLoop() {
+        synchronized (selectorLoopLock) {
+            if (countedInSelectorLoop) {
+                countedInSelectorLoop = false;
+                selectorLoop.decrementSessionCount();
+            }
+        }
+    }
+
     void setSelectionKey(SelectionKey key) {
         this.selectionKey = key;
     }
@@ -29,7 +29,7 @@ import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoSession;
 import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.ConnectFuture;
 import org.apache.mina.transport.udp.AbstractUdpClient;
 import org.apache.mina.transport.udp.UdpSessionConfig;
@@ -46,7 +46,7 @@ public class NioUdpClient extends AbstractUdpClient {
     // This is final, so that we know if it's not initialized
     private final SelectorLoopPool readWriteSelectorPool;
 
-    private final IndexedIdleChecker idleChecker = new IndexedIdleChecker();
+    private final TimingWheelIdleChecker idleChecker;
 
     /**
      * Create a new instance of NioUdpClient
@@ -61,6 +61,8 @@ public class NioUdpClient extends AbstractUdpClient {
     public NioUdpClient(IoHandlerExecutor ioHandlerExecutor) {
         super(ioHandlerExecutor);
         readWriteSelectorPool = new FixedSelectorLoopPool("Client", 2);
+        // the idle sessions are checked by one of the loops, no need for another thread
+        idleChecker = new TimingWheelIdleChecker(readWriteSelectorPool.getSelectorLoop());
         idleChecker.start();
     }
 
@@ -97,8 +99,9 @@ public class NioUdpClient extends AbstractUdpClient {
                 config.getIdleTimeInMillis(IdleStatus.WRITE_IDLE));
 
         // Manage the Idle status
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+        long now = session.getClock().currentTimeMillis();
+        idleChecker.sessionRead(session, now);
+        idleChecker.sessionWritten(session, now);
 
         // apply the default service socket configuration
 
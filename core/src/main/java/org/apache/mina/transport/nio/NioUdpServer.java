@@ -35,7 +35,7 @@ import org.apache.mina.api.MinaRuntimeException;
 import org.apache.mina.service.executor.IoHandlerExecutor;
 import org.apache.mina.service.executor.OrderedHandlerExecutor;
 import org.apache.mina.service.idlechecker.IdleChecker;
-import org.apache.mina.service.idlechecker.IndexedIdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
 import org.apache.mina.transport.udp.AbstractUdpServer;
 import org.apache.mina.transport.udp.UdpSessionConfig;
 import org.slf4j.Logger;
@@ -56,7 +56,7 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
     private SocketAddress address = null;
 
     // used for detecting idle sessions
-    private final IdleChecker idleChecker = new IndexedIdleChecker();
+    private IdleChecker idleChecker;
 
     // the inner channel for read/write UDP datagrams
     private DatagramChannel datagramChannel = null;
@@ -168,6 +168,10 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
             throw new MinaRuntimeException("can't open the address " + address, e);
         }
 
+        // the idle sessions are checked by the read loop, which fires their idle events
+        idleChecker = new TimingWheelIdleChecker(readSelectorLoop);
+        idleChecker.start();
+
         readSelectorLoop.register(false, false, true, false, this, datagramChannel, null);
 
         // it's the first address bound, let's fire the event
@@ -199,6 +203,8 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
 
         this.address = null;
         this.fireServiceInactivated();
+
+        idleChecker.destroy();
     }
 
     /**
@@ -234,7 +240,14 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
                 if (session == null) {
                     session = createSession(source, datagramChannel);
                 }
-                if (read) {
+                if (read && session.isReadSuspended()) {
+                    // the channel is shared by all the sessions, so the datagrams of a suspended session are dropped
+                    if (IS_DEBUG) {
+                        LOG.debug("dropping a datagram for the suspended session {}", session);
+                    }
+
+                    readBuffer.clear();
+                } else if (read) {
                     if (IS_DEBUG) {
                         LOG.debug("readable datagram for UDP service : {}", this);
                     }
@@ -270,7 +283,8 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
         UdpSessionConfig config = getSessionConfig();
         SocketAddress localAddress = new InetSocketAddress(datagramChannel.socket().getLocalAddress(), datagramChannel
                 .socket().getLocalPort());
-        final NioUdpSession session = new NioUdpSession(this, idleChecker, datagramChannel, localAddress, remoteAddress);
+        final NioUdpSession session = new NioUdpSession(this, idleChecker, datagramChannel, localAddress, remoteAddress,
+                readSelectorLoop);
 
         // apply idle configuration
         session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, config.getIdleTimeInMillis(IdleStatus.READ_IDLE));
@@ -304,8 +318,9 @@ public class NioUdpServer extends AbstractUdpServer implements SelectorListener
         }
 
         // Manage the Idle status
-        idleChecker.sessionRead(session, System.currentTimeMillis());
-        idleChecker.sessionWritten(session, System.currentTimeMillis());
+        long now = session.getClock().currentTimeMillis();
+        idleChecker.sessionRead(session, now);
+        idleChecker.sessionWritten(session, now);
 
         sessions.put(remoteAddress, session);
 
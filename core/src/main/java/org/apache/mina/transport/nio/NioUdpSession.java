@@ -22,10 +22,12 @@ package org.apache.mina.transport.nio;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.DatagramChannel;
 
 import org.apache.mina.api.IoService;
 import org.apache.mina.service.idlechecker.IdleChecker;
+import org.apache.mina.service.scheduler.TaskScheduler;
 import org.apache.mina.session.WriteRequest;
 import org.apache.mina.transport.udp.UdpSessionConfig;
 import org.slf4j.Logger;
@@ -51,6 +53,9 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      */
     private SelectorLoop selectorLoop = null;
 
+    /** The selector loop reading the datagrams of this session : the loop of the server, or of the client */
+    private final SelectorLoop readSelectorLoop;
+
     /** the socket configuration */
     private final UdpSessionConfig configuration;
 
@@ -58,8 +63,9 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      * For server handled UDP sessions
      */
     /* No qualifier */NioUdpSession(IoService service, IdleChecker idleChecker, DatagramChannel datagramChannel,
-            SocketAddress localAddress, SocketAddress remoteAddress) {
+            SocketAddress localAddress, SocketAddress remoteAddress, SelectorLoop readSelectorLoop) {
         super(service, datagramChannel, idleChecker);
+        this.readSelectorLoop = readSelectorLoop;
         this.localAddress = localAddress;
         this.remoteAddress = remoteAddress;
         this.config = service.getSessionConfig();
@@ -73,6 +79,7 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
             SocketAddress localAddress, SocketAddress remoteAddress, NioSelectorLoop selectorLoop) {
         super(service, datagramChannel, idleChecker);
         this.selectorLoop = selectorLoop;
+        this.readSelectorLoop = selectorLoop;
         this.localAddress = localAddress;
         this.remoteAddress = remoteAddress;
         this.config = service.getSessionConfig();
@@ -95,9 +102,28 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
                 processException(e);
             }
         }
+        releasePendingWrites();
         processSessionClosed();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop getSelectorLoop() {
+        return selectorLoop;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The server sessions share the selector loop of their server, which reads their datagrams.
+     */
+    @Override
+    public TaskScheduler getTaskScheduler() {
+        return readSelectorLoop;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -142,8 +168,11 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void suspendRead() {
-        // TODO
-        throw new IllegalStateException("not implemented");
+        if (addReadSuspension()) {
+            // the datagrams of a server session are received on the channel shared by all the sessions of the
+            // server, which drops them while the session is suspended
+            updateReadInterest(false);
+        }
     }
 
     /**
@@ -160,26 +189,34 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      */
     @Override
     public void resumeRead() {
-        // TODO
-        throw new IllegalStateException("not implemented");
+        if (releaseReadSuspension()) {
+            updateReadInterest(true);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Update the read interest of the channel of a client session.
      */
-    @Override
-    public void resumeWrite() {
-        // TODO
-        throw new IllegalStateException("not implemented");
+    private void updateReadInterest(boolean wakeup) {
+        if ((selectorLoop == null) || !channel.isOpen()) {
+            return;
+        }
+
+        try {
+            selectorLoop.modifyRegistration(false, !isReadSuspended(), isRegisteredForWrite(), this, channel, wakeup);
+        } catch (final CancelledKeyException e) {
+            // the session is being closed
+            LOG.debug("the selection key of session {} has been cancelled", this);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isReadSuspended() {
+    public void resumeWrite() {
         // TODO
-        return false;
+        throw new IllegalStateException("not implemented");
     }
 
     /**
@@ -206,7 +243,7 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      */
     void receivedDatagram(ByteBuffer readBuffer) {
         processMessageReceived(readBuffer);
-        idleChecker.sessionRead(this, System.currentTimeMillis());
+        idleChecker.sessionRead(this, getClock().currentTimeMillis());
     }
 
     /**
@@ -251,11 +288,9 @@ public class NioUdpSession extends AbstractNioSession implements SelectorListene
      * Set this session status as connected. To be called by the processor selecting/polling this session.
      */
     void setConnected() {
-        if (!isCreated()) {
+        if (!changeState(SessionState.CREATED, SessionState.CONNECTED)) {
             throw new IllegalStateException("Trying to open a non created session");
         }
-
-        state = SessionState.CONNECTED;
         processSessionOpen();
     }
 
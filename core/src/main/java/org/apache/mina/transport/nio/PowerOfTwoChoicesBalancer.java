@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link SelectorLoopBalancer} picking two selector loops at random, and choosing the one handling the fewest
+ * sessions. It avoids the worst imbalances at a constant cost, whatever the number of loops, and doesn't send all the
+ * sessions of a burst to the same loop when the counters are stale.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PowerOfTwoChoicesBalancer implements SelectorLoopBalancer {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop select(SelectorLoop[] loops) {
+        if (loops.length == 1) {
+            return loops[0];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(loops.length);
+
+        // pick a second loop, distinct from the first one
+        int second = random.nextInt(loops.length - 1);
+
+        if (second >= first) {
+            second++;
+        }
+
+        if (loops[second].getSessionCount() < loops[first].getSessionCount()) {
+            return loops[second];
+        }
+
+        return loops[first];
+    }
+}
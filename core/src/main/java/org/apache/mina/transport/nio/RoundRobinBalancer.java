@@ -0,0 +1,40 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link SelectorLoopBalancer} serving the selector loops in turn.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RoundRobinBalancer implements SelectorLoopBalancer {
+    /** the index of the next selector loop to be served */
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SelectorLoop select(SelectorLoop[] loops) {
+        return loops[Math.abs(nextIndex.incrementAndGet() % loops.length)];
+    }
+}
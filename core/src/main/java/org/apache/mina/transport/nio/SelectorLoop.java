@@ -19,11 +19,16 @@
 package org.apache.mina.transport.nio;
 
 import java.nio.channels.SelectableChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.apache.mina.service.scheduler.TaskScheduler;
+import org.apache.mina.util.Clock;
 
 /**
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public interface SelectorLoop {
+public interface SelectorLoop extends TaskScheduler {
     /**
      * Register a channel on a Selector, for some events. We can register for OP_ACCEPT, OP_READ or OP_WRITE.
      * 
@@ -54,4 +59,86 @@ public interface SelectorLoop {
      * @param task the task to be run in the main working loop.
      */
     void runInLoop(Runnable task);
+
+    /**
+     * Run a task in the loop once a delay has elapsed. The loop keeps its tasks in a timer wheel : the precision of
+     * the delay is the tick of the wheel, and scheduling or cancelling a task doesn't depend on the number of
+     * scheduled tasks.
+     * 
+     * @param task the task to be run in the main working loop
+     * @param delay the delay before running the task
+     * @param unit the unit of the delay
+     * @return the handle for cancelling the task
+     */
+    ScheduledTask schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Run a task in the loop periodically, the first time once a delay has elapsed. The runs missed while the loop was
+     * busy are skipped.
+     * 
+     * @param task the task to be run in the main working loop
+     * @param initialDelay the delay before the first run
+     * @param period the period between two runs
+     * @param unit the unit of the delay and the period
+     * @return the handle for cancelling the task
+     */
+    ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Get the clock of this loop, updated once per select : the events processed in an iteration of the loop share the
+     * same time, read without system call.
+     * 
+     * @return the clock of this loop
+     */
+    Clock getClock();
+
+    /**
+     * Tells if the caller is the thread of this loop.
+     * 
+     * @return <code>true</code> if called by the loop thread
+     */
+    boolean isLoopThread();
+
+    /**
+     * Ask the loop to flush the write queue of a session once all the I/O events of the current select have been
+     * processed, so that the messages written by the handlers are gathered into as few system calls as possible. This
+     * is only possible when the caller is the loop thread, processing the I/O events.
+     * 
+     * @param session the session to flush
+     * @return <code>true</code> if the flush has been scheduled, <code>false</code> if the caller has to flush the
+     *         session itself
+     */
+    boolean flushLater(AbstractNioSession session);
+
+    /**
+     * Increment the number of sessions handled by this loop. Called when a session is assigned to the loop.
+     */
+    void incrementSessionCount();
+
+    /**
+     * Decrement the number of sessions handled by this loop. Called when a session handled by the loop is closed.
+     */
+    void decrementSessionCount();
+
+    /**
+     * @return the number of sessions handled by this loop
+     */
+    int getSessionCount();
+
+    /**
+     * Add some bytes to the number of bytes read and written by the sessions of this loop.
+     * 
+     * @param bytesCount the number of bytes read or written
+     */
+    void incrementProcessedBytes(int bytesCount);
+
+    /**
+     * @return the total number of bytes read and written by the sessions of this loop
+     */
+    long getProcessedBytes();
+
+    /**
+     * @return an exponentially weighted moving average of the number of bytes processed per second by this loop
+     */
+    double getRecentByteRate();
 }
\ No newline at end of file
@@ -32,4 +32,10 @@ public interface SelectorLoopPool {
      */
     SelectorLoop getSelectorLoop();
 
+    /**
+     * Get all the {@link SelectorLoop}s of the pool
+     * @return the SelectorLoops of the pool
+     */
+    SelectorLoop[] getSelectorLoops();
+
 }
\ No newline at end of file
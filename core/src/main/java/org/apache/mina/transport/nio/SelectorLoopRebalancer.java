@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoService;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A background task moving the {@link NioTcpSession}s of a service between the selector loops of a pool, for spreading
+ * the load. Periodically, the loops byte rates are compared : if the busiest loop processes a lot more bytes than the
+ * idlest one, one of its sessions is moved to the idlest loop. The moved session is the busiest one which doesn't
+ * simply swap the imbalance, i.e. whose byte rate is at most half the difference between the two loops. A single
+ * session is moved per check, so that the loop rates can reflect the move before the next decision.
+ * <p>
+ * The checks are scheduled on the first loop of the pool, without any additional thread.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SelectorLoopRebalancer {
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorLoopRebalancer.class);
+
+    /** The default elapsed period between two checks : 5 seconds */
+    public static final long DEFAULT_PERIOD_IN_MS = 5000;
+
+    /** The default ratio between the busiest and the idlest loop byte rates triggering a move */
+    public static final double DEFAULT_IMBALANCE_RATIO = 1.5;
+
+    /** The default byte rate under which the busiest loop is not worth being relieved : 1MB/s */
+    public static final double DEFAULT_MIN_BYTE_RATE = 1024 * 1024;
+
+    /** the service owning the sessions */
+    private final IoService service;
+
+    /** the loops to balance */
+    private final SelectorLoop[] loops;
+
+    private long periodInMs = DEFAULT_PERIOD_IN_MS;
+
+    private double imbalanceRatio = DEFAULT_IMBALANCE_RATIO;
+
+    private double minByteRate = DEFAULT_MIN_BYTE_RATE;
+
+    /** the number of bytes processed by each session at the previous check */
+    private Map<Long, Long> previousBytes = new HashMap<Long, Long>();
+
+    /** the time of the previous check */
+    private long previousCheckTime = -1;
+
+    /** the periodic check, scheduled on the first loop */
+    private ScheduledTask checkTask;
+
+    /**
+     * Create a rebalancer for the sessions of a service.
+     * 
+     * @param service the service owning the sessions
+     * @param selectorLoopPool the pool of selector loops handling the service sessions
+     */
+    public SelectorLoopRebalancer(IoService service, SelectorLoopPool selectorLoopPool) {
+        this.service = service;
+        this.loops = selectorLoopPool.getSelectorLoops();
+    }
+
+    /**
+     * Set the elapsed period between two checks. Must be called before {@link #start()}.
+     * 
+     * @param periodInMs the period in milliseconds
+     */
+    public void setPeriodInMs(long periodInMs) {
+        if (periodInMs <= 0) {
+            throw new IllegalArgumentException("periodInMs: " + periodInMs + " (expected: 1+)");
+        }
+
+        this.periodInMs = periodInMs;
+    }
+
+    /**
+     * Set the ratio between the busiest and the idlest loop byte rates triggering a move.
+     * 
+     * @param imbalanceRatio the ratio, greater than 1
+     */
+    public void setImbalanceRatio(double imbalanceRatio) {
+        if (imbalanceRatio <= 1) {
+            throw new IllegalArgumentException("imbalanceRatio: " + imbalanceRatio + " (expected: > 1)");
+        }
+
+        this.imbalanceRatio = imbalanceRatio;
+    }
+
+    /**
+     * Set the byte rate under which the busiest loop is not worth being relieved.
+     * 
+     * @param minByteRate the byte rate, in bytes per second
+     */
+    public void setMinByteRate(double minByteRate) {
+        this.minByteRate = minByteRate;
+    }
+
+    /**
+     * Start the periodic checks.
+     */
+    public void start() {
+        checkTask = loops[0].scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebalance();
+                } catch (RuntimeException e) {
+                    LOG.error("Unexpected exception while rebalancing the selector loops : ", e);
+                }
+            }
+        }, periodInMs, periodInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the periodic checks.
+     */
+    public void destroy() {
+        if (checkTask != null) {
+            checkTask.cancel();
+        }
+    }
+
+    /**
+     * Check the loops load, and move a session if needed.
+     * 
+     * @return <code>true</code> if a session has been moved
+     */
+    public synchronized boolean rebalance() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - previousCheckTime;
+
+        // compute the recent byte rate of each session
+        Map<Long, Long> currentBytes = new HashMap<Long, Long>();
+        Map<NioTcpSession, Double> sessionRates = new HashMap<NioTcpSession, Double>();
+
+        for (IoSession session : service.getManagedSessions().values()) {
+            if (!(session instanceof NioTcpSession)) {
+                continue;
+            }
+
+            long bytes = session.getReadBytes() + session.getWrittenBytes();
+            Long previous = previousBytes.get(session.getId());
+            currentBytes.put(session.getId(), bytes);
+
+            if ((previous != null) && (elapsed > 0)) {
+                sessionRates.put((NioTcpSession) session, (bytes - previous) * 1000d / elapsed);
+            }
+        }
+
+        previousBytes = currentBytes;
+        previousCheckTime = now;
+
+        if (loops.length < 2) {
+            return false;
+        }
+
+        // find the busiest and the idlest loops
+        SelectorLoop busiest = loops[0];
+        SelectorLoop idlest = loops[0];
+        double busiestRate = busiest.getRecentByteRate();
+        double idlestRate = busiestRate;
+
+        for (int i = 1; i < loops.length; i++) {
+            double rate = loops[i].getRecentByteRate();
+
+            if (rate > busiestRate) {
+                busiest = loops[i];
+                busiestRate = rate;
+            } else if (rate < idlestRate) {
+                idlest = loops[i];
+                idlestRate = rate;
+            }
+        }
+
+        if ((busiestRate < minByteRate) || (busiestRate <= idlestRate * imbalanceRatio)) {
+            return false;
+        }
+
+        // compare the sessions loads of the two loops
+        double busiestLoad = 0;
+        double idlestLoad = 0;
+
+        for (Map.Entry<NioTcpSession, Double> entry : sessionRates.entrySet()) {
+            SelectorLoop loop = entry.getKey().getSelectorLoop();
+
+            if (loop == busiest) {
+                busiestLoad += entry.getValue();
+            } else if (loop == idlest) {
+                idlestLoad += entry.getValue();
+            }
+        }
+
+        double maxMovedRate = (busiestLoad - idlestLoad) / 2;
+        NioTcpSession moved = null;
+        double movedRate = 0;
+
+        for (Map.Entry<NioTcpSession, Double> entry : sessionRates.entrySet()) {
+            double rate = entry.getValue();
+
+            if ((entry.getKey().getSelectorLoop() == busiest) && (rate > movedRate) && (rate <= maxMovedRate)) {
+                moved = entry.getKey();
+                movedRate = rate;
+            }
+        }
+
+        if (moved == null) {
+            return false;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("moving session {} ({} bytes/s) from loop {} ({} bytes/s) to loop {} ({} bytes/s)",
+                    new Object[] { moved, movedRate, busiest, busiestRate, idlest, idlestRate });
+        }
+
+        moved.moveTo(idlest);
+
+        return true;
+    }
+}
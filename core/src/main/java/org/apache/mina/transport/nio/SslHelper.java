@@ -34,6 +34,8 @@ import javax.net.ssl.SSLSession;
 
 import org.apache.mina.api.IoClient;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.service.buffer.BufferAllocator;
+import org.apache.mina.service.buffer.UnpooledBufferAllocator;
 import org.apache.mina.session.AbstractIoSession;
 import org.apache.mina.session.AttributeKey;
 import org.apache.mina.session.DefaultWriteRequest;
@@ -81,6 +83,9 @@ public class SslHelper {
 
     private ByteBuffer previous = null;
 
+    /** The allocator providing the SSL/TLS buffers */
+    private BufferAllocator bufferAllocator;
+
     /**
      * Create a new SSL Handler.
      * 
@@ -121,6 +126,12 @@ public class SslHelper {
 
         LOGGER.debug("{} Initializing the SSL Helper", session);
 
+        bufferAllocator = session.getService().getBufferAllocator();
+
+        if (bufferAllocator == null) {
+            bufferAllocator = new UnpooledBufferAllocator();
+        }
+
         InetSocketAddress peer = session.getAttribute(PEER_ADDRESS, null);
 
         // Create the SSL engine here
@@ -161,7 +172,7 @@ public class SslHelper {
      * @return the newly allocated buffer
      */
     private ByteBuffer duplicate(ByteBuffer buffer) {
-        ByteBuffer newBuffer = ByteBuffer.allocateDirect(buffer.remaining() * 2);
+        ByteBuffer newBuffer = bufferAllocator.allocate(buffer.remaining() * 2);
         newBuffer.put(buffer);
         newBuffer.flip();
         return newBuffer;
@@ -181,10 +192,11 @@ public class SslHelper {
             previous.put(buffer);
             previous.position(oldPosition);
         } else {
-            ByteBuffer newPrevious = ByteBuffer.allocateDirect((previous.remaining() + buffer.remaining()) * 2);
+            ByteBuffer newPrevious = bufferAllocator.allocate((previous.remaining() + buffer.remaining()) * 2);
             newPrevious.put(previous);
             newPrevious.put(buffer);
             newPrevious.flip();
+            bufferAllocator.release(previous);
             previous = newPrevious;
         }
         return previous;
@@ -208,7 +220,7 @@ public class SslHelper {
 
         boolean done = false;
         SSLEngineResult result;
-        ByteBuffer appBuffer = ByteBuffer.allocateDirect(sslEngine.getSession().getApplicationBufferSize());
+        ByteBuffer appBuffer = bufferAllocator.allocate(sslEngine.getSession().getApplicationBufferSize());
 
         HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
         while (!done) {
@@ -226,12 +238,21 @@ public class SslHelper {
                     break;
                 case BUFFER_OVERFLOW:
                     /* resize output buffer */
-                    appBuffer = ByteBuffer.allocateDirect(appBuffer.capacity() * 2);
+                    int capacity = appBuffer.capacity();
+                    bufferAllocator.release(appBuffer);
+                    appBuffer = bufferAllocator.allocate(capacity * 2);
                     break;
                 case OK:
                     if ((handshakeStatus == HandshakeStatus.NOT_HANDSHAKING) && (result.bytesProduced() > 0)) {
                         appBuffer.flip();
-                        session.processMessageReceived(appBuffer);
+
+                        // the pooled buffer is given back at the end of the processing, so the handlers
+                        // get a copy of the decrypted data they can keep
+                        ByteBuffer message = ByteBuffer.allocate(appBuffer.remaining());
+                        message.put(appBuffer);
+                        message.flip();
+                        appBuffer.clear();
+                        session.processMessageReceived(message);
                     }
                 }
                 break;
@@ -248,7 +269,9 @@ public class SslHelper {
                 handshakeStatus = result.getHandshakeStatus();
                 switch (result.getStatus()) {
                 case BUFFER_OVERFLOW:
-                    appBuffer = ByteBuffer.allocateDirect(appBuffer.capacity() * 2);
+                    int capacity = appBuffer.capacity();
+                    bufferAllocator.release(appBuffer);
+                    appBuffer = bufferAllocator.allocate(capacity * 2);
                     break;
                 case BUFFER_UNDERFLOW:
                     done = true;
@@ -258,31 +281,54 @@ public class SslHelper {
                     appBuffer.flip();
                     WriteRequest writeRequest = new DefaultWriteRequest(readBuffer);
                     writeRequest.setMessage(appBuffer);
+                    writeRequest.setAllocated(true);
                     session.enqueueWriteRequest(writeRequest);
+
+                    // the buffer now belongs to the write queue
+                    appBuffer = bufferAllocator.allocate(appBuffer.capacity());
                     break;
                 }
             }
         }
+        bufferAllocator.release(appBuffer);
+        ByteBuffer oldPrevious = previous;
+
         if (tempBuffer.remaining() > 0) {
             previous = duplicate(tempBuffer);
         } else {
             previous = null;
         }
+
+        if (oldPrevious != null) {
+            bufferAllocator.release(oldPrevious);
+        }
+
         readBuffer.clear();
     }
 
     /**
-     * Process the application data encryption for a session.
+     * Give back the buffer accumulating the incomplete data read from the peer. Called once the session is closed.
+     */
+    /* no qualifier */void release() {
+        if (previous != null) {
+            bufferAllocator.release(previous);
+            previous = null;
+        }
+    }
+
+    /**
+     * Process the application data encryption for a session. The request message is replaced by its encrypted form,
+     * the request itself (future, original message) is kept.
      * 
      * @param session The session sending encrypted data to the peer.
-     * @param message The message to encrypt
+     * @param writeRequest The request holding the message to encrypt
      * @param writeQueue The queue in which the encrypted buffer will be written
      * @return The written WriteRequest
      */
     /** No qualifier */
-    WriteRequest processWrite(IoSession session, Object message, Queue<WriteRequest> writeQueue) {
-        ByteBuffer buf = (ByteBuffer) message;
-        ByteBuffer appBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+    WriteRequest processWrite(IoSession session, WriteRequest writeRequest, Queue<WriteRequest> writeQueue) {
+        ByteBuffer buf = (ByteBuffer) writeRequest.getMessage();
+        ByteBuffer appBuffer = bufferAllocator.allocate(sslEngine.getSession().getPacketBufferSize());
 
         try {
             while (true) {
@@ -292,7 +338,9 @@ public class SslHelper {
                 switch (result.getStatus()) {
                 case BUFFER_OVERFLOW:
                     // Increase the buffer size as needed
-                    appBuffer = ByteBuffer.allocate(appBuffer.capacity() + 4096);
+                    int capacity = appBuffer.capacity();
+                    bufferAllocator.release(appBuffer);
+                    appBuffer = bufferAllocator.allocate(capacity + 4096);
                     break;
 
                 case BUFFER_UNDERFLOW:
@@ -302,9 +350,18 @@ public class SslHelper {
                 case OK:
                     // We are done. Flip the buffer and push it to the write queue.
                     appBuffer.flip();
-                    WriteRequest request = new DefaultWriteRequest(appBuffer);
 
-                    return request;
+                    // the clear text buffer is not needed anymore
+                    if (writeRequest.isAllocated()) {
+                        bufferAllocator.release(buf);
+                    }
+
+                    // the pooled buffer is only the encrypted form of the message : the handlers are
+                    // notified with the message they have written, and the writer with its future
+                    writeRequest.setMessage(appBuffer);
+                    writeRequest.setAllocated(true);
+
+                    return writeRequest;
                 }
             }
         } catch (SSLException se) {
@@ -29,6 +29,12 @@ import org.apache.mina.service.server.AbstractIoServer;
  */
 public abstract class AbstractTcpServer extends AbstractIoServer {
 
+    /** The default maximum number of pending connections of the server socket */
+    public static final int DEFAULT_BACKLOG = 1024;
+
+    /** The maximum number of pending connections of the server socket */
+    private int backlog = DEFAULT_BACKLOG;
+
     /**
      * Create an new AbsractTcpServer instance
      * 
@@ -52,6 +58,27 @@ public abstract class AbstractTcpServer extends AbstractIoServer {
         super(config, eventExecutor);
     }
 
+    /**
+     * @return the maximum number of pending connections of the server socket
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum number of connections waiting to be accepted by the server socket, used when the server is
+     * bound. The operating system may use a smaller value (for instance <code>net.core.somaxconn</code> on Linux).
+     * 
+     * @param backlog the backlog, <code>0</code> for the JDK default
+     */
+    public void setBacklog(int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("backlog must not be negative : " + backlog);
+        }
+
+        this.backlog = backlog;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -48,6 +48,30 @@ public class DefaultTcpSessionConfig extends AbstractIoSessionConfig implements
     /** The SO_LINGER socket option */
     private Integer soLinger;
 
+    //=====================
+    // write options
+    //=====================
+    /** The maximum number of buffers gathered in a single write */
+    private Integer gatheringWriteMaxBuffers = null;
+
+    /** The maximum number of bytes gathered in a single write */
+    private Integer gatheringWriteMaxBytes = null;
+
+    /** Tells if the writes done while processing I/O events are flushed at the end of the batch */
+    private Boolean batchedFlush = null;
+
+    /** Are the writes of the other threads handed to the selector loop */
+    private Boolean loopConfinedWrite = null;
+
+    //=====================
+    // read options
+    //=====================
+    /** Tells if the read size is adapted to the previous reads */
+    private Boolean adaptiveReadSize = null;
+
+    /** The maximum number of bytes read per read event */
+    private Integer maxReadBytesPerEvent = null;
+
     /**
      * {@inheritDoc}
      */
@@ -113,6 +137,114 @@ public class DefaultTcpSessionConfig extends AbstractIoSessionConfig implements
         this.soLinger = soLinger;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getGatheringWriteMaxBuffers() {
+        return gatheringWriteMaxBuffers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setGatheringWriteMaxBuffers(int maxBuffers) {
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException("maxBuffers: " + maxBuffers + " (expected: 1+)");
+        }
+
+        this.gatheringWriteMaxBuffers = maxBuffers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getGatheringWriteMaxBytes() {
+        return gatheringWriteMaxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setGatheringWriteMaxBytes(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + " (expected: 1+)");
+        }
+
+        this.gatheringWriteMaxBytes = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isBatchedFlush() {
+        return batchedFlush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBatchedFlush(boolean batchedFlush) {
+        this.batchedFlush = batchedFlush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isLoopConfinedWrite() {
+        return loopConfinedWrite;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLoopConfinedWrite(boolean loopConfinedWrite) {
+        this.loopConfinedWrite = loopConfinedWrite;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isAdaptiveReadSize() {
+        return adaptiveReadSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAdaptiveReadSize(boolean adaptiveReadSize) {
+        this.adaptiveReadSize = adaptiveReadSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getMaxReadBytesPerEvent() {
+        return maxReadBytesPerEvent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxReadBytesPerEvent(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + " (expected: 1+)");
+        }
+
+        this.maxReadBytesPerEvent = maxBytes;
+    }
+
     /**
      * Inject a {@link SSLContex} valid for the session. This {@link SSLContex} will be used
      * by the SSLEngine to handle secured connections.<br/>
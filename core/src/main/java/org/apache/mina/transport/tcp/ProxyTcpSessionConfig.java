@@ -48,6 +48,37 @@ public class ProxyTcpSessionConfig implements TcpSessionConfig {
 
     private long idleTimeWrite = -1;
 
+    /** The default maximum number of buffers gathered in a single write */
+    public static final int DEFAULT_GATHERING_WRITE_MAX_BUFFERS = 64;
+
+    /** The default maximum number of bytes gathered in a single write */
+    public static final int DEFAULT_GATHERING_WRITE_MAX_BYTES = 256 * 1024;
+
+    private int gatheringWriteMaxBuffers = DEFAULT_GATHERING_WRITE_MAX_BUFFERS;
+
+    private int gatheringWriteMaxBytes = DEFAULT_GATHERING_WRITE_MAX_BYTES;
+
+    private boolean batchedFlush = false;
+
+    private boolean loopConfinedWrite = false;
+
+    /** The default maximum number of bytes read per read event */
+    public static final int DEFAULT_MAX_READ_BYTES_PER_EVENT = 256 * 1024;
+
+    private boolean adaptiveReadSize = true;
+
+    private int maxReadBytesPerEvent = DEFAULT_MAX_READ_BYTES_PER_EVENT;
+
+    /** The default write queue size above which the session becomes unwritable */
+    public static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+
+    /** The default write queue size below which the session becomes writable again */
+    public static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+
+    private int writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+
+    private int writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+
     /**
      * {@inheritDoc}
      */
@@ -293,6 +324,162 @@ public class ProxyTcpSessionConfig implements TcpSessionConfig {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getGatheringWriteMaxBuffers() {
+        return gatheringWriteMaxBuffers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setGatheringWriteMaxBuffers(int maxBuffers) {
+        LOG.debug("set gathering write max buffers '{}' for session '{}'", maxBuffers, this);
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException("maxBuffers: " + maxBuffers + " (expected: 1+)");
+        }
+
+        this.gatheringWriteMaxBuffers = maxBuffers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getGatheringWriteMaxBytes() {
+        return gatheringWriteMaxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setGatheringWriteMaxBytes(int maxBytes) {
+        LOG.debug("set gathering write max bytes '{}' for session '{}'", maxBytes, this);
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + " (expected: 1+)");
+        }
+
+        this.gatheringWriteMaxBytes = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isBatchedFlush() {
+        return batchedFlush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBatchedFlush(boolean batchedFlush) {
+        LOG.debug("set batched flush '{}' for session '{}'", batchedFlush, this);
+        this.batchedFlush = batchedFlush;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isLoopConfinedWrite() {
+        return loopConfinedWrite;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLoopConfinedWrite(boolean loopConfinedWrite) {
+        LOG.debug("set loop confined write '{}' for session '{}'", loopConfinedWrite, this);
+        this.loopConfinedWrite = loopConfinedWrite;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean isAdaptiveReadSize() {
+        return adaptiveReadSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAdaptiveReadSize(boolean adaptiveReadSize) {
+        LOG.debug("set adaptive read size '{}' for session '{}'", adaptiveReadSize, this);
+        this.adaptiveReadSize = adaptiveReadSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getMaxReadBytesPerEvent() {
+        return maxReadBytesPerEvent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxReadBytesPerEvent(int maxBytes) {
+        LOG.debug("set max read bytes per event '{}' for session '{}'", maxBytes, this);
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + " (expected: 1+)");
+        }
+
+        this.maxReadBytesPerEvent = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteBufferHighWaterMark(int highWaterMark) {
+        LOG.debug("set write buffer high water mark '{}' for session '{}'", highWaterMark, this);
+        if (highWaterMark < 0) {
+            throw new IllegalArgumentException("highWaterMark: " + highWaterMark + " (expected: 0+)");
+        }
+
+        this.writeBufferHighWaterMark = highWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Integer getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWriteBufferLowWaterMark(int lowWaterMark) {
+        LOG.debug("set write buffer low water mark '{}' for session '{}'", lowWaterMark, this);
+        if (lowWaterMark < 0) {
+            throw new IllegalArgumentException("lowWaterMark: " + lowWaterMark + " (expected: 0+)");
+        }
+
+        this.writeBufferLowWaterMark = lowWaterMark;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -83,6 +83,104 @@ public interface TcpSessionConfig extends IoSessionConfig {
      */
     void setSoLinger(int soLinger);
 
+    /**
+     * Returns the maximum number of queued messages gathered into a single write operation when the session write
+     * queue is flushed.
+     * 
+     * @return the maximum number of buffers written at once, or <code>null</code> if the default value is used
+     */
+    Integer getGatheringWriteMaxBuffers();
+
+    /**
+     * Sets the maximum number of queued messages gathered into a single write operation when the session write queue
+     * is flushed. Use <code>1</code> to write the queued messages one by one.
+     * 
+     * @param maxBuffers the maximum number of buffers written at once
+     */
+    void setGatheringWriteMaxBuffers(int maxBuffers);
+
+    /**
+     * Returns the maximum number of bytes gathered into a single write operation when the session write queue is
+     * flushed. A single message bigger than this limit is still written in one operation.
+     * 
+     * @return the maximum number of bytes written at once, or <code>null</code> if the default value is used
+     */
+    Integer getGatheringWriteMaxBytes();
+
+    /**
+     * Sets the maximum number of bytes gathered into a single write operation when the session write queue is
+     * flushed.
+     * 
+     * @param maxBytes the maximum number of bytes written at once
+     */
+    void setGatheringWriteMaxBytes(int maxBytes);
+
+    /**
+     * Tells if the messages written by the selector loop while it processes I/O events (for instance by a handler
+     * replying from <code>messageReceived</code>) are only flushed once all the ready sessions have been processed.
+     * 
+     * @return <code>true</code> if the flush is batched, or <code>null</code> if the default value is used
+     */
+    Boolean isBatchedFlush();
+
+    /**
+     * Sets if the messages written by the selector loop while it processes I/O events are only flushed once all the
+     * ready sessions have been processed, so that they are gathered into a single write operation.
+     * 
+     * @param batchedFlush <code>true</code> to batch the flushes
+     */
+    void setBatchedFlush(boolean batchedFlush);
+
+    /**
+     * Tells if the messages written by threads other than the session selector loop (for instance by the handlers
+     * called by an {@link org.apache.mina.service.executor.IoHandlerExecutor}) are handed to the selector loop, which
+     * gathers them into a single flush, instead of being written by the calling thread.
+     * 
+     * @return <code>true</code> if the writes are confined to the selector loop, or <code>null</code> if the default
+     *         value is used
+     */
+    Boolean isLoopConfinedWrite();
+
+    /**
+     * Sets if the messages written by threads other than the session selector loop are handed to the selector loop.
+     * 
+     * @param loopConfinedWrite <code>true</code> to confine the writes to the selector loop
+     */
+    void setLoopConfinedWrite(boolean loopConfinedWrite);
+
+    /**
+     * Tells if the number of bytes asked for each read is adapted to the size of the previous reads of the session,
+     * instead of always filling the selector loop read buffer.
+     * 
+     * @return <code>true</code> if the read size is adaptive, or <code>null</code> if the default value is used
+     */
+    Boolean isAdaptiveReadSize();
+
+    /**
+     * Sets if the number of bytes asked for each read grows or shrinks depending on the size of the previous reads of
+     * the session.
+     * 
+     * @param adaptiveReadSize <code>true</code> to adapt the read size
+     */
+    void setAdaptiveReadSize(boolean adaptiveReadSize);
+
+    /**
+     * Returns the maximum number of bytes read for a session when the selector loop reports it readable. The session
+     * is read several times until this budget is consumed or the socket has no more data, so a bulk transfer needs less
+     * loop iterations while the other sessions of the loop still get their turn.
+     * 
+     * @return the maximum number of bytes read per read event, or <code>null</code> if the default value is used
+     */
+    Integer getMaxReadBytesPerEvent();
+
+    /**
+     * Sets the maximum number of bytes read for a session when the selector loop reports it readable. A budget smaller
+     * than the selector loop read buffer means a single read per event.
+     * 
+     * @param maxBytes the maximum number of bytes read per read event
+     */
+    void setMaxReadBytesPerEvent(int maxBytes);
+
     /**
      * Tells if the session provides some encryption (SSL/TLS)
      * 
@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+/**
+ * A {@link Clock} giving the time read by the last {@link #update()}. A selector loop updates its clock once per
+ * select : all the events processed by the loop in an iteration share the same time, for the cost of a volatile read.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachedClock implements Clock {
+    /** The clock read on each update */
+    private final Clock source;
+
+    private volatile long currentTimeMillis;
+
+    private volatile long nanoTime;
+
+    /**
+     * Create a clock caching the system time.
+     */
+    public CachedClock() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * Create a clock caching the time of another clock.
+     * 
+     * @param source the clock read on each update
+     */
+    public CachedClock(Clock source) {
+        this.source = source;
+        update();
+    }
+
+    /**
+     * Read the time of the source clock. Called by the owner of the clock only.
+     */
+    public void update() {
+        currentTimeMillis = source.currentTimeMillis();
+        nanoTime = source.nanoTime();
+    }
+
+    /**
+     * @return the clock read on each update
+     */
+    public Clock getSource() {
+        return source;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Clock} only moving when asked to, for driving the time dependent code (idle detection, timeouts)
+ * deterministically in tests.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ManualClock implements Clock {
+    /** The current time, in ns */
+    private volatile long nanos;
+
+    /**
+     * Create a clock starting at the current system time.
+     */
+    public ManualClock() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * Create a clock starting at a given time.
+     * 
+     * @param currentTimeMillis the initial time in ms
+     */
+    public ManualClock(long currentTimeMillis) {
+        nanos = TimeUnit.MILLISECONDS.toNanos(currentTimeMillis);
+    }
+
+    /**
+     * Move the clock forward.
+     * 
+     * @param duration the duration to add to the time
+     * @param unit the unit of the duration
+     */
+    public synchronized void advance(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration: " + duration + " (expected: 0+)");
+        }
+
+        nanos += unit.toNanos(duration);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+}
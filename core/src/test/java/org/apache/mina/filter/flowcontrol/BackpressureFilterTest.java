@@ -0,0 +1,193 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.filter.flowcontrol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.transport.nio.NioTcpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the write queue watermarks of a session, and the {@link BackpressureFilter} suspending the reads of the linked
+ * sessions.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BackpressureFilterTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private static final int HIGH_WATER_MARK = 64 * 1024;
+
+    private static final int LOW_WATER_MARK = 16 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final BlockingQueue<IoSession> openedSessions = new LinkedBlockingQueue<IoSession>();
+
+    private final BlockingQueue<Boolean> writabilityChanges = new LinkedBlockingQueue<Boolean>();
+
+    private NioTcpServer server;
+
+    private Socket writerClient;
+
+    private Socket readerClient;
+
+    @Before
+    public void setup() throws IOException {
+        server = new NioTcpServer();
+        server.getSessionConfig().setWriteBufferHighWaterMark(HIGH_WATER_MARK);
+        server.getSessionConfig().setWriteBufferLowWaterMark(LOW_WATER_MARK);
+        server.setFilters(new BackpressureFilter());
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedSessions.add(session);
+            }
+
+            @Override
+            public void sessionWritabilityChanged(IoSession session, boolean writable) {
+                writabilityChanges.add(writable);
+            }
+        });
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        writerClient = new Socket("127.0.0.1", port);
+        writerClient.setSoTimeout(WAIT_TIME);
+        readerClient = new Socket("127.0.0.1", port);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        writerClient.close();
+        readerClient.close();
+        server.unbind();
+    }
+
+    /**
+     * Get the server sessions of the writer and of the reader clients, the sessions being opened in any order
+     */
+    private IoSession[] pollSessions() throws InterruptedException {
+        IoSession first = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+        IoSession second = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        if (((InetSocketAddress) first.getRemoteAddress()).getPort() == writerClient.getLocalPort()) {
+            return new IoSession[] { first, second };
+        }
+
+        return new IoSession[] { second, first };
+    }
+
+    /**
+     * Queue chunks in the suspended session until it becomes unwritable
+     */
+    private int fillWriteQueue(IoSession session) {
+        session.suspendWrite();
+        int written = 0;
+
+        while (written <= HIGH_WATER_MARK) {
+            session.write(ByteBuffer.allocate(CHUNK_SIZE));
+            written += CHUNK_SIZE;
+            assertEquals(written, session.getWriteQueueBytes());
+            assertEquals(written <= HIGH_WATER_MARK, session.isWritable());
+        }
+
+        return written;
+    }
+
+    private void drainWriteQueue(IoSession session, int written) throws IOException {
+        session.resumeWrite();
+        DataInputStream in = new DataInputStream(writerClient.getInputStream());
+        in.readFully(new byte[written]);
+    }
+
+    @Test
+    public void writabilityChanges() throws Exception {
+        IoSession writer = pollSessions()[0];
+        assertTrue(writer.isWritable());
+        assertEquals(0, writer.getWriteQueueBytes());
+
+        int written = fillWriteQueue(writer);
+        assertEquals(Boolean.FALSE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        drainWriteQueue(writer, written);
+        assertEquals(Boolean.TRUE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(writer.isWritable());
+        assertEquals(0, writer.getWriteQueueBytes());
+        assertTrue(writabilityChanges.isEmpty());
+    }
+
+    @Test
+    public void linkedReadSuspension() throws Exception {
+        IoSession[] sessions = pollSessions();
+        IoSession writer = sessions[0];
+        IoSession reader = sessions[1];
+        BackpressureFilter.link(writer, reader);
+
+        int written = fillWriteQueue(writer);
+        assertEquals(Boolean.FALSE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(reader.isReadSuspended());
+
+        drainWriteQueue(writer, written);
+        assertEquals(Boolean.TRUE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertFalse(reader.isReadSuspended());
+
+        // an unlinked reader is not suspended anymore
+        BackpressureFilter.unlink(writer, reader);
+        written = fillWriteQueue(writer);
+        assertEquals(Boolean.FALSE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertFalse(reader.isReadSuspended());
+        drainWriteQueue(writer, written);
+    }
+
+    @Test
+    public void closedWriterReleasesReaders() throws Exception {
+        IoSession[] sessions = pollSessions();
+        IoSession writer = sessions[0];
+        IoSession reader = sessions[1];
+
+        fillWriteQueue(writer);
+        assertEquals(Boolean.FALSE, writabilityChanges.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        // linked while the writer is already unwritable
+        BackpressureFilter.link(writer, reader);
+        assertTrue(reader.isReadSuspended());
+
+        // an immediate close fires the closed event synchronously
+        writer.close(true);
+        assertFalse(reader.isReadSuspended());
+    }
+}
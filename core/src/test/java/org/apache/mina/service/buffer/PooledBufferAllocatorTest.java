@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PooledBufferAllocator}
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PooledBufferAllocatorTest {
+
+    @Test
+    public void allocateRoundsUpToSizeClass() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4);
+
+        ByteBuffer buffer = allocator.allocate(300);
+        assertTrue(buffer.isDirect());
+        assertEquals(0, buffer.position());
+        assertEquals(300, buffer.limit());
+        assertEquals(512, buffer.capacity());
+
+        assertEquals(256, allocator.allocate(1).capacity());
+        assertEquals(256, allocator.allocate(256).capacity());
+        assertEquals(4096, allocator.allocate(4096).capacity());
+        assertEquals(256 + 512 + 256 + 4096, allocator.getUsedBytes());
+    }
+
+    @Test
+    public void releasedBufferIsReused() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4);
+
+        ByteBuffer buffer = allocator.allocate(1000);
+        buffer.putInt(42);
+        allocator.release(buffer);
+        assertEquals(0, allocator.getUsedBytes());
+
+        ByteBuffer reused = allocator.allocate(800);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(800, reused.limit());
+        assertEquals(1, allocator.getCacheHitCount());
+        assertEquals(1, allocator.getSlabCount());
+    }
+
+    @Test
+    public void slabIsCarvedIntoIndependentBuffers() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 4096, 0);
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+        for (int i = 0; i < 16; i++) {
+            ByteBuffer buffer = allocator.allocate(256);
+            buffer.putInt(0, i);
+            buffers.add(buffer);
+        }
+
+        // a single slab of 4096 bytes holds 16 buffers of 256 bytes
+        assertEquals(1, allocator.getSlabCount());
+        assertEquals(4096, allocator.getReservedBytes());
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, buffers.get(i).getInt(0));
+        }
+
+        allocator.allocate(256);
+        assertEquals(2, allocator.getSlabCount());
+    }
+
+    @Test
+    public void bigBufferIsNotPooled() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4);
+
+        ByteBuffer buffer = allocator.allocate(5000);
+        assertEquals(5000, buffer.capacity());
+        assertEquals(1, allocator.getUnpooledAllocationCount());
+        assertEquals(0, allocator.getUsedBytes());
+
+        allocator.release(buffer);
+        assertEquals(0, allocator.getReleaseCount());
+        assertNotSame(buffer, allocator.allocate(5000));
+    }
+
+    @Test
+    public void bufferReleasedByAnotherThreadIsReused() throws InterruptedException {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 256, 0);
+        final ByteBuffer buffer = allocator.allocate(256);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                allocator.release(buffer);
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertSame(buffer, allocator.allocate(256));
+        assertEquals(1, allocator.getSlabCount());
+    }
+
+    @Test
+    public void doubleReleaseIsRejected() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4, true);
+
+        ByteBuffer buffer = allocator.allocate(256);
+        allocator.release(buffer);
+        allocator.release(buffer);
+        assertEquals(1, allocator.getReleaseCount());
+        assertEquals(0, allocator.getUsedBytes());
+
+        // the buffer must be handed only once
+        assertSame(buffer, allocator.allocate(256));
+        assertNotSame(buffer, allocator.allocate(256));
+    }
+
+    @Test
+    public void foreignBufferIsRejected() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4, true);
+
+        ByteBuffer buffer = allocator.allocate(256);
+        ByteBuffer foreign = ByteBuffer.allocateDirect(256);
+        allocator.release(foreign);
+        assertEquals(0, allocator.getReleaseCount());
+        assertEquals(256, allocator.getUsedBytes());
+
+        // a buffer with the same content is not the allocated one
+        allocator.release(buffer.duplicate());
+        assertEquals(0, allocator.getReleaseCount());
+
+        allocator.release(buffer);
+        assertEquals(1, allocator.getReleaseCount());
+        assertNotSame(foreign, allocator.allocate(256));
+    }
+
+    @Test
+    public void bufferNotMatchingSizeClassIsRejected() {
+        PooledBufferAllocator allocator = new PooledBufferAllocator(256, 4096, 16 * 1024, 4, false);
+
+        ByteBuffer buffer = allocator.allocate(256);
+        allocator.release(ByteBuffer.allocateDirect(300));
+        assertEquals(0, allocator.getReleaseCount());
+        assertEquals(256, allocator.getUsedBytes());
+
+        allocator.release(buffer);
+        assertEquals(1, allocator.getReleaseCount());
+        assertEquals(0, allocator.getUsedBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeClassMustBePowerOfTwo() {
+        new PooledBufferAllocator(300, 4096, 16 * 1024, 4);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the {@link OverloadPolicy} of the {@link OrderedHandlerExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class OrderedHandlerExecutorOverloadTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private final AtomicInteger suspendCount = new AtomicInteger();
+
+    private final AtomicInteger resumeCount = new AtomicInteger();
+
+    private volatile boolean suspendSupported = true;
+
+    private final IoSession session = newSession();
+
+    private final List<String> executed = new ArrayList<String>();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void reject_new_event() throws InterruptedException {
+        OrderedHandlerExecutor executor = new OrderedHandlerExecutor(1, 2, OverloadPolicy.REJECT);
+        final List<Event> rejected = new ArrayList<Event>();
+        executor.setRejectedEventHandler(new RejectedEventHandler() {
+            @Override
+            public void eventRejected(Event event) {
+                rejected.add(event);
+            }
+        });
+
+        blockWorker(executor);
+        executor.execute(new TestEvent("1"));
+        executor.execute(new TestEvent("2"));
+        Event third = new TestEvent("3");
+        executor.execute(third);
+        // never dropped
+        executor.execute(new TestOpenEvent("open"));
+
+        assertEquals(1, rejected.size());
+        assertSame(third, rejected.get(0));
+        assertEquals(1, executor.getRejectedEventCount());
+        assertEquals(3, executor.getWorkerBacklog(0));
+
+        assertExecuted(executor, "blocking", "1", "2", "open");
+    }
+
+    @Test
+    public void drop_oldest_event() throws InterruptedException {
+        OrderedHandlerExecutor executor = new OrderedHandlerExecutor(1, 2, OverloadPolicy.DROP_OLDEST);
+
+        blockWorker(executor);
+        executor.execute(new TestOpenEvent("open"));
+        executor.execute(new TestEvent("1"));
+        executor.execute(new TestEvent("2"));
+
+        assertEquals(1, executor.getRejectedEventCount());
+        assertExecuted(executor, "blocking", "open", "2");
+    }
+
+    @Test
+    public void suspend_read_until_backlog_drained() throws InterruptedException {
+        OrderedHandlerExecutor executor = new OrderedHandlerExecutor(1, 1, OverloadPolicy.SUSPEND_READ);
+
+        blockWorker(executor);
+        executor.execute(new TestEvent("1"));
+        assertEquals(0, suspendCount.get());
+
+        executor.execute(new TestEvent("2"));
+        executor.execute(new TestEvent("3"));
+
+        // queued anyway, the reads are suspended once
+        assertEquals(1, suspendCount.get());
+        assertEquals(0, resumeCount.get());
+        assertEquals(3, executor.getWorkerBacklog(0));
+        assertEquals(4, executor.getSessionBacklog(session));
+
+        assertExecuted(executor, "blocking", "1", "2", "3");
+        assertEquals(1, resumeCount.get());
+        assertEquals(0, executor.getSessionBacklog(session));
+    }
+
+    @Test
+    public void reject_when_read_cannot_be_suspended() throws InterruptedException {
+        OrderedHandlerExecutor executor = new OrderedHandlerExecutor(1, 1, OverloadPolicy.SUSPEND_READ);
+        suspendSupported = false;
+
+        blockWorker(executor);
+        executor.execute(new TestEvent("1"));
+
+        // the session refuses the suspension : this event is kept, the next ones are rejected
+        executor.execute(new TestEvent("2"));
+        executor.execute(new TestEvent("3"));
+
+        assertEquals(1, executor.getRejectedEventCount());
+        assertExecuted(executor, "blocking", "1", "2");
+        assertEquals(0, resumeCount.get());
+    }
+
+    /**
+     * Submit an event blocking the worker until released, and wait for its execution
+     */
+    private void blockWorker(OrderedHandlerExecutor executor) throws InterruptedException {
+        executor.execute(new TestEvent("blocking") {
+            @Override
+            public void visit(EventVisitor visitor) {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                super.visit(visitor);
+            }
+        });
+
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    private void assertExecuted(OrderedHandlerExecutor executor, String... events) throws InterruptedException {
+        release.countDown();
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+
+        // the backlog is decremented after the execution
+        while ((executor.getSessionBacklog(session) > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+
+        synchronized (executed) {
+            assertEquals(Arrays.asList(events), executed);
+        }
+    }
+
+    /**
+     * A session only supporting the id, the attributes and the suspension of the reads
+     */
+    private IoSession newSession() {
+        final Map<Object, Object> attributes = new HashMap<Object, Object>();
+
+        return (IoSession) Proxy.newProxyInstance(IoSession.class.getClassLoader(), new Class<?>[] { IoSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+
+                        if (name.equals("getId")) {
+                            return 1L;
+                        } else if (name.equals("getAttribute")) {
+                            synchronized (attributes) {
+                                return attributes.get(args[0]);
+                            }
+                        } else if (name.equals("setAttribute")) {
+                            synchronized (attributes) {
+                                return attributes.put(args[0], args[1]);
+                            }
+                        } else if (name.equals("suspendRead")) {
+                            if (!suspendSupported) {
+                                throw new IllegalStateException("not supported");
+                            }
+
+                            suspendCount.incrementAndGet();
+                            return null;
+                        } else if (name.equals("resumeRead")) {
+                            resumeCount.incrementAndGet();
+                            return null;
+                        } else if (name.equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        } else if (name.equals("equals")) {
+                            return proxy == args[0];
+                        } else if (name.equals("toString")) {
+                            return "test session";
+                        }
+
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * A received message, recording its execution instead of calling the handler
+     */
+    private class TestEvent extends ReceiveEvent {
+        private final String name;
+
+        TestEvent(String name) {
+            super(session, name);
+            this.name = name;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            synchronized (executed) {
+                executed.add(name);
+            }
+        }
+    }
+
+    /**
+     * A session opening, recording its execution instead of calling the handler
+     */
+    private class TestOpenEvent extends OpenEvent {
+        private final String name;
+
+        TestOpenEvent(String name) {
+            super(session);
+            this.name = name;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            synchronized (executed) {
+                executed.add(name);
+            }
+        }
+    }
+}
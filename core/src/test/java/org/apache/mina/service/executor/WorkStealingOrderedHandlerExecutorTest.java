@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link WorkStealingOrderedHandlerExecutor}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WorkStealingOrderedHandlerExecutorTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_max_events_per_run() {
+        new WorkStealingOrderedHandlerExecutor(1, 0);
+    }
+
+    @Test
+    public void events_of_a_session_run_in_order() throws InterruptedException {
+        WorkStealingOrderedHandlerExecutor executor = new WorkStealingOrderedHandlerExecutor(4, 2);
+        int sessionCount = 8;
+        int eventCount = 1000;
+        CountDownLatch done = new CountDownLatch(sessionCount * eventCount);
+        List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        List<IoSession> sessions = new ArrayList<IoSession>();
+
+        for (int i = 0; i < sessionCount; i++) {
+            runs.add(new ArrayList<Integer>());
+            sessions.add(newSession(i));
+        }
+
+        for (int event = 0; event < eventCount; event++) {
+            for (int i = 0; i < sessionCount; i++) {
+                executor.execute(new TestEvent(sessions.get(i), event, runs.get(i), done));
+            }
+        }
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < sessionCount; i++) {
+            // for the visibility of the additions made by the pool threads
+            synchronized (runs.get(i)) {
+                assertEquals(eventCount, runs.get(i).size());
+
+                for (int event = 0; event < eventCount; event++) {
+                    assertEquals(Integer.valueOf(event), runs.get(i).get(event));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void busy_session_does_not_block_the_others() throws InterruptedException {
+        WorkStealingOrderedHandlerExecutor executor = new WorkStealingOrderedHandlerExecutor(2, 16);
+        final CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // the first session is stuck in its handler
+        executor.execute(new TestEvent(newSession(0), 0, new ArrayList<Integer>(), null) {
+            @Override
+            public void visit(EventVisitor visitor) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try {
+            // the same id modulo the number of threads
+            executor.execute(new TestEvent(newSession(2), 0, new ArrayList<Integer>(), done));
+            assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * A session only supporting the id and the attributes
+     */
+    private static IoSession newSession(final long id) {
+        final Map<Object, Object> attributes = new HashMap<Object, Object>();
+
+        return (IoSession) Proxy.newProxyInstance(IoSession.class.getClassLoader(), new Class<?>[] { IoSession.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+
+                        if (name.equals("getId")) {
+                            return id;
+                        } else if (name.equals("getAttribute")) {
+                            synchronized (attributes) {
+                                return attributes.get(args[0]);
+                            }
+                        } else if (name.equals("setAttribute")) {
+                            synchronized (attributes) {
+                                return attributes.put(args[0], args[1]);
+                            }
+                        } else if (name.equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        } else if (name.equals("equals")) {
+                            return proxy == args[0];
+                        } else if (name.equals("toString")) {
+                            return "session " + id;
+                        }
+
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private static class TestEvent implements Event {
+        private final IoSession session;
+
+        private final int index;
+
+        private final List<Integer> runs;
+
+        private final CountDownLatch done;
+
+        TestEvent(IoSession session, int index, List<Integer> runs, CountDownLatch done) {
+            this.session = session;
+            this.index = index;
+            this.runs = runs;
+            this.done = done;
+        }
+
+        @Override
+        public IoSession getSession() {
+            return session;
+        }
+
+        @Override
+        public void visit(EventVisitor visitor) {
+            synchronized (runs) {
+                runs.add(index);
+            }
+
+            done.countDown();
+        }
+    }
+}
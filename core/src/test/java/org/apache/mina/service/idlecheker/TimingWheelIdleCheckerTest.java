@@ -0,0 +1,294 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.service.idlecheker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.IdleStatus;
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoService;
+import org.apache.mina.api.IoSessionConfig;
+import org.apache.mina.service.idlechecker.IdleChecker;
+import org.apache.mina.service.idlechecker.TimingWheelIdleChecker;
+import org.apache.mina.session.AbstractIoSession;
+import org.apache.mina.session.AbstractIoSessionConfig;
+import org.apache.mina.session.WriteRequest;
+import org.apache.mina.transport.nio.NioTcpServer;
+import org.apache.mina.util.ManualClock;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TimingWheelIdleChecker}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TimingWheelIdleCheckerTest {
+
+    private static final long TICK = 10;
+
+    private final IoService service = new NioTcpServer();
+
+    private final TimingWheelIdleChecker lazyChecker = new TimingWheelIdleChecker(TICK, 64, true);
+
+    private final TimingWheelIdleChecker eagerChecker = new TimingWheelIdleChecker(TICK, 64, false);
+
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    public void process_on_empty_wheel() {
+        assertEquals(0, lazyChecker.processIdleSession(now));
+    }
+
+    @Test
+    public void wheel_size_is_a_power_of_two() {
+        assertEquals(64, new TimingWheelIdleChecker(TICK, 33, true).getWheelSize());
+        assertEquals(1, new TimingWheelIdleChecker(TICK, 1, true).getWheelSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_tick() {
+        new TimingWheelIdleChecker(0, 64, true);
+    }
+
+    @Test
+    public void dont_send_premature_events() {
+        for (TimingWheelIdleChecker checker : new TimingWheelIdleChecker[] { lazyChecker, eagerChecker }) {
+            DummySession session = new DummySession(service, checker);
+            session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+
+            checker.sessionRead(session, now);
+
+            assertEquals(0, checker.processIdleSession(now + 20));
+            assertEquals(0, checker.processIdleSession(now + 49));
+            assertEquals(0, session.readIdleCount);
+            assertEquals(1, checker.processIdleSession(now + 60));
+            assertEquals(1, session.readIdleCount);
+            assertEquals(0, session.writeIdleCount);
+
+            // not idle again without a new event
+            assertEquals(0, checker.processIdleSession(now + 200));
+        }
+    }
+
+    @Test
+    public void write_event() {
+        DummySession session = new DummySession(service, lazyChecker);
+        session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE, 50L);
+
+        lazyChecker.sessionWritten(session, now);
+
+        assertEquals(1, lazyChecker.processIdleSession(now + 100));
+        assertEquals(0, session.readIdleCount);
+        assertEquals(1, session.writeIdleCount);
+    }
+
+    @Test
+    public void active_session_is_not_idle() {
+        for (TimingWheelIdleChecker checker : new TimingWheelIdleChecker[] { lazyChecker, eagerChecker }) {
+            DummySession session = new DummySession(service, checker);
+            session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+
+            for (long time = now; time < now + 500; time += 10) {
+                checker.sessionRead(session, time);
+                assertEquals(0, checker.processIdleSession(time));
+            }
+
+            assertEquals(0, session.readIdleCount);
+
+            // idle 50ms after the last event
+            assertEquals(0, checker.processIdleSession(now + 520));
+            assertEquals(1, checker.processIdleSession(now + 550));
+            assertEquals(1, session.readIdleCount);
+        }
+    }
+
+    @Test
+    public void idle_detection_driven_by_a_manual_clock() {
+        ManualClock clock = new ManualClock(now);
+        DummySession session = new DummySession(service, lazyChecker);
+        session.setClock(clock);
+        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+
+        lazyChecker.sessionRead(session, session.getClock().currentTimeMillis());
+
+        clock.advance(40, TimeUnit.MILLISECONDS);
+        assertEquals(0, lazyChecker.processIdleSession(clock.currentTimeMillis()));
+
+        clock.advance(20, TimeUnit.MILLISECONDS);
+        assertEquals(1, lazyChecker.processIdleSession(clock.currentTimeMillis()));
+        assertEquals(1, session.readIdleCount);
+    }
+
+    @Test
+    public void idle_time_longer_than_a_turn() {
+        DummySession session = new DummySession(service, eagerChecker);
+        // the wheel turns every 640 ms
+        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 2000L);
+
+        eagerChecker.sessionRead(session, now);
+
+        for (long time = now; time < now + 1990; time += 10) {
+            assertEquals(0, eagerChecker.processIdleSession(time));
+        }
+
+        assertEquals(1, eagerChecker.processIdleSession(now + 2010));
+    }
+
+    @Test
+    public void catching_up_late_checks() {
+        DummySession session = new DummySession(service, lazyChecker);
+        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+
+        lazyChecker.sessionRead(session, now);
+
+        // several turns without any check
+        assertEquals(1, lazyChecker.processIdleSession(now + 5000));
+    }
+
+    @Test
+    public void disabled_idle_detection() {
+        DummySession session = new DummySession(service, lazyChecker);
+        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+        lazyChecker.sessionRead(session, now);
+
+        session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, -1L);
+        assertEquals(0, lazyChecker.processIdleSession(now + 100));
+        assertEquals(0, session.readIdleCount);
+    }
+
+    @Test
+    public void closed_session_is_unlinked() {
+        for (TimingWheelIdleChecker checker : new TimingWheelIdleChecker[] { lazyChecker, eagerChecker }) {
+            DummySession session = new DummySession(service, checker);
+            session.getConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 50L);
+            session.getConfig().setIdleTimeInMillis(IdleStatus.WRITE_IDLE, 50L);
+
+            checker.sessionRead(session, now);
+            checker.sessionWritten(session, now);
+            checker.sessionClosed(session);
+
+            // the entries are not in the wheel anymore
+            assertEquals(0, checker.processIdleSession(now + 100));
+            assertEquals(0, session.readIdleCount);
+            assertEquals(0, session.writeIdleCount);
+        }
+    }
+
+    private class DummySession extends AbstractIoSession {
+
+        int readIdleCount = 0;
+
+        int writeIdleCount = 0;
+
+        private DummySession(IoService service, IdleChecker checker) {
+            super(service, checker);
+        }
+
+        @Override
+        public IoFuture<Void> close(boolean immediately) {
+            return null;
+        }
+
+        IoSessionConfig config = new AbstractIoSessionConfig() {
+        };
+
+        @Override
+        public IoSessionConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void processSessionIdle(IdleStatus status) {
+            if (status == IdleStatus.READ_IDLE) {
+                readIdleCount++;
+            }
+            if (status == IdleStatus.WRITE_IDLE) {
+                writeIdleCount++;
+            }
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return false;
+        }
+
+        @Override
+        public boolean isReadSuspended() {
+            return false;
+        }
+
+        @Override
+        public boolean isWriteSuspended() {
+            return false;
+        }
+
+        @Override
+        public void resumeRead() {
+        }
+
+        @Override
+        public void resumeWrite() {
+        }
+
+        @Override
+        public void suspendRead() {
+        }
+
+        @Override
+        public void suspendWrite() {
+        }
+
+        @Override
+        public boolean isSecuring() {
+            return false;
+        }
+
+        @Override
+        public boolean isSecured() {
+            return false;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public WriteRequest enqueueWriteRequest(WriteRequest writeRequest) {
+            return null;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.mina.session;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
@@ -33,12 +34,15 @@ import static org.mockito.Mockito.when;
 
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.api.AbstractIoFilter;
 import org.apache.mina.api.IoFilter;
 import org.apache.mina.api.IoFuture;
 import org.apache.mina.api.IoService;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.api.IoSession.SessionState;
 import org.apache.mina.api.IoSessionConfig;
 import org.apache.mina.filterchain.ReadFilterChainController;
 import org.apache.mina.filterchain.WriteFilterChainController;
@@ -273,6 +277,68 @@ public class AbstractIoSessionTest {
         assertEquals(1024, session.getWrittenBytes());
     }
 
+    @Test
+    public void state_transitions() {
+        final DummySession session = new DummySession(service);
+        assertEquals(SessionState.CREATED, session.getState());
+
+        session.changeState(SessionState.CONNECTED);
+        assertEquals(SessionState.CONNECTED, session.getState());
+
+        // the expected state is not the current one
+        assertFalse(session.changeState(SessionState.SECURED, SessionState.CLOSING));
+        assertEquals(SessionState.CONNECTED, session.getState());
+
+        assertTrue(session.changeState(SessionState.CONNECTED, SessionState.CLOSING));
+        assertEquals(SessionState.CLOSING, session.getState());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalid_state_transition() {
+        new DummySession(service).changeState(SessionState.CLOSED);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalid_expected_state_transition() {
+        new DummySession(service).changeState(SessionState.CREATED, SessionState.SECURED);
+    }
+
+    @Test
+    public void concurrent_close_transition() throws InterruptedException {
+        final DummySession session = new DummySession(service);
+        session.changeState(SessionState.CONNECTED);
+        final AtomicInteger winners = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    if (session.changeState(SessionState.CONNECTED, SessionState.CLOSING)) {
+                        winners.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, winners.get());
+        assertEquals(SessionState.CLOSING, session.getState());
+    }
+
     private class PassthruFilter extends AbstractIoFilter {
 
     }
@@ -225,4 +225,75 @@ public class AttributeContainerTest {
         exception.expectMessage("Parameter >key< must not be null!");
         container.removeAttribute(null);
     }
+
+    /**
+     * Test if two equal keys, created separately, share the same value.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void equalKeysShareTheValue() throws Exception {
+        container.setAttribute(ATTRIBUTE_KEY, 123);
+        AttributeKey<Integer> sameKey = createKey(Integer.class, "myKey");
+        assertThat(sameKey.getIndex(), is(ATTRIBUTE_KEY.getIndex()));
+        assertThat(container.getAttribute(sameKey), is(123));
+    }
+
+    /**
+     * Test if the keys created once all the indexes are allocated are still usable.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void keysWithoutIndex() throws Exception {
+        AttributeKey<Integer> key;
+        int i = 0;
+
+        do {
+            key = createKey(Integer.class, "unindexed" + i++);
+        } while (key.getIndex() >= 0);
+
+        container.setAttribute(ATTRIBUTE_KEY, 123);
+        container.setAttribute(key, 456);
+        assertThat(container.getAttribute(key), is(456));
+        assertThat(container.getAttribute(createKey(Integer.class, key.getName())), is(456));
+
+        Set<AttributeKey<?>> keys = container.getAttributeKeys();
+        assertThat(keys.size(), is(2));
+        assertThat(keys.contains(ATTRIBUTE_KEY), is(true));
+        assertThat(keys.contains(key), is(true));
+
+        assertThat(container.removeAttribute(key), is(456));
+        assertThat(container.getAttribute(key), is(nullValue()));
+        assertThat(container.getAttributeKeys().size(), is(1));
+    }
+
+    /**
+     * Test if the values set while the container grows are neither lost nor reported stale.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void setDuringGrowth() throws Exception {
+        final int count = 100000;
+        container.setAttribute(ATTRIBUTE_KEY, 0);
+
+        // grow the container with new keys, while the other thread sets an existing one
+        Thread grower = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 16; i++) {
+                    container.setAttribute(createKey(Integer.class, "growth" + i), i);
+                }
+            }
+        };
+        grower.start();
+
+        for (int i = 1; i <= count; i++) {
+            assertThat(container.setAttribute(ATTRIBUTE_KEY, i), is(i - 1));
+        }
+
+        grower.join();
+        assertThat(container.getAttribute(ATTRIBUTE_KEY), is(count));
+    }
 }
@@ -26,6 +26,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.api.AbstractIoFilter;
 import org.apache.mina.api.IdleStatus;
@@ -80,6 +81,50 @@ public class IdleTcpServerTest {
         }
     }
 
+    @Test
+    public void idleEventInSelectorLoopTest() throws IOException, InterruptedException {
+        final NioTcpServer server = new NioTcpServer();
+
+        final CountDownLatch idleLatch = new CountDownLatch(CLIENT_COUNT);
+        final AtomicInteger outOfLoop = new AtomicInteger();
+
+        server.getSessionConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 500);
+        server.bind(new InetSocketAddress(0));
+
+        final int boundPort = server.getServerSocketChannel().socket().getLocalPort();
+        server.setFilters(new AbstractIoFilter() {
+            @Override
+            public void sessionIdle(final IoSession session, final IdleStatus status) {
+                // the idle events must be fired by the selector loop of the session
+                if (!((NioTcpSession) session).getSelectorLoop().isLoopThread()) {
+                    outOfLoop.incrementAndGet();
+                }
+
+                idleLatch.countDown();
+                session.close(true);
+            }
+        });
+
+        final Socket[] clients = new Socket[CLIENT_COUNT];
+
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients[i] = new Socket("127.0.0.1", boundPort);
+            }
+
+            assertTrue("idle event missing ! ", idleLatch.await(4, TimeUnit.SECONDS));
+            assertEquals(0, outOfLoop.get());
+        } finally {
+            for (Socket client : clients) {
+                if (client != null) {
+                    client.close();
+                }
+            }
+
+            server.unbind();
+        }
+    }
+
     private class IdleHandler extends AbstractIoFilter {
 
         private final CountDownLatch latch;
@@ -0,0 +1,257 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the rebuild of the selector of a {@link NioSelectorLoop}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioSelectorLoopRebuildTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private static final int REBUILD_COUNT = 20;
+
+    private static void runAndWait(NioSelectorLoop loop, final Runnable task) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    private static void echo(Socket client, int value) throws IOException {
+        new DataOutputStream(client.getOutputStream()).writeInt(value);
+        assertEquals(value, new DataInputStream(client.getInputStream()).readInt());
+    }
+
+    @Test
+    public void rebuildKeepsTheRegisteredChannels() throws Exception {
+        FixedSelectorLoopPool pool = new FixedSelectorLoopPool("rebuild", 1);
+        final NioSelectorLoop loop = (NioSelectorLoop) pool.getSelectorLoops()[0];
+
+        // the same loop accepts and handles the sessions
+        NioTcpServer server = new NioTcpServer(pool, null);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                ByteBuffer buffer = (ByteBuffer) message;
+                ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+                echo.put(buffer);
+                echo.flip();
+                session.write(echo);
+            }
+        });
+        server.bind(0);
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+        client.setSoTimeout(WAIT_TIME);
+        Socket newClient = null;
+
+        try {
+            echo(client, 1);
+
+            runAndWait(loop, new Runnable() {
+                @Override
+                public void run() {
+                    loop.rebuildSelector();
+                }
+            });
+
+            assertEquals(1, loop.getSelectorRebuildCount());
+
+            // the session still works
+            echo(client, 2);
+
+            // and the server still accepts new sessions
+            newClient = new Socket("127.0.0.1", port);
+            newClient.setSoTimeout(WAIT_TIME);
+            echo(newClient, 3);
+        } finally {
+            client.close();
+
+            if (newClient != null) {
+                newClient.close();
+            }
+
+            server.unbind();
+        }
+    }
+
+    @Test
+    public void interestOpsChangedDuringRebuildAreKept() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("rebuild");
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final CountDownLatch registered = new CountDownLatch(1);
+        final SelectorListener listener = new SelectorListener() {
+            @Override
+            public void ready(boolean accept, boolean connect, boolean read, ByteBuffer readBuffer, boolean write) {
+            }
+        };
+
+        loop.register(false, false, true, false, listener, pipe.source(), new RegistrationCallback() {
+            @Override
+            public void done(SelectionKey selectionKey) {
+                registered.countDown();
+            }
+        });
+        assertTrue(registered.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread modifier = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    boolean read = true;
+
+                    // ends with the read interest set
+                    while ((loop.getSelectorRebuildCount() < REBUILD_COUNT) || !read) {
+                        read = !read;
+                        loop.modifyRegistration(false, read, false, listener, pipe.source(), false);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        modifier.start();
+
+        for (int i = 0; i < REBUILD_COUNT; i++) {
+            runAndWait(loop, new Runnable() {
+                @Override
+                public void run() {
+                    loop.rebuildSelector();
+                }
+            });
+        }
+
+        modifier.join(WAIT_TIME);
+        assertNull(failure.get());
+
+        Field selectorField = NioSelectorLoop.class.getDeclaredField("selector");
+        selectorField.setAccessible(true);
+        SelectionKey key = pipe.source().keyFor((Selector) selectorField.get(loop));
+        assertEquals(SelectionKey.OP_READ, key.interestOps());
+
+        pipe.source().close();
+        pipe.sink().close();
+    }
+
+    @Test
+    public void interruptedWorkerDoesNotRebuild() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("rebuild");
+        loop.setSelectorRebuildThreshold(1);
+
+        runAndWait(loop, new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // let the worker select
+        Thread.sleep(100);
+
+        runAndWait(loop, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        assertEquals(0, loop.getSelectorRebuildCount());
+    }
+
+    @Test
+    public void prematureTimedSelectRebuilds() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("rebuild");
+        loop.setSelectorRebuildThreshold(3);
+
+        // the selects are timed by the pending timer
+        loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 1, TimeUnit.HOURS);
+
+        Field selectorField = NioSelectorLoop.class.getDeclaredField("selector");
+        selectorField.setAccessible(true);
+
+        // wake the selector up behind the back of the loop, as a broken selector would do
+        for (int i = 0; (i < 100) && (loop.getSelectorRebuildCount() == 0); i++) {
+            ((Selector) selectorField.get(loop)).wakeup();
+            Thread.sleep(10);
+        }
+
+        assertTrue(loop.getSelectorRebuildCount() > 0);
+    }
+
+    @Test
+    public void elapsedTimedSelectDoesNotRebuild() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("rebuild");
+        loop.setSelectorRebuildThreshold(1);
+
+        // each select times out for running the timer
+        loop.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 5, 5, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        assertEquals(0, loop.getSelectorRebuildCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidThreshold() {
+        new NioSelectorLoop("rebuild").setSelectorRebuildThreshold(-1);
+    }
+}
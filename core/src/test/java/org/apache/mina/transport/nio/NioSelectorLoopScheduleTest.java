@@ -0,0 +1,219 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.service.scheduler.ScheduledTask;
+import org.junit.Test;
+
+/**
+ * Test the tasks scheduled on a {@link NioSelectorLoop}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioSelectorLoopScheduleTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void scheduledTaskRunsInLoopAfterDelay() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean inLoop = new AtomicBoolean();
+        final AtomicInteger elapsed = new AtomicInteger();
+        final long start = System.nanoTime();
+
+        loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                inLoop.set(loop.isLoopThread());
+                done.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(inLoop.get());
+        assertTrue("run after " + elapsed.get() + " ms", elapsed.get() >= 200);
+    }
+
+    @Test
+    public void tasksRunInDeadlineOrder() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final CountDownLatch done = new CountDownLatch(3);
+        final StringBuffer order = new StringBuffer();
+
+        for (final int delay : new int[] { 300, 100, 200 }) {
+            loop.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    order.append(delay).append(' ');
+                    done.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals("100 200 300 ", order.toString());
+    }
+
+    @Test
+    public void cancelledTaskDoesNotRun() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+
+        // cancelled by a foreign thread
+        ScheduledTask foreign = loop.schedule(task, 100, TimeUnit.MILLISECONDS);
+        assertTrue(foreign.cancel());
+        assertTrue(foreign.isCancelled());
+        assertFalse(foreign.cancel());
+
+        // cancelled by the loop thread
+        final ScheduledTask[] inLoop = new ScheduledTask[1];
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                inLoop[0] = loop.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        runs.incrementAndGet();
+                    }
+                }, 100, TimeUnit.MILLISECONDS);
+                inLoop[0].cancel();
+            }
+        });
+
+        loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, 300, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, runs.get());
+        assertTrue(inLoop[0].isCancelled());
+    }
+
+    @Test
+    public void taskCancelledByForeignThreadIsUnlinked() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final AtomicInteger count = new AtomicInteger(-1);
+
+        ScheduledTask task = loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        // wait for the task to be linked in the wheel
+        final CountDownLatch added = new CountDownLatch(1);
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                added.countDown();
+            }
+        });
+        assertTrue(added.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        assertTrue(task.cancel());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                count.set(loop.getScheduledTaskCount());
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void fixedRateTaskRunsUntilCancelled() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch threeRuns = new CountDownLatch(3);
+
+        ScheduledTask task = loop.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                threeRuns.countDown();
+            }
+        }, 50, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(threeRuns.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(task.cancel());
+
+        // let a possibly running execution end
+        Thread.sleep(100);
+        int count = runs.get();
+        Thread.sleep(300);
+        assertEquals(count, runs.get());
+    }
+
+    @Test
+    public void taskBeyondOneTurnOfTheWheel() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("schedule");
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger elapsed = new AtomicInteger();
+        final long start = System.nanoTime();
+        final long delay = LoopTimerWheel.DEFAULT_TICK_IN_MS * LoopTimerWheel.DEFAULT_WHEEL_SIZE + 200;
+
+        loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                done.countDown();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue("run after " + elapsed.get() + " ms", elapsed.get() >= delay);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPeriod() {
+        new NioSelectorLoop("schedule").scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, 0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the tasks budget of the {@link NioSelectorLoop}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioSelectorLoopTaskBudgetTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIoRatio() {
+        new NioSelectorLoop("budget").setIoRatio(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxTasks() {
+        new NioSelectorLoop("budget").setMaxTasksPerIteration(0);
+    }
+
+    @Test
+    public void ioEventsAreNotStarvedByTasks() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("budget");
+        loop.setMaxTasksPerIteration(10);
+
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicInteger executedBeforeRead = new AtomicInteger(-1);
+        final CountDownLatch registered = new CountDownLatch(1);
+        final CountDownLatch readLatch = new CountDownLatch(1);
+
+        try {
+            loop.register(false, false, true, false, new SelectorListener() {
+                @Override
+                public void ready(boolean accept, boolean connect, boolean read, ByteBuffer readBuffer, boolean write) {
+                    try {
+                        readBuffer.clear();
+                        pipe.source().read(readBuffer);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    executedBeforeRead.set(executed.get());
+                    readLatch.countDown();
+                }
+            }, pipe.source(), new RegistrationCallback() {
+                @Override
+                public void done(SelectionKey selectionKey) {
+                    registered.countDown();
+                }
+            });
+
+            assertTrue(registered.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            // block the loop while the tasks are queued and the pipe becomes readable
+            final CountDownLatch blocking = new CountDownLatch(1);
+            loop.runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocking.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            int taskCount = 100;
+            final CountDownLatch done = new CountDownLatch(taskCount);
+
+            for (int i = 0; i < taskCount; i++) {
+                loop.runInLoop(new Runnable() {
+                    @Override
+                    public void run() {
+                        executed.incrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+            blocking.countDown();
+
+            assertTrue(readLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            // the read event has been processed once the first batch of tasks was run
+            assertTrue("executed before read : " + executedBeforeRead.get(), executedBeforeRead.get() < taskCount);
+            assertEquals(0, loop.getPendingTaskCount());
+            assertEquals(taskCount + 1, loop.getExecutedTaskCount());
+            assertTrue(loop.getTaskRunTime() > 0);
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+}
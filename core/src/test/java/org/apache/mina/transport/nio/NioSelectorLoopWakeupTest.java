@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Test the wakeup coalescing and the in loop execution of the {@link NioSelectorLoop}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioSelectorLoopWakeupTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void runInLoopFromTheLoopIsDirect() throws InterruptedException {
+        final NioSelectorLoop loop = new NioSelectorLoop("wakeup");
+        final List<String> steps = new ArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                long wakeups = loop.getWakeupCount();
+                steps.add("outer");
+
+                loop.runInLoop(new Runnable() {
+                    @Override
+                    public void run() {
+                        steps.add("inner");
+                    }
+                });
+
+                steps.add("outer done");
+                loop.wakeup();
+
+                if (loop.getWakeupCount() == wakeups) {
+                    done.countDown();
+                }
+            }
+        });
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals("[outer, inner, outer done]", steps.toString());
+    }
+
+    @Test
+    public void wakeupsAreCoalesced() throws InterruptedException {
+        NioSelectorLoop loop = new NioSelectorLoop("wakeup");
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+
+        // block the loop, so the next tasks are all pending
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+
+                try {
+                    blocking.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        long wakeups = loop.getWakeupCount();
+        long saved = loop.getSavedWakeupCount();
+        int taskCount = 1000;
+        final CountDownLatch done = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            loop.runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    executed.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        // only the first task wakes the selector up
+        assertEquals(wakeups + 1, loop.getWakeupCount());
+        assertEquals(saved + taskCount - 1, loop.getSavedWakeupCount());
+
+        blocking.countDown();
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(taskCount, executed.get());
+    }
+
+    @Test
+    public void registrationFromTheLoopDoesNotBlock() throws Exception {
+        final NioSelectorLoop loop = new NioSelectorLoop("wakeup");
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final CountDownLatch registered = new CountDownLatch(1);
+        final CountDownLatch readLatch = new CountDownLatch(1);
+        final AtomicLong wakeupsDuringRegistration = new AtomicLong(-1);
+
+        try {
+            loop.runInLoop(new Runnable() {
+                @Override
+                public void run() {
+                    long wakeups = loop.getWakeupCount();
+
+                    loop.register(false, false, true, false, new SelectorListener() {
+                        @Override
+                        public void ready(boolean accept, boolean connect, boolean read, ByteBuffer readBuffer,
+                                boolean write) {
+                            readLatch.countDown();
+                        }
+                    }, pipe.source(), new RegistrationCallback() {
+                        @Override
+                        public void done(SelectionKey selectionKey) {
+                            registered.countDown();
+                        }
+                    });
+
+                    wakeupsDuringRegistration.set(loop.getWakeupCount() - wakeups);
+                }
+            });
+
+            // the worker must not block in select() before processing its own registration
+            assertTrue(registered.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(0, wakeupsDuringRegistration.get());
+
+            pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+            assertTrue(readLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the adaptive read size and the multiple reads per event of the {@link NioTcpSession}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpAdaptiveReadTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void predictionGrowsQuickly() {
+        AdaptiveReadSizePredictor predictor = new AdaptiveReadSizePredictor();
+        assertEquals(AdaptiveReadSizePredictor.INITIAL_SIZE, predictor.nextReadSize());
+
+        for (int i = 0; i < 10; i++) {
+            predictor.readCompleted(predictor.nextReadSize());
+        }
+
+        assertEquals(AdaptiveReadSizePredictor.MAX_SIZE, predictor.nextReadSize());
+    }
+
+    @Test
+    public void predictionShrinksSlowly() {
+        AdaptiveReadSizePredictor predictor = new AdaptiveReadSizePredictor();
+
+        // a single small read doesn't change the prediction
+        predictor.readCompleted(10);
+        assertEquals(AdaptiveReadSizePredictor.INITIAL_SIZE, predictor.nextReadSize());
+
+        predictor.readCompleted(10);
+        assertEquals(AdaptiveReadSizePredictor.INITIAL_SIZE / 2, predictor.nextReadSize());
+
+        // a read using more than half of the size resets the shrink
+        predictor.readCompleted(10);
+        predictor.readCompleted(AdaptiveReadSizePredictor.INITIAL_SIZE / 2 - 1);
+        predictor.readCompleted(10);
+        assertEquals(AdaptiveReadSizePredictor.INITIAL_SIZE / 2, predictor.nextReadSize());
+
+        for (int i = 0; i < 100; i++) {
+            predictor.readCompleted(1);
+        }
+
+        assertEquals(AdaptiveReadSizePredictor.MIN_SIZE, predictor.nextReadSize());
+    }
+
+    @Test
+    public void bulkTransferWithAdaptiveReads() throws Exception {
+        transfer(true, 256 * 1024);
+    }
+
+    @Test
+    public void bulkTransferWithFixedReads() throws Exception {
+        transfer(false, 256 * 1024);
+    }
+
+    @Test
+    public void bulkTransferWithASingleReadPerEvent() throws Exception {
+        transfer(true, 1);
+    }
+
+    private void transfer(boolean adaptive, int maxReadBytes) throws Exception {
+        final int size = 8 * 1024 * 1024;
+        final AtomicLong received = new AtomicLong();
+        final AtomicInteger biggestMessage = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setAdaptiveReadSize(adaptive);
+        server.getSessionConfig().setMaxReadBytesPerEvent(maxReadBytes);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                int remaining = ((ByteBuffer) message).remaining();
+                biggestMessage.set(Math.max(biggestMessage.get(), remaining));
+
+                if (received.addAndGet(remaining) == size) {
+                    done.countDown();
+                }
+            }
+        });
+        server.bind(0);
+
+        Socket client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+
+        try {
+            OutputStream out = client.getOutputStream();
+            byte[] data = new byte[64 * 1024];
+
+            for (int i = 0; i < size / data.length; i++) {
+                out.write(data);
+            }
+
+            out.flush();
+
+            assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(size, received.get());
+            assertTrue(biggestMessage.get() <= AdaptiveReadSizePredictor.MAX_SIZE);
+
+            if (adaptive) {
+                // the read size has grown with the transfer
+                assertTrue(biggestMessage.get() > AdaptiveReadSizePredictor.INITIAL_SIZE);
+            }
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+}
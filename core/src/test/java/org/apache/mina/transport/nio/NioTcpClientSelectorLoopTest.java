@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.AttributeKey;
+import org.junit.Test;
+
+/**
+ * This class checks that the sessions of a {@link NioTcpClient} are handled by the read/write selector loops, and not
+ * by the connect selector loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpClientSelectorLoopTest {
+
+    private static final int CLIENT_COUNT = 8;
+
+    private static final int SHARED_POOL_CLIENT_COUNT = 20;
+
+    private static final int MESSAGE_SIZE = 1024 * 1024;
+
+    private static final int WAIT_TIME = 10000;
+
+    private static final AttributeKey<AtomicInteger> RECEIVED = AttributeKey.createKey(AtomicInteger.class,
+            "received");
+
+    @Test
+    public void sessionsAreSpreadOnReadWriteLoops() throws IOException, InterruptedException, ExecutionException {
+        final CountDownLatch receivedLatch = new CountDownLatch(CLIENT_COUNT);
+        NioTcpServer server = new NioTcpServer();
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                session.setAttribute(RECEIVED, new AtomicInteger());
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                int received = session.getAttribute(RECEIVED).addAndGet(((ByteBuffer) message).remaining());
+
+                if (received == MESSAGE_SIZE) {
+                    receivedLatch.countDown();
+                }
+            }
+        });
+        server.bind(0);
+
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        NioTcpClient client = new NioTcpClient(new NioSelectorLoop("connect"), new FixedSelectorLoopPool("rw", 2),
+                null);
+        client.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                threadNames.add(Thread.currentThread().getName());
+
+                // big enough for needing the selector loop to flush it
+                session.write(ByteBuffer.allocate(MESSAGE_SIZE));
+            }
+        });
+
+        try {
+            int port = server.getServerSocketChannel().socket().getLocalPort();
+
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                client.connect(new InetSocketAddress("127.0.0.1", port)).get();
+            }
+
+            assertTrue(receivedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(2, threadNames.size());
+            assertFalse(threadNames.contains("SelectorWorker connect"));
+        } finally {
+            client.disconnect();
+            server.unbind();
+        }
+    }
+
+    @Test
+    public void connectOnSharedLoopPool() throws IOException, InterruptedException, ExecutionException,
+            TimeoutException {
+        final CountDownLatch openedLatch = new CountDownLatch(SHARED_POOL_CLIENT_COUNT);
+        NioTcpServer server = new NioTcpServer();
+        server.setIoHandler(new AbstractIoHandler() {
+        });
+        server.bind(0);
+
+        // the connect selector loop is taken from the pool, so some sessions will be handled by the loop which has
+        // processed their connection
+        NioTcpClient client = new NioTcpClient(new FixedSelectorLoopPool("shared", 4), null);
+        client.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedLatch.countDown();
+            }
+        });
+
+        try {
+            int port = server.getServerSocketChannel().socket().getLocalPort();
+
+            for (int i = 0; i < SHARED_POOL_CLIENT_COUNT; i++) {
+                IoSession session = client.connect(new InetSocketAddress("127.0.0.1", port)).get(WAIT_TIME,
+                        TimeUnit.MILLISECONDS);
+                assertTrue(session.isConnected());
+            }
+
+            assertTrue(openedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        } finally {
+            client.disconnect();
+            server.unbind();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * This class test the explicit flush of the messages written without flush, and the batched flush mode.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpFlushTest {
+
+    private static final int MESSAGE_COUNT = 10;
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void writeWithoutFlushIsSentOnFlush() throws IOException {
+        NioTcpServer server = new NioTcpServer();
+        server.setIoHandler(new Handler(false));
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+
+        try {
+            OutputStream out = client.getOutputStream();
+            DataInputStream in = new DataInputStream(client.getInputStream());
+
+            // the messages are queued, but nothing must be written
+            out.write('w');
+            out.flush();
+            client.setSoTimeout(300);
+
+            try {
+                in.readInt();
+                fail("the messages should not have been flushed");
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+
+            // now flush them
+            out.write('f');
+            out.flush();
+            client.setSoTimeout(WAIT_TIME);
+            checkMessages(in);
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
+    @Test
+    public void batchedFlush() throws IOException {
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setBatchedFlush(true);
+        server.setIoHandler(new Handler(true));
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+
+        try {
+            OutputStream out = client.getOutputStream();
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            client.setSoTimeout(WAIT_TIME);
+
+            for (int i = 0; i < 3; i++) {
+                out.write('w');
+                out.flush();
+                checkMessages(in);
+            }
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
+    private void checkMessages(DataInputStream in) throws IOException {
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(i, in.readInt());
+        }
+    }
+
+    private static class Handler extends AbstractIoHandler {
+        /** use flushing writes, instead of writeWithoutFlush */
+        private final boolean flushingWrite;
+
+        public Handler(boolean flushingWrite) {
+            this.flushingWrite = flushingWrite;
+        }
+
+        @Override
+        public void messageReceived(IoSession session, Object message) {
+            ByteBuffer buffer = (ByteBuffer) message;
+
+            while (buffer.hasRemaining()) {
+                byte command = buffer.get();
+
+                if (command == 'w') {
+                    for (int i = 0; i < MESSAGE_COUNT; i++) {
+                        ByteBuffer reply = ByteBuffer.allocate(4);
+                        reply.putInt(i);
+                        reply.flip();
+
+                        if (flushingWrite) {
+                            session.write(reply);
+                        } else {
+                            session.writeWithoutFlush(reply);
+                        }
+                    }
+                } else if (command == 'f') {
+                    session.flush();
+                }
+            }
+        }
+    }
+}
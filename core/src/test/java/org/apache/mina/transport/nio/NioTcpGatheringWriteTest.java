@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoFutureListener;
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoFuture;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.service.buffer.PooledBufferAllocator;
+import org.junit.Test;
+
+/**
+ * This class test the flush of a write queue containing many pending messages, using gathering writes.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpGatheringWriteTest {
+
+    private static final int MESSAGE_COUNT = 500;
+
+    private static final int MESSAGE_SIZE = 1000;
+
+    private static final int WAIT_TIME = 10000;
+
+    private final CountDownLatch sentLatch = new CountDownLatch(MESSAGE_COUNT);
+
+    private final CountDownLatch futureLatch = new CountDownLatch(MESSAGE_COUNT);
+
+    private final CountDownLatch openedLatch = new CountDownLatch(1);
+
+    private volatile IoSession serverSession;
+
+    @Test
+    public void queuedMessagesAreWrittenInOrder() throws IOException, InterruptedException {
+        checkQueuedMessages(64, 256 * 1024);
+    }
+
+    @Test
+    public void queuedMessagesAreWrittenOneByOne() throws IOException, InterruptedException {
+        checkQueuedMessages(1, 256 * 1024);
+    }
+
+    @Test
+    public void queuedMessagesAreWrittenWithSmallByteLimit() throws IOException, InterruptedException {
+        checkQueuedMessages(64, 1500);
+    }
+
+    @Test
+    public void pendingMessagesAreReleasedOnClose() throws IOException, InterruptedException {
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setSendBufferSize(4 * 1024);
+        server.setIoHandler(new Handler());
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+
+        try {
+            assertTrue(openedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            // the client doesn't read : most of the messages are still queued when the session is closed
+            Thread.sleep(200);
+            PooledBufferAllocator allocator = (PooledBufferAllocator) server.getBufferAllocator();
+            assertTrue(allocator.getUsedBytes() > 0);
+
+            serverSession.close(true);
+            long end = System.currentTimeMillis() + WAIT_TIME;
+
+            while ((allocator.getUsedBytes() > 0) && (System.currentTimeMillis() < end)) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, allocator.getUsedBytes());
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
+    private void checkQueuedMessages(int maxBuffers, int maxBytes) throws IOException, InterruptedException {
+        NioTcpServer server = new NioTcpServer();
+        server.getSessionConfig().setSendBufferSize(4 * 1024);
+        server.getSessionConfig().setGatheringWriteMaxBuffers(maxBuffers);
+        server.getSessionConfig().setGatheringWriteMaxBytes(maxBytes);
+        server.setIoHandler(new Handler());
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        Socket client = new Socket("127.0.0.1", port);
+
+        try {
+            // let the server fill its write queue before reading
+            Thread.sleep(200);
+
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            byte[] message = new byte[MESSAGE_SIZE];
+
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                in.readFully(message);
+                assertEquals(i, ByteBuffer.wrap(message).getInt());
+            }
+
+            assertTrue(sentLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertTrue(futureLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            // all the buffers used for queuing the messages have been given back, the last one after its message
+            // sent event
+            PooledBufferAllocator allocator = (PooledBufferAllocator) server.getBufferAllocator();
+            assertTrue(allocator.getAllocationCount() > 0);
+            long end = System.currentTimeMillis() + WAIT_TIME;
+
+            while ((allocator.getUsedBytes() > 0) && (System.currentTimeMillis() < end)) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, allocator.getUsedBytes());
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
+    private class Handler extends AbstractIoHandler {
+
+        @Override
+        public void sessionOpened(IoSession session) {
+            serverSession = session;
+
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                ByteBuffer message = ByteBuffer.allocate(MESSAGE_SIZE);
+                message.putInt(i);
+                message.clear();
+
+                IoFuture<Void> future = session.writeWithFuture(message);
+                future.register(new AbstractIoFutureListener<Void>() {
+                    @Override
+                    public void completed(Void result) {
+                        futureLatch.countDown();
+                    }
+                });
+            }
+
+            openedLatch.countDown();
+        }
+
+        @Override
+        public void messageSent(IoSession session, Object message) {
+            sentLatch.countDown();
+        }
+    }
+}
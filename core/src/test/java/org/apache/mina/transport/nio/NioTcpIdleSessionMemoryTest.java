@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * This class checks that idle TCP sessions don't hold any direct memory.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpIdleSessionMemoryTest {
+
+    private static final int CLIENT_COUNT = 200;
+
+    /** the maximum direct memory an idle session is allowed to hold */
+    private static final long MAX_DIRECT_MEMORY_PER_SESSION = 1024;
+
+    @Test
+    public void idleSessionsDontHoldDirectMemory() throws IOException, InterruptedException {
+        final CountDownLatch openedLatch = new CountDownLatch(CLIENT_COUNT);
+        NioTcpServer server = new NioTcpServer();
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedLatch.countDown();
+            }
+        });
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        List<Socket> clients = new ArrayList<Socket>();
+
+        try {
+            long before = getDirectMemoryUsed();
+
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                clients.add(new Socket("127.0.0.1", port));
+            }
+
+            assertTrue(openedLatch.await(10, TimeUnit.SECONDS));
+
+            long perSession = (getDirectMemoryUsed() - before) / CLIENT_COUNT;
+            assertTrue("direct memory per idle session : " + perSession, perSession < MAX_DIRECT_MEMORY_PER_SESSION);
+        } finally {
+            for (Socket client : clients) {
+                client.close();
+            }
+
+            server.unbind();
+        }
+    }
+
+    private long getDirectMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+
+        throw new IllegalStateException("no direct buffer pool");
+    }
+}
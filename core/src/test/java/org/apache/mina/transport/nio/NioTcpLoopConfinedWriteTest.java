@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the writes of a {@link NioTcpSession} confined to its selector loop.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpLoopConfinedWriteTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private static final int MESSAGE_COUNT = 100;
+
+    private final BlockingQueue<IoSession> openedSessions = new LinkedBlockingQueue<IoSession>();
+
+    private final BlockingQueue<Thread> sentThreads = new LinkedBlockingQueue<Thread>();
+
+    private NioTcpServer server;
+
+    private Socket client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new NioTcpServer();
+        server.getSessionConfig().setLoopConfinedWrite(true);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedSessions.add(session);
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                // in loop write
+                session.write(message);
+            }
+
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sentThreads.add(Thread.currentThread());
+            }
+        });
+        server.bind(0);
+
+        client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+        client.setSoTimeout(WAIT_TIME);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void foreignWritesAreDoneByTheLoop() throws Exception {
+        NioTcpSession session = (NioTcpSession) openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread[] loopThread = new Thread[1];
+
+        // keep the loop busy while writing
+        session.getSelectorLoop().runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                loopThread[0] = Thread.currentThread();
+                blocked.countDown();
+
+                try {
+                    release.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            session.write(ByteBuffer.wrap(new byte[] { (byte) i }));
+        }
+
+        // nothing written by this thread
+        assertEquals(0, session.getWrittenBytes());
+        client.setSoTimeout(200);
+
+        try {
+            client.getInputStream().read();
+            throw new AssertionError("nothing should have been written");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        release.countDown();
+        client.setSoTimeout(WAIT_TIME);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(i, in.read());
+        }
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(loopThread[0], sentThreads.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void inLoopWrite() throws Exception {
+        openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 10; i++) {
+            client.getOutputStream().write(i);
+            assertEquals(i, client.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void foreignWritesBeforeClose() throws Exception {
+        IoSession session = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            session.write(ByteBuffer.wrap(new byte[] { (byte) i }));
+        }
+
+        session.close(false);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertEquals(i, in.read());
+        }
+
+        assertEquals(-1, in.read());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the accept batching and the accept metrics of the {@link NioTcpServer}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpServerAcceptTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void acceptStorm() throws Exception {
+        final int clientCount = 400;
+        final CountDownLatch opened = new CountDownLatch(clientCount);
+        final AtomicInteger noDelaySessions = new AtomicInteger();
+
+        NioTcpServer server = new NioTcpServer();
+        server.setBacklog(2048);
+        server.setMaxAcceptsPerEvent(16);
+        server.getSessionConfig().setTcpNoDelay(true);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                // the service configuration has been applied by the session loop
+                if (((NioTcpSession) session).getConfig().isTcpNoDelay()) {
+                    noDelaySessions.incrementAndGet();
+                }
+
+                opened.countDown();
+            }
+        });
+        server.bind(0);
+
+        final int port = server.getServerSocketChannel().socket().getLocalPort();
+        final List<Socket> clients = Collections.synchronizedList(new ArrayList<Socket>());
+        List<Thread> connectors = new ArrayList<Thread>();
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                Thread connector = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < clientCount / 4; j++) {
+                                clients.add(new Socket("127.0.0.1", port));
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                connector.start();
+                connectors.add(connector);
+            }
+
+            for (Thread connector : connectors) {
+                connector.join(WAIT_TIME);
+            }
+
+            assertTrue(opened.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(clientCount, noDelaySessions.get());
+            assertEquals(clientCount, server.getAcceptedCount());
+            assertTrue(server.getTotalAcceptLatency() > 0);
+            assertTrue(server.getMaxAcceptLatency() >= server.getTotalAcceptLatency() / clientCount);
+
+            Thread.sleep(150);
+            assertTrue(server.getRecentAcceptRate() > 0);
+        } finally {
+            synchronized (clients) {
+                for (Socket client : clients) {
+                    client.close();
+                }
+            }
+
+            server.unbind();
+        }
+    }
+
+    @Test
+    public void sessionSetupFailure() throws Exception {
+        FixedSelectorLoopPool readWriteLoops = new FixedSelectorLoopPool("rw", 1);
+        NioTcpServer server = new NioTcpServer(new NioSelectorLoop("accept"), readWriteLoops, null);
+
+        // rejected by the socket when applied to the accepted session
+        server.getSessionConfig().setSendBufferSize(0);
+        server.setIoHandler(new AbstractIoHandler() {
+        });
+        server.bind(0);
+
+        Socket client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+
+        try {
+            client.setSoTimeout(WAIT_TIME);
+
+            // the connection is closed, and the session is not counted by its loop anymore
+            assertEquals(-1, client.getInputStream().read());
+            assertEquals(0, readWriteLoops.getSelectorLoop().getSessionCount());
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxAccepts() {
+        new NioTcpServer().setMaxAcceptsPerEvent(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBacklog() {
+        new NioTcpServer().setBacklog(-1);
+    }
+}
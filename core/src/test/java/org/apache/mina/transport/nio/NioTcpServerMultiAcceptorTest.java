@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Test the multi acceptor mode of the {@link NioTcpServer}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpServerMultiAcceptorTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    @Test
+    public void sessionsAreSpreadOnTheAcceptingLoops() throws Exception {
+        final int clientCount = 200;
+        final int maxImbalance = 4;
+        final CountDownLatch opened = new CountDownLatch(clientCount);
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+        FixedSelectorLoopPool pool = new FixedSelectorLoopPool("multi", 4);
+        NioTcpServer server = new NioTcpServer(new NioSelectorLoop("multi-accept"), pool, null);
+        server.setMultiAcceptor(true);
+        server.setMultiAcceptorMaxImbalance(maxImbalance);
+        server.setMaxAcceptsPerEvent(1);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                threads.add(Thread.currentThread().getName());
+                opened.countDown();
+            }
+        });
+        server.bind(0);
+
+        int port = server.getServerSocketChannel().socket().getLocalPort();
+        List<Socket> clients = new ArrayList<Socket>();
+
+        try {
+            for (int i = 0; i < clientCount; i++) {
+                clients.add(new Socket("127.0.0.1", port));
+            }
+
+            assertTrue(opened.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+            // the accept loop is not used
+            assertFalse(threads.contains("SelectorWorker multi-accept"));
+
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+
+            for (SelectorLoop loop : pool.getSelectorLoops()) {
+                min = Math.min(min, loop.getSessionCount());
+                max = Math.max(max, loop.getSessionCount());
+            }
+
+            // each loop may accept one session after having checked its load
+            assertTrue("min : " + min + ", max : " + max, max - min <= maxImbalance + 1);
+        } finally {
+            for (Socket client : clients) {
+                client.close();
+            }
+
+            server.unbind();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void modeCantBeChangedWhileBound() {
+        NioTcpServer server = new NioTcpServer();
+        server.bind(0);
+
+        try {
+            server.setMultiAcceptor(true);
+        } finally {
+            server.unbind();
+        }
+    }
+}
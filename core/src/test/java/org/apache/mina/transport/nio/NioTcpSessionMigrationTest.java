@@ -0,0 +1,338 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.apache.mina.session.SessionScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class test the move of a {@link NioTcpSession} from a selector loop to another, and the
+ * {@link SelectorLoopRebalancer}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpSessionMigrationTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private FixedSelectorLoopPool pool;
+
+    private NioTcpServer server;
+
+    private final List<Socket> clients = new ArrayList<Socket>();
+
+    @Before
+    public void setup() {
+        // all the sessions are put on the first loop
+        pool = new FixedSelectorLoopPool("Migration", 2, new SelectorLoopBalancer() {
+            @Override
+            public SelectorLoop select(SelectorLoop[] loops) {
+                return loops[0];
+            }
+        });
+        server = new NioTcpServer(new NioSelectorLoop("accept"), pool, null);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+
+        server.unbind();
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+        clients.add(client);
+
+        return client;
+    }
+
+    private NioTcpSession waitForSession(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + WAIT_TIME;
+
+        while ((server.getManagedSessions().size() < count) && (System.currentTimeMillis() < end)) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, server.getManagedSessions().size());
+
+        return (NioTcpSession) server.getManagedSessions().values().iterator().next();
+    }
+
+    private void waitForSessionCount(SelectorLoop loop, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + WAIT_TIME;
+
+        while ((loop.getSessionCount() != count) && (System.currentTimeMillis() < end)) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, loop.getSessionCount());
+    }
+
+    @Test
+    public void movedSessionKeepsWorking() throws IOException, InterruptedException {
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                threads.add(Thread.currentThread().getName());
+
+                // echo
+                ByteBuffer buffer = (ByteBuffer) message;
+                ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+                echo.put(buffer);
+                echo.flip();
+                session.write(echo);
+            }
+        });
+        server.bind(0);
+
+        SelectorLoop[] loops = pool.getSelectorLoops();
+        Socket client = connect();
+        client.setSoTimeout(WAIT_TIME);
+        OutputStream out = client.getOutputStream();
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        out.write(1);
+        assertEquals(1, in.read());
+        assertEquals("SelectorWorker Migration-I/O-0", threads.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        NioTcpSession session = waitForSession(1);
+        session.moveTo(loops[1]);
+        waitForSessionCount(loops[1], 1);
+        assertEquals(0, loops[0].getSessionCount());
+        assertTrue(session.getSelectorLoop() == loops[1]);
+
+        out.write(2);
+        assertEquals(2, in.read());
+        assertEquals("SelectorWorker Migration-I/O-1", threads.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timerScheduledBeforeMoveRunsOnNewLoop() throws IOException, InterruptedException {
+        server.setIoHandler(new AbstractIoHandler() {
+        });
+        server.bind(0);
+
+        SelectorLoop[] loops = pool.getSelectorLoops();
+        connect();
+        NioTcpSession session = waitForSession(1);
+
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<String>();
+        SessionScheduler.schedule(session, new Runnable() {
+            @Override
+            public void run() {
+                threads.add(Thread.currentThread().getName());
+            }
+        }, 500, TimeUnit.MILLISECONDS);
+
+        session.moveTo(loops[1]);
+        waitForSessionCount(loops[1], 1);
+
+        assertEquals("SelectorWorker Migration-I/O-1", threads.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pendingWritesAreFlushedAfterMove() throws IOException, InterruptedException {
+        final int messageCount = 64;
+        final int messageSize = 64 * 1024;
+        final CountDownLatch sentLatch = new CountDownLatch(messageCount);
+
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                for (int i = 0; i < messageCount; i++) {
+                    ByteBuffer message = ByteBuffer.allocate(messageSize);
+                    message.putInt(i);
+                    message.clear();
+                    session.write(message);
+                }
+            }
+
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                sentLatch.countDown();
+            }
+        });
+        server.bind(0);
+
+        Socket client = connect();
+        client.setSoTimeout(WAIT_TIME);
+
+        // the client doesn't read yet : the server write queue is full
+        NioTcpSession session = waitForSession(1);
+        session.moveTo(pool.getSelectorLoops()[1]);
+        waitForSessionCount(pool.getSelectorLoops()[1], 1);
+
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        byte[] message = new byte[messageSize];
+
+        for (int i = 0; i < messageCount; i++) {
+            in.readFully(message);
+            assertEquals(i, ByteBuffer.wrap(message).getInt());
+        }
+
+        assertTrue(sentLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void writesDuringMovesAreNotLost() throws Exception {
+        final int messageCount = 20000;
+        final int messageSize = 256;
+
+        server.setIoHandler(new AbstractIoHandler() {
+        });
+        server.bind(0);
+
+        Socket client = connect();
+        client.setSoTimeout(WAIT_TIME);
+        final NioTcpSession session = waitForSession(1);
+        final DataInputStream in = new DataInputStream(client.getInputStream());
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final CountDownLatch done = new CountDownLatch(2);
+
+        // a thread foreign to the selector loops writes while the session moves, and the client reads at the same
+        // time, so the write queue is often empty and the writer registers the session for write
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < messageCount; i++) {
+                        ByteBuffer message = ByteBuffer.allocate(messageSize);
+                        message.putInt(i);
+                        message.clear();
+                        session.write(message);
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                byte[] message = new byte[messageSize];
+
+                try {
+                    for (int i = 0; i < messageCount; i++) {
+                        in.readFully(message);
+                        assertEquals(i, ByteBuffer.wrap(message).getInt());
+                    }
+                } catch (Throwable t) {
+                    synchronized (errors) {
+                        errors.add(t);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        writer.start();
+        reader.start();
+        SelectorLoop[] loops = pool.getSelectorLoops();
+
+        for (int i = 0; (done.getCount() > 0) && (i < 1000); i++) {
+            session.moveTo(loops[(i + 1) % 2]);
+        }
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        synchronized (errors) {
+            assertTrue(errors.toString(), errors.isEmpty());
+        }
+    }
+
+    @Test
+    public void rebalancerMovesABusySession() throws IOException, InterruptedException {
+        server.setIoHandler(new AbstractIoHandler() {
+        });
+        server.bind(0);
+
+        List<Thread> writers = new ArrayList<Thread>();
+        final byte[] data = new byte[8 * 1024];
+
+        for (int i = 0; i < 2; i++) {
+            final OutputStream out = connect().getOutputStream();
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!isInterrupted()) {
+                            out.write(data);
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+
+        waitForSession(2);
+        SelectorLoop[] loops = pool.getSelectorLoops();
+        waitForSessionCount(loops[0], 2);
+
+        SelectorLoopRebalancer rebalancer = new SelectorLoopRebalancer(server, pool);
+        rebalancer.setMinByteRate(0);
+
+        try {
+            // first check : samples the sessions traffic
+            rebalancer.rebalance();
+            Thread.sleep(500);
+
+            assertTrue(rebalancer.rebalance());
+            waitForSessionCount(loops[1], 1);
+            assertEquals(1, loops[0].getSessionCount());
+        } finally {
+            for (Thread writer : writers) {
+                writer.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the suspension and the resumption of the reads and writes of a {@link NioTcpSession}.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioTcpSuspendTest {
+
+    private static final int WAIT_TIME = 10000;
+
+    private final BlockingQueue<IoSession> openedSessions = new LinkedBlockingQueue<IoSession>();
+
+    private final BlockingQueue<Integer> received = new LinkedBlockingQueue<Integer>();
+
+    private NioTcpServer server;
+
+    private Socket client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new NioTcpServer();
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedSessions.add(session);
+            }
+
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                ByteBuffer buffer = (ByteBuffer) message;
+
+                while (buffer.hasRemaining()) {
+                    int value = buffer.get();
+                    received.add(value);
+
+                    if (value == 0) {
+                        // apply some backpressure from the handler
+                        session.suspendRead();
+                    }
+                }
+            }
+        });
+        server.bind(0);
+
+        client = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+        client.setSoTimeout(WAIT_TIME);
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        client.close();
+        server.unbind();
+    }
+
+    @Test
+    public void suspendAndResumeRead() throws Exception {
+        IoSession session = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+        assertFalse(session.isReadSuspended());
+
+        // suspended by the handler
+        client.getOutputStream().write(0);
+        assertEquals(Integer.valueOf(0), received.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        client.getOutputStream().write(1);
+        assertEquals(null, received.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(session.isReadSuspended());
+
+        // resumed from another thread
+        session.resumeRead();
+        assertFalse(session.isReadSuspended());
+        assertEquals(Integer.valueOf(1), received.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        client.getOutputStream().write(2);
+        assertEquals(Integer.valueOf(2), received.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void readSuspensionsAreCounted() throws Exception {
+        IoSession session = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+
+        // suspended by two independent parties
+        session.suspendRead();
+        session.suspendRead();
+
+        client.getOutputStream().write(1);
+        assertEquals(null, received.poll(200, TimeUnit.MILLISECONDS));
+
+        session.resumeRead();
+        assertTrue(session.isReadSuspended());
+        assertEquals(null, received.poll(200, TimeUnit.MILLISECONDS));
+
+        session.resumeRead();
+        assertFalse(session.isReadSuspended());
+        assertEquals(Integer.valueOf(1), received.poll(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        // an unbalanced resume is ignored
+        session.resumeRead();
+        session.suspendRead();
+        assertTrue(session.isReadSuspended());
+        session.resumeRead();
+    }
+
+    @Test
+    public void suspendAndResumeWrite() throws Exception {
+        IoSession session = openedSessions.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+        assertFalse(session.isWriteSuspended());
+
+        session.suspendWrite();
+        assertTrue(session.isWriteSuspended());
+
+        for (int i = 0; i < 10; i++) {
+            session.write(ByteBuffer.wrap(new byte[] { (byte) i }));
+        }
+
+        client.setSoTimeout(200);
+
+        try {
+            client.getInputStream().read();
+            fail("nothing should have been written");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        session.resumeWrite();
+        assertFalse(session.isWriteSuspended());
+        client.setSoTimeout(WAIT_TIME);
+        DataInputStream in = new DataInputStream(client.getInputStream());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, in.read());
+        }
+
+        // the writes are direct again
+        session.write(ByteBuffer.wrap(new byte[] { 10 }));
+        assertEquals(10, in.read());
+    }
+}
@@ -28,6 +28,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.api.AbstractIoFilter;
 import org.apache.mina.api.IdleStatus;
@@ -129,6 +130,41 @@ public class NioUdpServerFilterEventTest {
         server.unbind();
     }
 
+    @Test
+    public void idleEventInSelectorLoop() throws IOException, InterruptedException {
+        final NioUdpServer server = new NioUdpServer();
+        final CountDownLatch idleLatch = new CountDownLatch(1);
+        final AtomicInteger outOfLoop = new AtomicInteger();
+
+        server.getSessionConfig().setIdleTimeInMillis(IdleStatus.READ_IDLE, 500);
+        server.setFilters(new AbstractIoFilter() {
+            @Override
+            public void sessionIdle(final IoSession session, final IdleStatus status) {
+                // the idle events must be fired by the selector loop reading the datagrams of the session
+                if (!((NioUdpSession) session).getTaskScheduler().isLoopThread()) {
+                    outOfLoop.incrementAndGet();
+                }
+
+                idleLatch.countDown();
+            }
+        });
+        server.bind(0);
+
+        final int port = server.getDatagramChannel().socket().getLocalPort();
+        final DatagramSocket client = new DatagramSocket();
+
+        try {
+            byte[] data = "idle".getBytes();
+            client.send(new DatagramPacket(data, data.length, new InetSocketAddress("127.0.0.1", port)));
+
+            assertTrue("idle event missing ! ", idleLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(0, outOfLoop.get());
+        } finally {
+            client.close();
+            server.unbind();
+        }
+    }
+
     private class MyCodec extends AbstractIoFilter {
 
         @Override
@@ -0,0 +1,158 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.api.AbstractIoHandler;
+import org.apache.mina.api.IoSession;
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link SelectedSelectionKeySet}, and for the {@link NioSelectorLoop} with and without it.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SelectedSelectionKeySetTest {
+
+    @Test
+    public void addGrowAndReset() throws IOException {
+        SelectedSelectionKeySet set = new SelectedSelectionKeySet();
+        Selector selector = Selector.open();
+        Pipe pipe = Pipe.open();
+
+        try {
+            pipe.source().configureBlocking(false);
+            SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+
+            assertFalse(set.add(null));
+
+            for (int i = 0; i < 3000; i++) {
+                assertTrue(set.add(key));
+            }
+
+            assertEquals(3000, set.size());
+            assertSame(key, set.get(2999));
+            assertFalse(set.contains(key));
+
+            int count = 0;
+
+            for (SelectionKey selected : set) {
+                assertSame(key, selected);
+                count++;
+            }
+
+            assertEquals(3000, count);
+
+            set.reset();
+            assertEquals(0, set.size());
+            assertTrue(set.isEmpty());
+            assertNull(set.get(0));
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+            selector.close();
+        }
+    }
+
+    @Test
+    public void echoWithOptimizedKeySet() throws Exception {
+        echo(false);
+    }
+
+    @Test
+    public void echoWithDefaultKeySet() throws Exception {
+        echo(true);
+    }
+
+    private void echo(boolean disableOptimization) throws Exception {
+        NioSelectorLoop loop;
+
+        if (disableOptimization) {
+            System.setProperty(NioSelectorLoop.DISABLE_KEY_SET_OPTIMIZATION, "true");
+        }
+
+        try {
+            loop = new NioSelectorLoop("echo");
+        } finally {
+            System.clearProperty(NioSelectorLoop.DISABLE_KEY_SET_OPTIMIZATION);
+        }
+
+        if (disableOptimization) {
+            assertFalse(loop.isSelectedKeySetOptimized());
+        }
+
+        NioTcpServer server = new NioTcpServer(loop, new FixedSelectorLoopPool("echo", 1), null);
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                ByteBuffer buffer = (ByteBuffer) message;
+                ByteBuffer echo = ByteBuffer.allocate(buffer.remaining());
+                echo.put(buffer);
+                echo.flip();
+                session.write(echo);
+            }
+        });
+        server.bind(0);
+
+        List<Socket> clients = new ArrayList<Socket>();
+
+        try {
+            int port = server.getServerSocketChannel().socket().getLocalPort();
+
+            for (int i = 0; i < 16; i++) {
+                Socket client = new Socket("127.0.0.1", port);
+                client.setSoTimeout(10000);
+                clients.add(client);
+            }
+
+            for (int round = 0; round < 100; round++) {
+                for (Socket client : clients) {
+                    new DataOutputStream(client.getOutputStream()).writeInt(round);
+                }
+
+                for (Socket client : clients) {
+                    assertEquals(round, new DataInputStream(client.getInputStream()).readInt());
+                }
+            }
+        } finally {
+            for (Socket client : clients) {
+                client.close();
+            }
+
+            server.unbind();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.transport.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link SelectorLoopBalancer} implementations
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SelectorLoopBalancerTest {
+
+    private static SelectorLoop[] loops;
+
+    @BeforeClass
+    public static void createLoops() {
+        loops = new SelectorLoop[3];
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioSelectorLoop("balancer", i);
+        }
+    }
+
+    private static void setSessionCounts(int... counts) {
+        for (int i = 0; i < counts.length; i++) {
+            while (loops[i].getSessionCount() < counts[i]) {
+                loops[i].incrementSessionCount();
+            }
+
+            while (loops[i].getSessionCount() > counts[i]) {
+                loops[i].decrementSessionCount();
+            }
+        }
+    }
+
+    @Test
+    public void roundRobin() {
+        SelectorLoopBalancer balancer = new RoundRobinBalancer();
+        SelectorLoop first = balancer.select(loops);
+
+        assertNotSame(first, balancer.select(loops));
+        assertNotSame(first, balancer.select(loops));
+        assertSame(first, balancer.select(loops));
+    }
+
+    @Test
+    public void leastSessions() {
+        SelectorLoopBalancer balancer = new LeastSessionsBalancer();
+
+        setSessionCounts(5, 2, 7);
+        assertSame(loops[1], balancer.select(loops));
+
+        setSessionCounts(5, 9, 1);
+        assertSame(loops[2], balancer.select(loops));
+    }
+
+    @Test
+    public void powerOfTwoChoicesNeverPicksTheMostLoaded() {
+        SelectorLoopBalancer balancer = new PowerOfTwoChoicesBalancer();
+        setSessionCounts(1, 100, 2);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(loops[1], balancer.select(loops));
+        }
+
+        assertSame(loops[0], balancer.select(new SelectorLoop[] { loops[0] }));
+    }
+
+    @Test
+    public void leastRecentBytes() throws InterruptedException {
+        SelectorLoopBalancer balancer = new LeastRecentBytesBalancer();
+        setSessionCounts(0, 0, 0);
+
+        // initialize the samples
+        for (SelectorLoop loop : loops) {
+            loop.getRecentByteRate();
+        }
+
+        loops[0].incrementProcessedBytes(100000);
+        loops[1].incrementProcessedBytes(1000);
+        loops[2].incrementProcessedBytes(50000);
+        Thread.sleep(200);
+
+        assertSame(loops[1], balancer.select(loops));
+        assertTrue(loops[0].getRecentByteRate() > loops[2].getRecentByteRate());
+        assertEquals(151000, loops[0].getProcessedBytes() + loops[1].getProcessedBytes()
+                + loops[2].getProcessedBytes());
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.apache.mina.transport.nio;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -32,7 +34,10 @@ import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.Security;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -42,6 +47,9 @@ import javax.net.ssl.TrustManagerFactory;
 
 import org.apache.mina.api.AbstractIoHandler;
 import org.apache.mina.api.IoSession;
+import org.apache.mina.session.DefaultWriteFuture;
+import org.apache.mina.session.DefaultWriteRequest;
+import org.apache.mina.session.WriteRequest;
 import org.apache.mina.transport.nio.NioTcpServer;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -211,4 +219,40 @@ public class SslTest {
         assertTrue(counter.await(10, TimeUnit.SECONDS));
 
     }
+
+    @Test
+    public void encryptedWriteKeepsTheRequest() throws Exception {
+        final BlockingQueue<IoSession> openedSessions = new LinkedBlockingQueue<IoSession>();
+        NioTcpServer server = new NioTcpServer();
+        server.setIoHandler(new AbstractIoHandler() {
+            @Override
+            public void sessionOpened(IoSession session) {
+                openedSessions.add(session);
+            }
+        });
+        server.bind(new InetSocketAddress(0));
+
+        Socket socket = new Socket("127.0.0.1", server.getServerSocketChannel().socket().getLocalPort());
+
+        try {
+            IoSession session = openedSessions.poll(10, TimeUnit.SECONDS);
+            SslHelper sslHelper = new SslHelper(session, createSSLContext());
+            sslHelper.init();
+
+            DefaultWriteRequest writeRequest = new DefaultWriteRequest("data");
+            writeRequest.setMessage(Charset.defaultCharset().encode("data"));
+            DefaultWriteFuture future = new DefaultWriteFuture();
+            writeRequest.setFuture(future);
+
+            // the encrypted message replaces the clear text one in the request of the writer
+            WriteRequest encrypted = sslHelper.processWrite(session, writeRequest, new ArrayDeque<WriteRequest>());
+            assertSame(writeRequest, encrypted);
+            assertSame(future, encrypted.getFuture());
+            assertEquals("data", encrypted.getOriginalMessage());
+            assertTrue(encrypted.isAllocated());
+        } finally {
+            socket.close();
+            server.unbind();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.mina.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.transport.nio.NioSelectorLoop;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Clock} implementations
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ClockTest {
+
+    @Test
+    public void manualClockOnlyMovesWhenAdvanced() {
+        ManualClock clock = new ManualClock(1000L);
+
+        assertEquals(1000L, clock.currentTimeMillis());
+        assertEquals(1000000000L, clock.nanoTime());
+
+        clock.advance(1500, TimeUnit.MICROSECONDS);
+        assertEquals(1001L, clock.currentTimeMillis());
+        assertEquals(1001500000L, clock.nanoTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void manualClockDoesNotGoBackward() {
+        new ManualClock().advance(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void cachedClockReadsItsSourceOnUpdate() {
+        ManualClock source = new ManualClock(1000L);
+        CachedClock clock = new CachedClock(source);
+
+        source.advance(10, TimeUnit.MILLISECONDS);
+        assertEquals(1000L, clock.currentTimeMillis());
+
+        clock.update();
+        assertEquals(1010L, clock.currentTimeMillis());
+        assertEquals(source.nanoTime(), clock.nanoTime());
+    }
+
+    @Test
+    public void selectorLoopUpdatesItsClockOnEachSelect() throws InterruptedException {
+        ManualClock source = new ManualClock(1000L);
+        final NioSelectorLoop loop = new NioSelectorLoop("clock", 0, source);
+        final AtomicLong time = new AtomicLong();
+
+        source.advance(1, TimeUnit.SECONDS);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        loop.runInLoop(new Runnable() {
+            @Override
+            public void run() {
+                time.set(loop.getClock().currentTimeMillis());
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2000L, time.get());
+    }
+}